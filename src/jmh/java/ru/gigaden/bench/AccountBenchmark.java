@@ -0,0 +1,102 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточные операции над одним счётом каждого типа.
+ * Каждый поток работает со своими счетами, конкуренции нет.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountBenchmark {
+    private final Money amount = Money.of(10);
+    private DebitAccount debit;
+    private DebitAccount emptyDebit;
+    private CreditAccount credit;
+    private SavingsAccount savings;
+    private LocalDate monthAgo;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        debit = new DebitAccount(1L, 1L);
+        debit.deposit(Money.of(1_000));
+        emptyDebit = new DebitAccount(2L, 2L);
+        credit = new CreditAccount(3L, 3L);
+        credit.setCreditLimit(Money.ofMinor(Long.MAX_VALUE / 4));
+        savings = new SavingsAccount(4L, 4L);
+        savings.deposit(Money.of(1_000));
+        savings.setMonthlyInterest(0.01);
+        monthAgo = LocalDate.now().minusMonths(1);
+    }
+
+    /**
+     * Снятие и пополнение дебетового счёта - баланс не меняется между вызовами.
+     */
+    @Benchmark
+    public TransactionStatus debitWithdrawAndDeposit() {
+        debit.tryWithdraw(amount);
+        return debit.tryDeposit(amount);
+    }
+
+    /**
+     * Расчёт комиссии и снятие с кредитного счёта.
+     */
+    @Benchmark
+    public TransactionStatus creditApplyFeeAndWithdraw() {
+        credit.applyFee(amount);
+        return credit.tryWithdraw(amount);
+    }
+
+    /**
+     * Начисление процентов; дата последнего начисления сдвигается, чтобы каждое начисление было разрешено.
+     */
+    @Benchmark
+    public Money savingsApplyInterest() {
+        savings.setLastInterestPaid(monthAgo);
+        return savings.applyInterest();
+    }
+
+    /**
+     * Отказ в снятии без исключения.
+     */
+    @Benchmark
+    public TransactionStatus rejectedTryWithdraw() {
+        return emptyDebit.tryWithdraw(amount);
+    }
+
+    /**
+     * Отказ в снятии через старый API с исключением - для сравнения с rejectedTryWithdraw.
+     */
+    @Benchmark
+    public Object rejectedWithdrawWithException() {
+        try {
+            emptyDebit.withdraw(amount);
+            return null;
+        } catch (WithdrawLimitException e) {
+            return e;
+        }
+    }
+}
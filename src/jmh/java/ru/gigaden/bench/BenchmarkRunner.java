@@ -0,0 +1,24 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа benchmarks.jar.
+ * Принимает те же аргументы, что и org.openjdk.jmh.Main, и всегда добавляет
+ * профилировщик GC, чтобы рядом с пропускной способностью был виден объём выделяемой памяти
+ * (gc.alloc.rate.norm - байт на операцию).
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.repository.ColumnarAccountStore;
+import ru.gigaden.transaction.TransactionProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетное списание и отчёт по балансам: объекты счетов против колоночного хранилища.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ColumnarStoreBenchmark {
+    private static final Money AMOUNT = Money.ofMinor(1);
+
+    @Param({"1000", "1000000"})
+    private int accounts;
+
+    private List<BankAccount> accountList;
+    private ColumnarAccountStore store;
+    private byte[] statuses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountRepository repository = new AccountRepository(accounts);
+        accountList = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            BankAccount account = AccountType.values()[i % 3].create(i, i);
+            account.deposit(Money.of(1_000_000));
+            repository.add(account);
+            accountList.add(account);
+        }
+        store = ColumnarAccountStore.load(repository);
+        statuses = new byte[accounts];
+    }
+
+    @Benchmark
+    public void objectWithdraw() {
+        TransactionProcessor.processTransaction(accountList, AMOUNT.toDouble());
+    }
+
+    @Benchmark
+    public int columnarWithdraw() {
+        return store.withdrawAll(AMOUNT, statuses);
+    }
+
+    @Benchmark
+    public long objectTotalBalance() {
+        long total = 0;
+        for (BankAccount account : accountList) {
+            total += account.getBalanceMinorUnits();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long columnarTotalBalance() {
+        return store.totalBalance();
+    }
+}
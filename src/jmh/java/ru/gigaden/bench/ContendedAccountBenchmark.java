@@ -0,0 +1,71 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Все потоки работают с одним и тем же счётом - проверка стоимости CAS-цикла под конкуренцией.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContendedAccountBenchmark {
+    private final Money amount = Money.of(10);
+    private DebitAccount debit;
+    private CreditAccount credit;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        debit = new DebitAccount(1L, 1L);
+        debit.deposit(Money.ofMinor(Long.MAX_VALUE / 4));
+        credit = new CreditAccount(2L, 2L);
+        credit.setCreditLimit(Money.ofMinor(Long.MAX_VALUE / 4));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public TransactionStatus sharedDebitWithdraw() {
+        return debit.tryWithdraw(amount);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public TransactionStatus sharedCreditWithdraw() {
+        return credit.tryWithdraw(amount);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public TransactionStatus mixedDeposit() {
+        return debit.tryDeposit(amount);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public TransactionStatus mixedWithdraw() {
+        return debit.tryWithdraw(amount);
+    }
+}
@@ -0,0 +1,116 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.journal.Journal;
+import ru.gigaden.journal.JournalConfig;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Стоимость журнала на горячем пути: пара снятие + пополнение без журнала (NONE)
+ * и с подписанным на счёт журналом (JOURNAL).
+ * single - один поток, ownAccount - каждый поток со своим счётом (конкуренция только за журнал),
+ * sharedAccount - все потоки с одним счётом (конкуренция за баланс и журнал).
+ * Журнал открывается в новом временном каталоге на каждую итерацию и удаляется после неё,
+ * фоновые снимки выключены.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+    @Param({"NONE", "JOURNAL"})
+    private String journal;
+
+    private final Money amount = Money.of(10);
+    private Path directory;
+    private Journal opened;
+    private DebitAccount shared;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        if ("JOURNAL".equals(journal)) {
+            directory = Files.createTempDirectory("journal-bench");
+            opened = Journal.open(directory, JournalConfig.builder().snapshotIntervalMillis(0).build());
+        }
+        shared = new DebitAccount(0L, 0L);
+        attach(shared);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (opened == null) {
+            return;
+        }
+        opened.close();
+        opened = null;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void attach(BankAccount account) {
+        account.deposit(Money.ofMinor(Long.MAX_VALUE / 4));
+        if (opened != null) {
+            opened.register(account);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadAccount {
+        private DebitAccount account;
+
+        @Setup(Level.Iteration)
+        public void setUp(JournalBenchmark benchmark) {
+            account = new DebitAccount(Thread.currentThread().threadId(), 1L);
+            benchmark.attach(account);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public TransactionStatus single(ThreadAccount state) {
+        state.account.tryWithdraw(amount);
+        return state.account.tryDeposit(amount);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public TransactionStatus ownAccount(ThreadAccount state) {
+        state.account.tryWithdraw(amount);
+        return state.account.tryDeposit(amount);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public TransactionStatus sharedAccount() {
+        shared.tryWithdraw(amount);
+        return shared.tryDeposit(amount);
+    }
+}
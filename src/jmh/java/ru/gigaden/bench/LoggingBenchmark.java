@@ -0,0 +1,110 @@
+package ru.gigaden.bench;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость логирования операций со счётом.
+ * SYNC - каждая операция пишется синхронно (как было до перевода на DEBUG и AsyncAppender),
+ * ASYNC - каждая операция пишется через AsyncAppender с настройками из logback.xml,
+ * OFF - конфигурация по умолчанию: DEBUG выключен, логов на горячем пути нет.
+ * Вывод уходит в пустой поток, чтобы измерялась стоимость логирования, а не терминала.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private static final String ACCOUNT_LOGGER = "ru.gigaden";
+
+    @Param({"OFF", "ASYNC", "SYNC"})
+    private String logging;
+
+    private Logger logger;
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(context);
+        sink.setEncoder(encoder);
+        sink.setOutputStream(OutputStream.nullOutputStream());
+        sink.start();
+
+        Appender<ILoggingEvent> appender = sink;
+        if ("ASYNC".equals(logging)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(1024);
+            async.setNeverBlock(true);
+            async.addAppender(sink);
+            async.start();
+            appender = async;
+        }
+
+        logger = context.getLogger(ACCOUNT_LOGGER);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+        logger.setLevel("OFF".equals(logging) ? Level.INFO : Level.DEBUG);
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.detachAndStopAllAppenders();
+        logger.setAdditive(true);
+        logger.setLevel(null);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadAccount {
+        private final Money amount = Money.of(10);
+        private DebitAccount account;
+
+        @Setup
+        public void setUp() {
+            account = new DebitAccount(Thread.currentThread().getId(), 1L);
+            account.deposit(Money.of(1_000));
+        }
+    }
+
+    @Benchmark
+    public TransactionStatus withdrawAndDeposit(ThreadAccount state) {
+        state.account.tryWithdraw(state.amount);
+        return state.account.tryDeposit(state.amount);
+    }
+}
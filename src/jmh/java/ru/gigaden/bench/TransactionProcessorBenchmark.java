@@ -0,0 +1,78 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionProcessor;
+import ru.gigaden.transaction.TransactionSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетное списание со списка счетов всех трёх типов: последовательно и через ForkJoinPool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class TransactionProcessorBenchmark {
+    private static final double AMOUNT = 0.01;
+
+    @Param({"1000", "1000000"})
+    private int accounts;
+
+    private List<BankAccount> accountList;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Money initial = Money.of(1_000_000);
+        accountList = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            BankAccount account;
+            switch (i % 3) {
+                case 0 -> account = new DebitAccount(i, i);
+                case 1 -> account = new CreditAccount(i, i);
+                default -> account = new SavingsAccount(i, i);
+            }
+            account.deposit(initial);
+            accountList.add(account);
+        }
+        pool = new ForkJoinPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void sequential() {
+        TransactionProcessor.processTransaction(accountList, AMOUNT);
+    }
+
+    @Benchmark
+    public TransactionSummary parallel() {
+        return TransactionProcessor.processTransaction(accountList, AMOUNT, pool);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.gigaden.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.service.AccountService;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пачка блокирующих запросов к AccountService: ожидание внешнего сервиса (sleep), затем перевод
+ * между случайными счетами. PLATFORM - пул из 100 платформенных потоков, VIRTUAL - виртуальный
+ * поток на запрос. Время - на всю пачку.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+    private static final int ACCOUNTS = 100;
+    private static final int PLATFORM_THREADS = 100;
+    private static final long LATENCY_MILLIS = 5;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private String executor;
+
+    @Param({"1000", "10000"})
+    private int requests;
+
+    private AccountService service;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new AccountService(new AccountRepository());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.open(AccountType.DEBIT, i, i).deposit(Money.of(1_000_000));
+        }
+        pool = "VIRTUAL".equals(executor)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public long blockingRequests() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            pool.submit(() -> {
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long from = random.nextInt(ACCOUNTS);
+                    long to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    service.transfer(from, to, Money.ofMinor(1 + random.nextInt(100)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return done.getCount();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.gigaden.account;
+
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Слушатель успешных изменений счёта и отказов в операциях.
+ * Вызывается в потоке операции сразу после того, как изменение баланса применено
+ * или операция отклонена, поэтому реализации должны быть быстрыми и не бросать исключений.
+ * Все суммы - в копейках.
+ */
+public interface AccountEventListener {
+    AccountEventListener NONE = new AccountEventListener() {
+    };
+
+    /**
+     * @param account счёт.
+     * @param amount  зачисленная сумма.
+     * @param balance баланс после операции.
+     */
+    default void onDeposit(BankAccount account, long amount, long balance) {
+    }
+
+    /**
+     * @param account счёт.
+     * @param amount  списанная сумма вместе с комиссией.
+     * @param fee     комиссия в составе amount.
+     * @param balance баланс после операции.
+     */
+    default void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+    }
+
+    /**
+     * @param account  счёт.
+     * @param interest начисленные проценты.
+     * @param paidOn   дата начисления.
+     * @param balance  баланс после операции.
+     */
+    default void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+    }
+
+    /**
+     * Вызывается после изменения параметров счёта: лимита, комиссии, процентов.
+     *
+     * @param account счёт.
+     */
+    default void onSettingsChanged(BankAccount account) {
+    }
+
+    /**
+     * Вызывается при отказе в операции; баланс при этом не меняется.
+     *
+     * @param account счёт.
+     * @param status  причина отказа.
+     * @param amount  сумма операции; 0 для начисления процентов.
+     */
+    default void onRejected(BankAccount account, TransactionStatus status, long amount) {
+    }
+
+    /**
+     * Объединяет двух слушателей: события получают оба, в порядке аргументов.
+     */
+    static AccountEventListener compose(AccountEventListener first, AccountEventListener second) {
+        if (first == NONE) {
+            return second;
+        }
+        if (second == NONE) {
+            return first;
+        }
+        return new AccountEventListener() {
+            @Override
+            public void onDeposit(BankAccount account, long amount, long balance) {
+                first.onDeposit(account, amount, balance);
+                second.onDeposit(account, amount, balance);
+            }
+
+            @Override
+            public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+                first.onWithdraw(account, amount, fee, balance);
+                second.onWithdraw(account, amount, fee, balance);
+            }
+
+            @Override
+            public void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+                first.onInterest(account, interest, paidOn, balance);
+                second.onInterest(account, interest, paidOn, balance);
+            }
+
+            @Override
+            public void onSettingsChanged(BankAccount account) {
+                first.onSettingsChanged(account);
+                second.onSettingsChanged(account);
+            }
+
+            @Override
+            public void onRejected(BankAccount account, TransactionStatus status, long amount) {
+                first.onRejected(account, status, amount);
+                second.onRejected(account, status, amount);
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package ru.gigaden.account;
+
+/**
+ * Тип счёта с постоянным числовым кодом - для бинарных форматов (журнал, снимки).
+ */
+public enum AccountType {
+    DEBIT(1),
+    CREDIT(2),
+    SAVINGS(3);
+
+    private static final AccountType[] BY_CODE = {null, DEBIT, CREDIT, SAVINGS};
+
+    private final int code;
+
+    AccountType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @param code числовой код типа.
+     * @return тип счёта.
+     * @throws IllegalArgumentException если код неизвестен.
+     */
+    public static AccountType ofCode(int code) {
+        if (code <= 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Неизвестный тип счёта: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * @param account счёт.
+     * @return тип счёта.
+     */
+    public static AccountType of(BankAccount account) {
+        if (account instanceof CreditAccount) {
+            return CREDIT;
+        }
+        if (account instanceof SavingsAccount) {
+            return SAVINGS;
+        }
+        if (account instanceof DebitAccount) {
+            return DEBIT;
+        }
+        throw new IllegalArgumentException("Неизвестный тип счёта: " + account.getClass().getName());
+    }
+
+    /**
+     * Создаёт пустой счёт этого типа с параметрами по умолчанию.
+     */
+    public BankAccount create(long accountNumber, long accountHolder) {
+        switch (this) {
+            case DEBIT:
+                return new DebitAccount(accountNumber, accountHolder);
+            case CREDIT:
+                return new CreditAccount(accountNumber, accountHolder);
+            default:
+                return new SavingsAccount(accountNumber, accountHolder);
+        }
+    }
+}
@@ -1,49 +1,375 @@
 package ru.gigaden.account;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.RuleEngine;
+import ru.gigaden.transaction.TransactionStatus;
 import ru.gigaden.utils.Validator;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
 
 /**
  * Класс BankAccount - базовый, содержит реализацию метода пополнения средств и абстрактный метод для снятия.
  * Хранит id аккаунта, id владельца и баланс.
- * Создаёт объект Logger для наследников - его настройки в logback.xml
+ * Баланс хранится в копейках в volatile long и меняется только через CAS,
+ * поэтому параллельные пополнения и снятия не теряют обновлений и не создают объектов.
+ * Методы try* сообщают об отказе через {@link TransactionStatus} без исключений,
+ * методы withdraw/deposit - обёртки над ними, выбрасывающие исключения.
+ * Создаёт объект Logger для наследников - его настройки в logback.xml.
+ * Каждая операция логируется на уровне DEBUG под проверкой isDebugEnabled,
+ * чтобы при выключенном DEBUG не упаковывать аргументы и не форматировать суммы.
  */
 @ToString
 @Getter
 @Slf4j
 public abstract class BankAccount {
+    private static final VarHandle BALANCE;
+    private static final VarHandle LISTENER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BALANCE = lookup.findVarHandle(BankAccount.class, "balance", long.class);
+            LISTENER = lookup.findVarHandle(BankAccount.class, "listener", AccountEventListener.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     protected long accountNumber;
-    protected BigDecimal balance;
+    @ToString.Exclude
+    private volatile long balance;
     protected long accountHolder;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private volatile AccountEventListener listener = AccountEventListener.NONE;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private volatile RuleChain rules;
 
     protected BankAccount(long accountNumber, long accountHolder) {
         this.accountNumber = accountNumber;
         this.accountHolder = accountHolder;
-        this.balance = BigDecimal.ZERO;
     }
 
+    /**
+     * Возвращает текущий баланс счёта.
+     *
+     * @return баланс на момент вызова.
+     */
+    @ToString.Include(name = "balance")
+    public BigDecimal getBalance() {
+        return BigDecimal.valueOf(balance, Money.SCALE);
+    }
+
+    /**
+     * @return текущий баланс счёта в копейках.
+     */
+    public long getBalanceMinorUnits() {
+        return balance;
+    }
+
+    /**
+     * Подписывает слушателя на успешные изменения счёта.
+     * Уже подписанные слушатели сохраняются и получают события раньше нового.
+     * Подписка через CAS, без synchronized: виртуальный поток не закрепляется за потоком-носителем.
+     *
+     * @param listener слушатель.
+     */
+    public void addListener(AccountEventListener listener) {
+        AccountEventListener current;
+        do {
+            current = this.listener;
+        } while (!LISTENER.compareAndSet(this, current, AccountEventListener.compose(current, listener)));
+    }
+
+    /**
+     * Задаёт счёту собственную цепочку правил вместо цепочки его типа.
+     * Настройка действует только в памяти и в журнал не пишется.
+     *
+     * @param rules цепочка правил; null - снова правила типа счёта из {@link RuleEngine}.
+     */
+    public void setRules(RuleChain rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @return собственная цепочка правил счёта или действующая цепочка его типа.
+     */
+    public RuleChain getRules() {
+        RuleChain own = rules;
+        return own != null ? own : RuleEngine.chain(AccountType.of(this));
+    }
+
+    /**
+     * Устанавливает баланс без проверок и без уведомления слушателей.
+     * Предназначен только для восстановления состояния из журнала или снимка,
+     * пока счёт ещё не доступен операциям.
+     *
+     * @param balance баланс в копейках.
+     */
+    public void restoreBalance(long balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * Уменьшает размер баланса, не выбрасывая исключений при отказе.
+     *
+     * @param amount - сумма для снятия.
+     * @return SUCCESS или причина отказа.
+     */
+    public TransactionStatus tryWithdraw(Money amount) {
+        return tryWithdraw(amount, null);
+    }
+
+    /**
+     * Уменьшает размер баланса, как {@link #tryWithdraw(Money)}, и при успехе записывает в receipt,
+     * что снятие использовало, - для отката пакета операций.
+     *
+     * @param amount  - сумма для снятия.
+     * @param receipt - квитанция снятия или null.
+     * @return SUCCESS или причина отказа.
+     */
+    public abstract TransactionStatus tryWithdraw(Money amount, WithdrawalReceipt receipt);
+
     /**
      * Уменьшает размер баланса.
      *
      * @param amount - сумма для снятия.
+     * @throws RuntimeException исключение из ru.gigaden.exception, соответствующее причине отказа.
      */
-    public abstract void withdraw(double amount);
+    public void withdraw(Money amount) {
+        TransactionStatus status = tryWithdraw(amount);
+        if (!status.isSuccess()) {
+            log.warn("Отказ в снятии суммы = {} с аккаунта id = {}: {}", amount, accountNumber, status);
+            throw rejection(status, amount);
+        }
+    }
+
+    /**
+     * Уменьшает размер баланса.
+     *
+     * @param amount - сумма для снятия в рублях, округляется до копейки.
+     */
+    public void withdraw(double amount) {
+        withdraw(Money.of(amount));
+    }
+
+    /**
+     * Увеличивает баланс, не выбрасывая исключений при отказе.
+     *
+     * @param amount - сумма для пополнения.
+     * @return SUCCESS или INVALID_DEPOSIT_AMOUNT.
+     */
+    public TransactionStatus tryDeposit(Money amount) {
+        long value = amount.getMinorUnits();
+        TransactionStatus status = Validator.depositStatus(value);
+        if (!status.isSuccess()) {
+            return reject(status, value);
+        }
+        long newBalance = credit(value);
+        listener.onDeposit(this, value, newBalance);
+        if (log.isDebugEnabled()) {
+            log.debug("На аккаунт id = {} зачислена сумма = {}. Баланс =  {}",
+                    accountNumber,
+                    amount,
+                    Money.format(newBalance));
+        }
+        return status;
+    }
 
     /**
      * Увеличивает баланс.
      *
      * @param amount - сумма для пополнения.
+     * @throws ru.gigaden.exception.DepositAmountException если сумма не положительная.
+     */
+    public void deposit(Money amount) {
+        TransactionStatus status = tryDeposit(amount);
+        if (!status.isSuccess()) {
+            log.warn("Попытка пополнить аккаунт id = {} суммой = {}", accountNumber, amount);
+            throw rejection(status, amount);
+        }
+    }
+
+    /**
+     * Увеличивает баланс.
+     *
+     * @param amount - сумма для пополнения в рублях, округляется до копейки.
      */
     public void deposit(double amount) {
-        Validator.checkDepositAmount(amount);
-        balance = balance.add(BigDecimal.valueOf(amount));
-        log.info("На аккаунт id = {} зачислена сумма = {}. Баланс =  {}",
-                accountNumber,
-                amount,
-                balance);
+        deposit(Money.of(amount));
+    }
+
+    /**
+     * Отменяет успешное пополнение - для отката пакета операций.
+     * Сумма списывается без комиссии и правил, но в пределах доступных средств:
+     * если пополнение уже потрачено, отмена отклоняется.
+     *
+     * @param amount сумма отменяемого пополнения.
+     * @return SUCCESS или LIMIT_EXCEEDED.
+     */
+    public TransactionStatus tryRevertDeposit(Money amount) {
+        long value = amount.getMinorUnits();
+        return debit(value, 0, getOverdraftMinorUnits());
+    }
+
+    /**
+     * Отменяет успешное снятие - для отката пакета операций.
+     * Возвращает на счёт списанную сумму вместе с комиссией, учёт суммы отменяет цепочка правил,
+     * которая проверяла снятие, а не действующая сейчас; слушатели получают пополнение.
+     *
+     * @param receipt квитанция снятия из {@link #tryWithdraw(Money, WithdrawalReceipt)}.
+     */
+    public void revertWithdraw(WithdrawalReceipt receipt) {
+        long value = receipt.getCharged();
+        receipt.getRules().release(this, value);
+        listener.onDeposit(this, value, credit(value));
+    }
+
+    /**
+     * @return сумма в копейках, доступная для снятия без учёта комиссии.
+     */
+    protected long getAvailableMinorUnits() {
+        return balance;
+    }
+
+    /**
+     * @return допустимый минус в копейках.
+     */
+    protected long getOverdraftMinorUnits() {
+        return 0;
+    }
+
+    /**
+     * Создаёт исключение старого API для отказа в операции.
+     * Вызывается только на пути отказа, поэтому форматирование сообщения не влияет на горячий путь.
+     *
+     * @param status причина отказа.
+     * @param amount сумма операции.
+     * @return исключение для выброса.
+     */
+    protected RuntimeException rejection(TransactionStatus status, Money amount) {
+        String message = switch (status) {
+            case LIMIT_EXCEEDED -> "Сумма = %s превышает доступный лимит = %s"
+                    .formatted(amount, Money.format(getAvailableMinorUnits()));
+            case TRANSACTION_LIMIT_EXCEEDED -> "Превышен лимит транзакции.";
+            case VELOCITY_LIMIT_EXCEEDED -> "Превышен лимит списаний за период.";
+            case INVALID_AMOUNT -> "Сумма = %s должна быть положительной".formatted(amount);
+            case INVALID_DEPOSIT_AMOUNT -> "Сумма пополнения = %s должна быть положительной".formatted(amount);
+            default -> "Операция не выполнена: " + status;
+        };
+        return status.toException(message);
+    }
+
+    /**
+     * Атомарно увеличивает баланс.
+     *
+     * @param amount сумма в копейках.
+     * @return новый баланс в копейках.
+     */
+    protected final long credit(long amount) {
+        long current;
+        long next;
+        do {
+            current = balance;
+            next = Math.addExact(current, amount);
+        } while (!compareAndSetBalance(current, next));
+        return next;
+    }
+
+    /**
+     * Атомарно уменьшает баланс, не допуская ухода в минус.
+     *
+     * @param amount сумма в копейках.
+     * @return SUCCESS или причина отказа.
+     */
+    protected final TransactionStatus debit(long amount) {
+        return debit(amount, 0, 0);
+    }
+
+    /**
+     * Атомарно уменьшает баланс в пределах кредитного лимита.
+     * Проверка лимита выполняется для того же значения баланса, которое заменяется,
+     * поэтому параллельные списания не уводят счёт за лимит.
+     *
+     * @param amount      сумма в копейках вместе с комиссией.
+     * @param fee         комиссия в составе amount - передаётся слушателям.
+     * @param creditLimit допустимый минус в копейках.
+     * @return SUCCESS или причина отказа.
+     */
+    protected final TransactionStatus debit(long amount, long fee, long creditLimit) {
+        long current;
+        do {
+            current = balance;
+            TransactionStatus status = Validator.withdrawStatus(amount, current, creditLimit);
+            if (!status.isSuccess()) {
+                return reject(status, amount);
+            }
+        } while (!compareAndSetBalance(current, current - amount));
+        listener.onWithdraw(this, amount, fee, current - amount);
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Списывает сумму после проверки по цепочке правил счёта.
+     * Если правила пропустили списание, а средств не хватило, правила отменяют учёт суммы.
+     *
+     * @param rules       цепочка правил, прочитанная один раз на операцию.
+     * @param amount      сумма в копейках вместе с комиссией.
+     * @param fee         комиссия в составе amount.
+     * @param creditLimit допустимый минус в копейках.
+     * @param receipt     квитанция, заполняемая при успехе, или null.
+     * @return SUCCESS или причина отказа, о которой уже сообщено слушателям.
+     */
+    protected final TransactionStatus debit(RuleChain rules, long amount, long fee, long creditLimit,
+                                            WithdrawalReceipt receipt) {
+        TransactionStatus status = rules.check(this, amount);
+        if (!status.isSuccess()) {
+            return reject(status, amount);
+        }
+        status = debit(amount, fee, creditLimit);
+        if (!status.isSuccess()) {
+            rules.release(this, amount);
+        } else if (receipt != null) {
+            receipt.record(rules, amount, fee);
+        }
+        return status;
+    }
+
+    /**
+     * Сообщает слушателям об отказе в операции.
+     *
+     * @param status причина отказа.
+     * @param amount сумма операции в копейках.
+     * @return status - для return в месте отказа.
+     */
+    protected final TransactionStatus reject(TransactionStatus status, long amount) {
+        listener.onRejected(this, status, amount);
+        return status;
+    }
+
+    /**
+     * @return слушатель событий счёта - для наследников, публикующих собственные события.
+     */
+    protected final AccountEventListener listener() {
+        return listener;
+    }
+
+    /**
+     * Заменяет баланс, если он не изменился с момента чтения.
+     *
+     * @param expected ожидаемый баланс в копейках.
+     * @param newValue новый баланс в копейках.
+     * @return true, если баланс заменён.
+     */
+    protected final boolean compareAndSetBalance(long expected, long newValue) {
+        return BALANCE.compareAndSet(this, expected, newValue);
     }
 }
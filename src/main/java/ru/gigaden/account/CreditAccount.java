@@ -1,27 +1,58 @@
 package ru.gigaden.account;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import ru.gigaden.exception.CreditLimitException;
-import ru.gigaden.exception.WithdrawLimitException;
 import ru.gigaden.exception.WithdrawalFeeException;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.FeeSchedule;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.RuleEngine;
 import ru.gigaden.transaction.TransactionFee;
+import ru.gigaden.transaction.TransactionStatus;
 import ru.gigaden.utils.TransactionValidator;
-import ru.gigaden.utils.Validator;
 
-import java.math.BigDecimal;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * Класс CreditAccount представляет банковский счёт с возможностью
  * ухода в кредит до установленного лимита.
- * Также добавляется комиссия за операции снятия средств.
+ * Также добавляется комиссия за операции снятия средств: по тарифам из правил счёта
+ * ({@link FeeSchedule}) или по ставке счёта, если уровней в тарифах нет.
+ * Списанная комиссия учитывается в журнале сборов тарифов, если он задан.
  */
 @Getter
 @Slf4j
 public class CreditAccount extends BankAccount implements TransactionFee, TransactionValidator {
-    private double creditLimit = 5000;
-    private double withdrawalFee = 1;
-    private static final int MAX_TRANSACTION_AMOUNT = 5_000;
+    private static final VarHandle FREE_WITHDRAWALS;
+
+    static {
+        try {
+            FREE_WITHDRAWALS = MethodHandles.lookup()
+                    .findVarHandle(CreditAccount.class, "freeWithdrawals", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Кредитный лимит в копейках; начальное значение берётся из правил кредитных счетов.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile long creditLimit = RuleEngine.chain(AccountType.CREDIT).getDefaultCreditLimitMinorUnits();
+    private volatile double withdrawalFee = 1;
+    /**
+     * Комиссия в формате {@link Money#toRate(double)}.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile long withdrawalFeeRate = Money.toRate(withdrawalFee);
+    /**
+     * Использованные бесплатные снятия в формате {@link FeeSchedule#claimFree(long)}.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile long freeWithdrawals;
 
     /**
      * Создаёт экземпляр кредитного счёта.
@@ -33,18 +64,50 @@ public class CreditAccount extends BankAccount implements TransactionFee, Transa
         super(accountNumber, accountHolder);
     }
 
+    /**
+     * @return действующий лимит одной операции кредитных счетов в рублях.
+     */
+    public static int getMaxTransactionAmount() {
+        return (int) Money.ofMinor(RuleEngine.chain(AccountType.CREDIT).getMaxTransactionMinorUnits()).toDouble();
+    }
+
+    /**
+     * @return кредитный лимит в рублях.
+     */
+    public double getCreditLimit() {
+        return Money.ofMinor(creditLimit).toDouble();
+    }
+
+    /**
+     * @return кредитный лимит.
+     */
+    public Money getCreditLimitAmount() {
+        return Money.ofMinor(creditLimit);
+    }
+
     /**
      * Устанавливает новый лимит кредита.
      *
      * @param creditLimit Новый лимит кредита. Должен быть ≥ 0.
      * @throws CreditLimitException Если переданный лимит меньше 0.
      */
-    public void setCreditLimit(double creditLimit) {
-        if (creditLimit < 0) {
+    public void setCreditLimit(Money creditLimit) {
+        if (creditLimit.signum() < 0) {
             log.warn("Попытка установить отрицательную кредитный лимит");
             throw new CreditLimitException("Кредитный лимит не может быть отрицательным");
         }
-        this.creditLimit = creditLimit;
+        this.creditLimit = creditLimit.getMinorUnits();
+        listener().onSettingsChanged(this);
+    }
+
+    /**
+     * Устанавливает новый лимит кредита.
+     *
+     * @param creditLimit Новый лимит кредита в рублях. Должен быть ≥ 0.
+     * @throws CreditLimitException Если переданный лимит меньше 0.
+     */
+    public void setCreditLimit(double creditLimit) {
+        setCreditLimit(Money.of(creditLimit));
     }
 
     /**
@@ -58,48 +121,120 @@ public class CreditAccount extends BankAccount implements TransactionFee, Transa
             log.warn("Попытка установить отрицательную комиссию за снятие");
             throw new WithdrawalFeeException("Комиссия за снятие не может быть отрицательной");
         }
+        this.withdrawalFeeRate = Money.toRate(withdrawalFee);
         this.withdrawalFee = withdrawalFee;
+        listener().onSettingsChanged(this);
     }
 
     /**
      * Снимает средства с учётом кредитного лимита и комиссии.
+     * Бесплатное снятие периода, если тарифы его дают, занимается до списания и возвращается при отказе.
      *
-     * @param amount Сумма для снятия.
+     * @param amount  Сумма для снятия.
+     * @param receipt квитанция снятия или null.
+     * @return SUCCESS или причина отказа.
      */
     @Override
-    public void withdraw(double amount) {
-        double amountWithFee = applyFee(amount);
-        Validator.checkWithdrawLimit(BigDecimal.valueOf(amountWithFee), balance, creditLimit);
-        /*
-         * Сделал проверку, как требуется по ТЗ,
-         * но я бы лучше вынес её в Validator.
-         * */
-        if (validate(amountWithFee)) {
-            log.warn("Размер транзакции = {} превышает допустимое значение = {}", amountWithFee, MAX_TRANSACTION_AMOUNT);
-            throw new WithdrawLimitException("Превышен лимит транзакции.");
+    public TransactionStatus tryWithdraw(Money amount, WithdrawalReceipt receipt) {
+        long value = amount.getMinorUnits();
+        RuleChain rules = getRules();
+        FeeSchedule fees = rules.getFeeSchedule();
+        long fee = fees.fee(value, getAccountHolder(), withdrawalFeeRate);
+        boolean free = fee > 0 && claimFreeWithdrawal(fees);
+        if (free) {
+            fee = 0;
+        }
+        long amountWithFee = value + fee;
+        TransactionStatus status = debit(rules, amountWithFee, fee, creditLimit, receipt);
+        if (!status.isSuccess()) {
+            if (free) {
+                releaseFreeWithdrawal(fees);
+            }
+            return status;
+        }
+        if (free && receipt != null) {
+            receipt.markFree();
+        }
+        if (fees.getLedger() != null) {
+            fees.getLedger().collect(fee);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("С аккаунта id = {} списана сумма с учётом комиссии = {}. Баланс =  {}",
+                    getAccountNumber(),
+                    Money.format(amountWithFee),
+                    Money.format(getBalanceMinorUnits()));
+        }
+        return status;
+    }
+
+    /**
+     * Отменяет успешное снятие: возвращает занятое бесплатное снятие и снимает комиссию
+     * с журнала сборов тех тарифов, по которым она была списана.
+     *
+     * @param receipt квитанция снятия.
+     */
+    @Override
+    public void revertWithdraw(WithdrawalReceipt receipt) {
+        super.revertWithdraw(receipt);
+        FeeSchedule fees = receipt.getRules().getFeeSchedule();
+        if (receipt.isFree()) {
+            releaseFreeWithdrawal(fees);
+        }
+        if (fees.getLedger() != null) {
+            fees.getLedger().refund(receipt.getFee());
         }
-        balance = balance.subtract(BigDecimal.valueOf(amountWithFee));
-        log.info("С аккаунта id = {} списана сумма с учётом комиссии = {}. Баланс =  {}",
-                getAccountNumber(),
-                amountWithFee,
-                balance);
     }
 
     /**
      * Рассчитывает сумму с учётом комиссии.
+     * Комиссия округляется до копейки по правилу HALF_UP.
+     * Если в тарифах заданы уровни комиссии, ставка, минимум и максимум берутся по уровню суммы;
+     * владельцы без комиссии платят только сумму. Бесплатные снятия периода здесь не учитываются.
      *
      * @param amount Исходная сумма.
      * @return Сумма с добавленной комиссией.
      */
     @Override
-    public double applyFee(double amount) {
-        amount += amount * withdrawalFee / 100;
-        return amount;
+    public Money applyFee(Money amount) {
+        long value = amount.getMinorUnits();
+        return Money.ofMinor(value + getRules().getFeeSchedule().fee(value, getAccountHolder(), withdrawalFeeRate));
     }
 
     @Override
-    public boolean validate(double amount) {
-        log.info("Сравниваем размер транзакции с допустимым значением.");
-        return amount > MAX_TRANSACTION_AMOUNT;
+    protected long getAvailableMinorUnits() {
+        return getBalanceMinorUnits() + creditLimit;
+    }
+
+    @Override
+    protected long getOverdraftMinorUnits() {
+        return creditLimit;
+    }
+
+    @Override
+    public boolean validate(Money amount) {
+        return amount.getMinorUnits() > getRules().getMaxTransactionMinorUnits();
+    }
+
+    private boolean claimFreeWithdrawal(FeeSchedule fees) {
+        if (!fees.hasFreeWithdrawals()) {
+            return false;
+        }
+        long current;
+        long next;
+        do {
+            current = freeWithdrawals;
+            next = fees.claimFree(current);
+            if (next == FeeSchedule.NO_FREE) {
+                return false;
+            }
+        } while (!FREE_WITHDRAWALS.compareAndSet(this, current, next));
+        return true;
+    }
+
+    private void releaseFreeWithdrawal(FeeSchedule fees) {
+        long current;
+        do {
+            current = freeWithdrawals;
+        } while (!FREE_WITHDRAWALS.compareAndSet(this, current, fees.releaseFree(current)));
     }
 }
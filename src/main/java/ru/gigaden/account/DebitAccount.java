@@ -1,11 +1,10 @@
 package ru.gigaden.account;
 
 import lombok.extern.slf4j.Slf4j;
-import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.RuleEngine;
+import ru.gigaden.transaction.TransactionStatus;
 import ru.gigaden.utils.TransactionValidator;
-import ru.gigaden.utils.Validator;
-
-import java.math.BigDecimal;
 
 /**
  * Класс DebitAccount представляет банковский счёт без возможности
@@ -14,44 +13,41 @@ import java.math.BigDecimal;
  */
 @Slf4j
 public class DebitAccount extends BankAccount implements TransactionValidator {
-    private static final int MAX_TRANSACTION_AMOUNT = 10_000;
-
     public DebitAccount(long accountNumber, long accountHolder) {
         super(accountNumber, accountHolder);
     }
 
+    /**
+     * @return действующий лимит одной операции дебетовых счетов в рублях.
+     */
     public static int getMaxTransactionAmount() {
-        return MAX_TRANSACTION_AMOUNT;
+        return (int) Money.ofMinor(RuleEngine.chain(AccountType.DEBIT).getMaxTransactionMinorUnits()).toDouble();
     }
 
     /**
      * Уменьшает баланс на заданную величину.
      *
      * @param amount размер средств для снятия.
-     *               Метод выбрасывает исключение в случае не успешной валидации amount.
+     *               Метод возвращает причину отказа в случае не успешной валидации amount.
      *               Уменьшает баланс на заданную величину.
+     * @param receipt квитанция снятия или null.
+     * @return SUCCESS или причина отказа.
      */
     @Override
-    public void withdraw(double amount) {
-        Validator.checkWithdrawLimit(BigDecimal.valueOf(amount), balance);
-        /*
-         * Сделал проверку, как требуется по ТЗ,
-         * но я бы лучше вынес её в Validator.
-         * */
-        if (validate(amount)) {
-            log.warn("Размер транзакции = {} превышает допустимое значение = {}", amount, MAX_TRANSACTION_AMOUNT);
-            throw new WithdrawLimitException("Превышен лимит транзакции.");
+    public TransactionStatus tryWithdraw(Money amount, WithdrawalReceipt receipt) {
+        long value = amount.getMinorUnits();
+        TransactionStatus status = debit(getRules(), value, 0, 0, receipt);
+        if (status.isSuccess() && log.isDebugEnabled()) {
+            log.debug("С аккаунта id = {} списана сумма = {}. Баланс =  {}",
+                    getAccountNumber(),
+                    amount,
+                    Money.format(getBalanceMinorUnits()));
         }
-        balance = balance.subtract(BigDecimal.valueOf(amount));
-        log.info("С аккаунта id = {} списана сумма = {}. Баланс =  {}",
-                getAccountNumber(),
-                amount,
-                balance);
+        return status;
     }
 
     @Override
-    public boolean validate(double amount) {
-        log.info("Сравниваем размер транзакции с допустимым значением.");
-        return amount > MAX_TRANSACTION_AMOUNT;
+    public boolean validate(Money amount) {
+        return amount.getMinorUnits() > getRules().getMaxTransactionMinorUnits();
     }
 }
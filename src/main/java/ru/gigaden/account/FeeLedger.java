@@ -0,0 +1,82 @@
+package ru.gigaden.account;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.money.Money;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Журнал сборов: копит комиссии, списанные по тарифам {@link ru.gigaden.rule.FeeSchedule},
+ * и зачисляет их на счёт сборов.
+ * <p>
+ * Комиссию платит каждое снятие, поэтому зачисление на один счёт из всех потоков упиралось бы
+ * в CAS одного баланса. Комиссии копятся в {@link LongAdder}: потоки, которые мешают друг другу,
+ * пишут в разные ячейки, а сумма ячеек переводится на счёт сборов одним пополнением в {@link #settle()},
+ * которое вызывается периодически или перед сверкой. Зачисления идут по одному под settleLock:
+ * два параллельных зачисления прочитали бы одну и ту же сумму и перевели бы её дважды.
+ */
+@Slf4j
+public final class FeeLedger {
+    /**
+     * Счёт, на который зачисляются собранные комиссии.
+     */
+    @Getter
+    private final BankAccount account;
+    private final LongAdder pending = new LongAdder();
+    private final ReentrantLock settleLock = new ReentrantLock();
+
+    public FeeLedger(BankAccount account) {
+        this.account = account;
+    }
+
+    /**
+     * Учитывает списанную комиссию.
+     *
+     * @param fee комиссия в копейках.
+     */
+    public void collect(long fee) {
+        if (fee != 0) {
+            pending.add(fee);
+        }
+    }
+
+    /**
+     * Отменяет учёт комиссии, возвращённой клиенту при откате снятия.
+     *
+     * @param fee комиссия в копейках.
+     */
+    public void refund(long fee) {
+        collect(-fee);
+    }
+
+    /**
+     * @return комиссии в копейках, собранные и ещё не зачисленные на счёт сборов.
+     */
+    public long getPendingMinorUnits() {
+        return pending.sum();
+    }
+
+    /**
+     * Зачисляет накопленные комиссии на счёт сборов. Зачисленная сумма вычитается из накопленного,
+     * а не обнуляет его, поэтому комиссии, учтённые во время зачисления, не теряются.
+     *
+     * @return зачисленная сумма в копейках; 0, если зачислять нечего.
+     */
+    public long settle() {
+        settleLock.lock();
+        try {
+            long fees = pending.sum();
+            if (fees <= 0) {
+                return 0;
+            }
+            pending.add(-fees);
+            account.deposit(Money.ofMinor(fees));
+            log.info("На счёт сборов {} зачислены комиссии {}", account.getAccountNumber(), Money.format(fees));
+            return fees;
+        } finally {
+            settleLock.unlock();
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package ru.gigaden.account;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import ru.gigaden.exception.InterestLimitException;
 import ru.gigaden.exception.InterestPeriodException;
+import ru.gigaden.money.Money;
 import ru.gigaden.transaction.InterestBearing;
-import ru.gigaden.utils.Validator;
+import ru.gigaden.transaction.TransactionStatus;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 
@@ -16,12 +19,36 @@ import java.time.temporal.ChronoUnit;
  * Класс SavingsAccount представляет банковский счёт с возможностью
  * начисления процентов на остаток.
  * Начисление происходит один раз в месяц.
+ * Период начисления занимается атомарно заменой даты последнего начисления,
+ * поэтому проценты за один период не начисляются дважды даже при конкурентных вызовах.
  */
+@Getter
 @Setter
 @Slf4j
 public class SavingsAccount extends BankAccount implements InterestBearing {
+    /**
+     * Признак того, что период начисления ещё не наступил или уже занят.
+     */
+    private static final long NOT_DUE = Long.MIN_VALUE;
+    private static final VarHandle LAST_INTEREST_PAID;
+
+    static {
+        try {
+            LAST_INTEREST_PAID = MethodHandles.lookup()
+                    .findVarHandle(SavingsAccount.class, "lastInterestPaid", LocalDate.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private double monthlyInterest = 3;
-    private LocalDate lastInterestPaid;
+    /**
+     * Процент на остаток в формате {@link Money#toRate(double)}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long monthlyInterestRate = Money.toRate(monthlyInterest);
+    private volatile LocalDate lastInterestPaid;
 
     public SavingsAccount(long accountNumber, long accountHolder) {
         super(accountNumber, accountHolder);
@@ -39,40 +66,108 @@ public class SavingsAccount extends BankAccount implements InterestBearing {
             log.warn("Попытка установить отрицательные проценты");
             throw new InterestLimitException("Проценты не могут быть отрицательными");
         }
+        this.monthlyInterestRate = Money.toRate(monthlyInterest);
         this.monthlyInterest = monthlyInterest;
+        listener().onSettingsChanged(this);
+    }
+
+    /**
+     * Устанавливает дату последнего начисления процентов.
+     *
+     * @param lastInterestPaid дата последнего начисления.
+     */
+    public void setLastInterestPaid(LocalDate lastInterestPaid) {
+        this.lastInterestPaid = lastInterestPaid;
+        listener().onSettingsChanged(this);
     }
 
     /**
      * Начисляет процент на остаток, проверяя, что с прошлого начисления
      * прошло не меньше месяца.
+     * Проценты округляются до копейки по правилу HALF_UP.
      * Обновляет дату последнего начисления процентов.
+     *
+     * @return начисленные проценты.
+     * @throws InterestPeriodException если с последнего начисления прошло меньше месяца.
      */
     @Override
-    public void applyInterest() {
-        /* Хз как это сделать правильно, решил записывать дату последнего начисления процентов и проверять,
-         * что не прошёл месяц между последним и следующим начислением*/
-        checkInterestPeriod(lastInterestPaid, LocalDate.now());
-        balance = balance
-                .add(balance
-                        .multiply(BigDecimal.valueOf(monthlyInterest)).divide(BigDecimal.valueOf(100), RoundingMode.HALF_UP)); //balance * monthlyInterest / 100;
-        lastInterestPaid = LocalDate.now();
-        log.info("На аккаунт id = {} начислены проценты, баланс = {}",
-                getAccountNumber(),
-                balance);
+    public Money applyInterest() {
+        long interest = accrue(LocalDate.now());
+        if (interest == NOT_DUE) {
+            throw new InterestPeriodException("Прошло меньше месяца с последнего начисления");
+        }
+        return Money.ofMinor(interest);
+    }
+
+    /**
+     * Начисляет процент на остаток на дату today без исключений - для пакетного начисления,
+     * где счёт, которому ещё рано начислять, - обычный исход.
+     *
+     * @param today дата начисления, одна на весь пакет.
+     * @return SUCCESS или INTEREST_NOT_DUE, если месяц с последнего начисления не прошёл
+     * или период уже занят другим потоком.
+     */
+    public TransactionStatus tryApplyInterest(LocalDate today) {
+        return accrue(today) == NOT_DUE ? TransactionStatus.INTEREST_NOT_DUE : TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Начисляет процент на остаток на дату today, как {@link #tryApplyInterest(LocalDate)},
+     * но возвращает начисленную сумму - она нужна для отката пакета операций.
+     *
+     * @param today дата начисления.
+     * @return начисленные проценты в копейках или -1, если начислять рано.
+     */
+    public long tryAccrueInterest(LocalDate today) {
+        long interest = accrue(today);
+        return interest == NOT_DUE ? -1 : interest;
+    }
+
+    /**
+     * Занимает период начисления заменой даты последнего начисления через CAS и начисляет проценты.
+     * Проигравший гонку поток видит новую дату и ничего не начисляет.
+     *
+     * @return начисленные проценты в копейках или NOT_DUE.
+     */
+    private long accrue(LocalDate today) {
+        LocalDate last = lastInterestPaid;
+        if (ChronoUnit.MONTHS.between(last, today) < 1 || !LAST_INTEREST_PAID.compareAndSet(this, last, today)) {
+            reject(TransactionStatus.INTEREST_NOT_DUE, 0);
+            return NOT_DUE;
+        }
+        long rate = monthlyInterestRate;
+        long current;
+        long interest;
+        do {
+            current = getBalanceMinorUnits();
+            interest = Money.percentOf(current, rate); //balance * monthlyInterest / 100;
+        } while (!compareAndSetBalance(current, current + interest));
+        listener().onInterest(this, interest, today, current + interest);
+        if (log.isDebugEnabled()) {
+            log.debug("На аккаунт id = {} начислены проценты, баланс = {}",
+                    getAccountNumber(),
+                    Money.format(current + interest));
+        }
+        return interest;
     }
 
     /**
      * Уменьшает размер баланса на заданное значения.
      *
-     * @param amount величина для уменьшения баланса
+     * @param amount  величина для уменьшения баланса
+     * @param receipt квитанция снятия или null.
+     * @return SUCCESS или причина отказа.
      */
     @Override
-    public void withdraw(double amount) {
-        Validator.checkWithdrawLimit(BigDecimal.valueOf(amount), balance);
-        balance = balance.subtract(BigDecimal.valueOf(amount));
-        log.info("С аккаунта id = {} списана сумма. Баланс =  {}",
-                getAccountNumber(),
-                balance);
+    public TransactionStatus tryWithdraw(Money amount, WithdrawalReceipt receipt) {
+        long value = amount.getMinorUnits();
+        TransactionStatus status = debit(getRules(), value, 0, 0, receipt);
+        if (status.isSuccess() && log.isDebugEnabled()) {
+            log.debug("С аккаунта id = {} списана сумма. Баланс =  {}",
+                    getAccountNumber(),
+                    Money.format(getBalanceMinorUnits()));
+        }
+        return status;
     }
 
     /**
@@ -0,0 +1,42 @@
+package ru.gigaden.account;
+
+import lombok.Getter;
+import lombok.ToString;
+import ru.gigaden.rule.RuleChain;
+
+/**
+ * Что фактически использовало успешное снятие - для его точного отката через
+ * {@link BankAccount#revertWithdraw(WithdrawalReceipt)}: цепочка правил, по которой прошла проверка,
+ * списанная сумма с комиссией и занятое бесплатное снятие. Цепочку нельзя перечитать при откате: её могли заменить,
+ * а резерв правил (например, VelocityRule) принадлежит той, что проверяла снятие.
+ * Заполняется счётом только при успехе; один объект можно переиспользовать.
+ */
+@Getter
+@ToString
+public final class WithdrawalReceipt {
+    @ToString.Exclude
+    private RuleChain rules;
+    /**
+     * Списанная сумма в копейках вместе с комиссией.
+     */
+    private long charged;
+    /**
+     * Комиссия в копейках в составе charged.
+     */
+    private long fee;
+    /**
+     * Снятие заняло бесплатное снятие периода по тарифам цепочки rules.
+     */
+    private boolean free;
+
+    void record(RuleChain rules, long charged, long fee) {
+        this.rules = rules;
+        this.charged = charged;
+        this.fee = fee;
+        this.free = false;
+    }
+
+    void markFree() {
+        this.free = true;
+    }
+}
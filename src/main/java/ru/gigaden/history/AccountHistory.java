@@ -0,0 +1,293 @@
+package ru.gigaden.history;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * История одного счёта: последовательность блоков по chunkSize записей.
+ * Последние chunksInMemory блоков лежат в памяти в колонках примитивов - это кэш свежих записей;
+ * более старые вытесняются в файл счёта, и в памяти от них остаётся только оглавление
+ * (смещение в файле, количество записей, время первой и последней). Без каталога вытеснения
+ * старые блоки отбрасываются. Все методы выполняются под блокировкой истории счёта.
+ */
+@Slf4j
+final class AccountHistory {
+    /**
+     * Запись в файле: long время, byte вид, byte статус, long сумма, long комиссия, long баланс.
+     */
+    private static final int RECORD_SIZE = Long.BYTES + 2 + 3 * Long.BYTES;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long accountNumber;
+    private final int chunkSize;
+    private final int chunksInMemory;
+    private final Path file;
+    /**
+     * Все блоки по порядку: сначала вытесненные (без данных), затем блоки в памяти.
+     */
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int inMemory;
+    private long fileLength;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long dropped;
+
+    AccountHistory(long accountNumber, int chunkSize, int chunksInMemory, Path spillDirectory) {
+        this.accountNumber = accountNumber;
+        this.chunkSize = chunkSize;
+        this.chunksInMemory = chunksInMemory;
+        this.file = spillDirectory == null ? null : spillDirectory.resolve("history-" + accountNumber + ".bin");
+    }
+
+    /**
+     * Добавляет запись. Время не убывает в пределах счёта - это нужно поиску по диапазону.
+     */
+    void append(long timestamp, HistoryEntry.Kind kind, TransactionStatus status, long amount, long fee, long balance) {
+        lock.lock();
+        try {
+            Chunk tail = inMemory == 0 ? null : chunks.get(chunks.size() - 1);
+            if (tail == null || tail.count == chunkSize) {
+                if (inMemory == chunksInMemory) {
+                    evictOldest();
+                }
+                tail = new Chunk(chunkSize);
+                chunks.add(tail);
+                inMemory++;
+            }
+            long time = Math.max(timestamp, lastTimestamp);
+            lastTimestamp = time;
+            tail.add(time, (byte) kind.ordinal(), (byte) status.ordinal(), amount, fee, balance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return последние n записей в порядке времени.
+     */
+    List<HistoryEntry> last(int n) {
+        lock.lock();
+        try {
+            List<HistoryEntry> result = new ArrayList<>(Math.min(n, chunkSize * chunksInMemory));
+            int first = chunks.size();
+            int needed = n;
+            while (first > 0 && needed > 0) {
+                first--;
+                needed -= chunks.get(first).count;
+            }
+            for (int i = first; i < chunks.size(); i++) {
+                Chunk chunk = load(chunks.get(i));
+                int from = i == first ? Math.max(0, -needed) : 0;
+                for (int j = from; j < chunk.count; j++) {
+                    result.add(chunk.entry(j));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return записи со временем в [from, to) в порядке времени.
+     */
+    List<HistoryEntry> range(long from, long to) {
+        lock.lock();
+        try {
+            List<HistoryEntry> result = new ArrayList<>();
+            for (Chunk meta : chunks) {
+                if (meta.count == 0 || meta.lastTime() < from || meta.firstTime >= to) {
+                    continue;
+                }
+                Chunk chunk = load(meta);
+                for (int j = chunk.lowerBound(from); j < chunk.count && chunk.times[j] < to; j++) {
+                    result.add(chunk.entry(j));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int memoryEntries() {
+        lock.lock();
+        try {
+            int entries = 0;
+            for (int i = chunks.size() - inMemory; i < chunks.size(); i++) {
+                entries += chunks.get(i).count;
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Вытесняет самый старый блок из памяти: записывает его в конец файла счёта или отбрасывает.
+     * Файл не сбрасывается на диск принудительно: источник истины - журнал, история восстановима.
+     */
+    private void evictOldest() {
+        int index = chunks.size() - inMemory;
+        Chunk chunk = chunks.get(index);
+        inMemory--;
+        if (file == null) {
+            chunks.remove(index);
+            dropped += chunk.count;
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.count * RECORD_SIZE);
+        for (int i = 0; i < chunk.count; i++) {
+            buffer.putLong(chunk.times[i])
+                    .put(chunk.kinds[i])
+                    .put(chunk.statuses[i])
+                    .putLong(chunk.amounts[i])
+                    .putLong(chunk.fees[i])
+                    .putLong(chunk.balances[i]);
+        }
+        buffer.flip();
+        // Файл прошлого запуска не описан оглавлением - первая запись начинает его заново.
+        StandardOpenOption mode = fileLength == 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            chunks.set(index, chunk.spilled(fileLength));
+            fileLength += (long) chunk.count * RECORD_SIZE;
+        } catch (IOException e) {
+            log.error("Не удалось вытеснить историю счёта = {} в {}, блок отброшен", accountNumber, file, e);
+            chunks.remove(index);
+            dropped += chunk.count;
+        }
+    }
+
+    /**
+     * @return блок с данными: сам блок, если он в памяти, иначе прочитанный из файла.
+     */
+    private Chunk load(Chunk chunk) {
+        if (chunk.times != null) {
+            return chunk;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.count * RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, chunk.offset + buffer.position()) < 0) {
+                    throw new IOException("Файл истории " + file + " короче оглавления");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        Chunk loaded = new Chunk(chunk.count);
+        for (int i = 0; i < chunk.count; i++) {
+            loaded.add(buffer.getLong(), buffer.get(), buffer.get(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+        return loaded;
+    }
+
+    /**
+     * Блок записей. У вытесненного блока массивы равны null, а times[0] и times[count-1]
+     * сохранены в firstTime/lastTime - для отбора блоков по диапазону без чтения файла.
+     */
+    private static final class Chunk {
+        private final long[] times;
+        private final byte[] kinds;
+        private final byte[] statuses;
+        private final long[] amounts;
+        private final long[] fees;
+        private final long[] balances;
+        private int count;
+        private long firstTime;
+        private long spilledLastTime;
+        private long offset;
+
+        private Chunk(int capacity) {
+            this.times = new long[capacity];
+            this.kinds = new byte[capacity];
+            this.statuses = new byte[capacity];
+            this.amounts = new long[capacity];
+            this.fees = new long[capacity];
+            this.balances = new long[capacity];
+        }
+
+        private Chunk(int count, long firstTime, long lastTime, long offset) {
+            this.times = null;
+            this.kinds = null;
+            this.statuses = null;
+            this.amounts = null;
+            this.fees = null;
+            this.balances = null;
+            this.count = count;
+            this.firstTime = firstTime;
+            this.spilledLastTime = lastTime;
+            this.offset = offset;
+        }
+
+        private void add(long time, byte kind, byte status, long amount, long fee, long balance) {
+            if (count == 0) {
+                firstTime = time;
+            }
+            times[count] = time;
+            kinds[count] = kind;
+            statuses[count] = status;
+            amounts[count] = amount;
+            fees[count] = fee;
+            balances[count] = balance;
+            count++;
+        }
+
+        private Chunk spilled(long offset) {
+            return new Chunk(count, firstTime, lastTime(), offset);
+        }
+
+        private long lastTime() {
+            return times == null ? spilledLastTime : times[count - 1];
+        }
+
+        /**
+         * @return индекс первой записи со временем не меньше time.
+         */
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private HistoryEntry entry(int index) {
+            return new HistoryEntry(times[index],
+                    HistoryEntry.Kind.ofCode(kinds[index]),
+                    amounts[index],
+                    fees[index],
+                    balances[index],
+                    STATUSES[statuses[index]]);
+        }
+    }
+}
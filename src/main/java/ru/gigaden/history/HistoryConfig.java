@@ -0,0 +1,32 @@
+package ru.gigaden.history;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Настройки истории операций.
+ */
+@Getter
+@Builder
+public class HistoryConfig {
+    /**
+     * Количество записей в блоке истории.
+     */
+    @Builder.Default
+    private final int chunkSize = 256;
+    /**
+     * Сколько последних блоков каждого счёта держать в памяти.
+     */
+    @Builder.Default
+    private final int chunksInMemory = 4;
+    /**
+     * Каталог для вытесненных блоков; null - старые блоки отбрасываются.
+     */
+    private final Path spillDirectory;
+
+    public static HistoryConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.gigaden.history;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.Instant;
+
+/**
+ * Запись истории счёта. Создаётся только при чтении истории - в самой истории записи хранятся
+ * в колонках примитивов (см. {@link TransactionHistory}).
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class HistoryEntry {
+    /**
+     * Вид записи; код хранится в истории одним байтом.
+     */
+    public enum Kind {
+        DEPOSIT,
+        WITHDRAW,
+        INTEREST,
+        REJECTED;
+
+        private static final Kind[] VALUES = values();
+
+        static Kind ofCode(int code) {
+            return VALUES[code];
+        }
+    }
+
+    private final Instant timestamp;
+    private final Kind kind;
+    /**
+     * Сумма операции в копейках; у снятия - вместе с комиссией.
+     */
+    private final long amount;
+    /**
+     * Комиссия в составе суммы снятия в копейках.
+     */
+    private final long fee;
+    /**
+     * Баланс после операции в копейках; у отказа - 0.
+     */
+    private final long balance;
+    /**
+     * Причина отказа; SUCCESS у выполненных операций.
+     */
+    private final TransactionStatus status;
+
+    HistoryEntry(long timestampMillis, Kind kind, long amount, long fee, long balance, TransactionStatus status) {
+        this.timestamp = Instant.ofEpochMilli(timestampMillis);
+        this.kind = kind;
+        this.amount = amount;
+        this.fee = fee;
+        this.balance = balance;
+        this.status = status;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.gigaden.history;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountEventListener;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.utils.ConcurrentLongObjectMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * История операций по счетам: пополнения, снятия с комиссией, начисления процентов и отказы.
+ * Подключается к счетам как {@link AccountEventListener}, поэтому видит операции из любого пути -
+ * прямые вызовы, TransactionProcessor, TransferService, движок разделов.
+ * <p>
+ * История счёта только дописывается и хранится блоками по {@link HistoryConfig#getChunkSize()} записей
+ * в колонках примитивов. В памяти держатся последние {@link HistoryConfig#getChunksInMemory()} блоков -
+ * выборка «последние N» обычно не трогает диск; старые блоки вытесняются в файл счёта
+ * в {@link HistoryConfig#getSpillDirectory()} или отбрасываются, если каталог не задан.
+ * Поэтому память на счёт ограничена chunkSize * chunksInMemory записями плюс оглавление вытесненных блоков.
+ * Выборка по времени пропускает блоки по времени первой и последней записи и ищет начало двоичным поиском.
+ */
+@Slf4j
+public class TransactionHistory implements AccountEventListener {
+    private final HistoryConfig config;
+    private final Clock clock;
+    private final ConcurrentLongObjectMap<AccountHistory> histories = new ConcurrentLongObjectMap<>();
+
+    public TransactionHistory() {
+        this(HistoryConfig.defaults(), Clock.systemUTC());
+    }
+
+    /**
+     * @param config настройки хранения.
+     * @param clock  часы для времени записей.
+     */
+    public TransactionHistory(HistoryConfig config, Clock clock) {
+        if (config.getChunkSize() < 1 || config.getChunksInMemory() < 1) {
+            throw new IllegalArgumentException("Размер блока и число блоков в памяти должны быть положительными");
+        }
+        if (config.getSpillDirectory() != null) {
+            try {
+                Files.createDirectories(config.getSpillDirectory());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * Подписывает историю на все счета хранилища.
+     */
+    public void attach(AccountRepository accounts) {
+        accounts.forEach(account -> account.addListener(this));
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @param n             количество записей.
+     * @return последние n записей счёта в порядке времени; пустой список, если истории нет.
+     */
+    public List<HistoryEntry> last(long accountNumber, int n) {
+        AccountHistory history = histories.get(accountNumber);
+        return history == null ? List.of() : history.last(n);
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @param from          начало периода, включительно.
+     * @param to            конец периода, не включительно.
+     * @return записи счёта за период в порядке времени.
+     */
+    public List<HistoryEntry> range(long accountNumber, Instant from, Instant to) {
+        AccountHistory history = histories.get(accountNumber);
+        return history == null ? List.of() : history.range(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * @return количество записей счёта, которые сейчас в памяти.
+     */
+    public int memoryEntries(long accountNumber) {
+        AccountHistory history = histories.get(accountNumber);
+        return history == null ? 0 : history.memoryEntries();
+    }
+
+    /**
+     * @return количество записей счёта, отброшенных без вытеснения на диск.
+     */
+    public long droppedEntries(long accountNumber) {
+        AccountHistory history = histories.get(accountNumber);
+        return history == null ? 0 : history.dropped();
+    }
+
+    @Override
+    public void onDeposit(BankAccount account, long amount, long balance) {
+        history(account).append(clock.millis(), HistoryEntry.Kind.DEPOSIT, TransactionStatus.SUCCESS, amount, 0, balance);
+    }
+
+    @Override
+    public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+        history(account).append(clock.millis(), HistoryEntry.Kind.WITHDRAW, TransactionStatus.SUCCESS, amount, fee, balance);
+    }
+
+    @Override
+    public void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+        history(account).append(clock.millis(), HistoryEntry.Kind.INTEREST, TransactionStatus.SUCCESS, interest, 0, balance);
+    }
+
+    @Override
+    public void onRejected(BankAccount account, TransactionStatus status, long amount) {
+        history(account).append(clock.millis(), HistoryEntry.Kind.REJECTED, status, amount, 0, 0);
+    }
+
+    private AccountHistory history(BankAccount account) {
+        return histories.computeIfAbsent(account.getAccountNumber(), number -> new AccountHistory(number,
+                config.getChunkSize(),
+                config.getChunksInMemory(),
+                config.getSpillDirectory()));
+    }
+}
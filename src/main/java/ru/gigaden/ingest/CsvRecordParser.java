@@ -0,0 +1,157 @@
+package ru.gigaden.ingest;
+
+import ru.gigaden.money.Money;
+
+/**
+ * Разбор строки CSV "accountNumber, operation, amount" прямо из байт, без создания String.
+ * Операция - deposit или withdraw без учёта регистра, сумма - рубли с не более чем
+ * {@link Money#SCALE} знаками после точки. Пробелы вокруг полей допускаются.
+ */
+final class CsvRecordParser {
+    private static final byte[] DEPOSIT = {'d', 'e', 'p', 'o', 's', 'i', 't'};
+    private static final byte[] WITHDRAW = {'w', 'i', 't', 'h', 'd', 'r', 'a', 'w'};
+    /**
+     * Больше цифр в long без риска переполнения не помещается.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    private CsvRecordParser() {
+    }
+
+    /**
+     * @param line байты файла.
+     * @param from начало строки.
+     * @param to   конец строки без перевода строки.
+     * @param out  запись, в которую кладётся результат.
+     * @return false, если строка не соответствует формату.
+     */
+    static boolean parse(byte[] line, int from, int to, IngestRecord out) {
+        int end = field(line, from, to);
+        long account = parseDigits(line, trimStart(line, from, end), trimEnd(line, from, end));
+        if (account < 0 || end == to) {
+            return false;
+        }
+        int start = end + 1;
+        end = field(line, start, to);
+        byte operation = parseOperation(line, trimStart(line, start, end), trimEnd(line, start, end));
+        if (operation == 0 || end == to) {
+            return false;
+        }
+        start = end + 1;
+        int amountFrom = trimStart(line, start, to);
+        int amountTo = trimEnd(line, start, to);
+        if (field(line, amountFrom, amountTo) != amountTo) {
+            return false;
+        }
+        boolean negative = amountFrom < amountTo && line[amountFrom] == '-';
+        long amount = parseAmount(line, negative ? amountFrom + 1 : amountFrom, amountTo);
+        if (amount < 0) {
+            return false;
+        }
+        out.accountNumber = account;
+        out.operation = operation;
+        out.amount = negative ? -amount : amount;
+        return true;
+    }
+
+    /**
+     * @return true, если строка похожа на заголовок: первое значащее поле начинается не с цифры.
+     */
+    static boolean isHeader(byte[] line, int from, int to) {
+        int start = trimStart(line, from, to);
+        return start < to && (line[start] < '0' || line[start] > '9');
+    }
+
+    private static int field(byte[] line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == ',') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static long parseDigits(byte[] line, int from, int to) {
+        if (from >= to || to - from > MAX_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return сумма в копейках или -1.
+     */
+    private static long parseAmount(byte[] line, int from, int to) {
+        int point = to;
+        for (int i = from; i < to; i++) {
+            if (line[i] == '.') {
+                point = i;
+                break;
+            }
+        }
+        long rubles = parseDigits(line, from, point);
+        if (rubles < 0 || rubles > Long.MAX_VALUE / 100) {
+            return -1;
+        }
+        long kopecks = 0;
+        if (point < to) {
+            int digits = to - point - 1;
+            if (digits < 1 || digits > Money.SCALE) {
+                return -1;
+            }
+            kopecks = parseDigits(line, point + 1, to);
+            if (kopecks < 0) {
+                return -1;
+            }
+            if (digits == 1) {
+                kopecks *= 10;
+            }
+        }
+        return rubles * 100 + kopecks;
+    }
+
+    private static byte parseOperation(byte[] line, int from, int to) {
+        if (matches(line, from, to, DEPOSIT)) {
+            return IngestRecord.DEPOSIT;
+        }
+        if (matches(line, from, to, WITHDRAW)) {
+            return IngestRecord.WITHDRAW;
+        }
+        return 0;
+    }
+
+    private static boolean matches(byte[] line, int from, int to, byte[] word) {
+        if (to - from != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            // Приведение ASCII-буквы к нижнему регистру.
+            if ((line[from + i] | 0x20) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int trimStart(byte[] line, int from, int to) {
+        while (from < to && (line[from] == ' ' || line[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] line, int from, int to) {
+        while (to > from && (line[to - 1] == ' ' || line[to - 1] == '\t')) {
+            to--;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.gigaden.ingest;
+
+/**
+ * Разобранная запись входного файла. Один экземпляр переиспользуется для всех записей.
+ */
+final class IngestRecord {
+    static final byte DEPOSIT = 1;
+    static final byte WITHDRAW = 2;
+
+    long accountNumber;
+    byte operation;
+    /**
+     * Сумма в копейках.
+     */
+    long amount;
+}
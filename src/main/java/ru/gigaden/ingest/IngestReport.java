@@ -0,0 +1,49 @@
+package ru.gigaden.ingest;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Итог загрузки файла операций.
+ */
+@Getter
+public final class IngestReport {
+    private final long records;
+    private final long applied;
+    private final long rejected;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    IngestReport(long records, long applied, long rejected, long bytes, long elapsedNanos) {
+        this.records = records;
+        this.applied = applied;
+        this.rejected = rejected;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return записей в секунду.
+     */
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : records * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return мегабайт в секунду.
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes / (1024.0 * 1024.0) * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestReport(records=" + records
+                + ", applied=" + applied
+                + ", rejected=" + rejected
+                + ", elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms"
+                + ", records/s=" + Math.round(getRecordsPerSecond())
+                + ", MB/s=" + String.format("%.1f", getMegabytesPerSecond()) + ")";
+    }
+}
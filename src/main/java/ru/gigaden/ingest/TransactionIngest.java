@@ -0,0 +1,270 @@
+package ru.gigaden.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Потоковая загрузка файлов операций "номер счёта, операция, сумма".
+ * Файл читается через FileChannel в буфер фиксированного размера, записи разбираются
+ * прямо из байт буфера без создания строк и применяются к счетам из {@link AccountRepository}
+ * через try-API, поэтому отказ не стоит исключения.
+ * Память не зависит от размера файла: в ней только буфер чтения и буфер файла отказов.
+ * Отклонённые записи вместе с причиной пишутся в отдельный CSV-файл.
+ * <p>
+ * Поддерживаются два формата:
+ * CSV - строки "accountNumber, operation, amount" (см. {@link CsvRecordParser}), заголовок пропускается;
+ * двоичный - записи по {@link #BINARY_RECORD_SIZE} байт: long номер счёта, byte операция
+ * (1 - пополнение, 2 - снятие), long сумма в копейках, big-endian.
+ */
+@Slf4j
+public class TransactionIngest {
+    public static final int BINARY_RECORD_SIZE = Long.BYTES + 1 + Long.BYTES;
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] PARSE_ERROR = reason("PARSE_ERROR");
+    private static final byte[] LINE_TOO_LONG = reason("LINE_TOO_LONG");
+    private static final byte[] TRUNCATED_RECORD = reason("TRUNCATED_RECORD");
+    private static final byte[][] STATUS_REASONS = new byte[TransactionStatus.values().length][];
+
+    static {
+        for (TransactionStatus status : TransactionStatus.values()) {
+            STATUS_REASONS[status.ordinal()] = reason(status.name());
+        }
+    }
+
+    private final AccountRepository accounts;
+    private final int bufferSize;
+
+    public TransactionIngest(AccountRepository accounts) {
+        this(accounts, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param accounts   хранилище счетов.
+     * @param bufferSize размер буфера чтения; строка CSV длиннее буфера отклоняется.
+     */
+    public TransactionIngest(AccountRepository accounts, int bufferSize) {
+        if (bufferSize < BINARY_RECORD_SIZE) {
+            throw new IllegalArgumentException("Буфер меньше одной двоичной записи");
+        }
+        this.accounts = accounts;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Загружает CSV-файл.
+     *
+     * @param input    входной файл.
+     * @param rejected файл отклонённых записей: исходная строка и причина через запятую.
+     * @return итог загрузки.
+     * @throws IOException при ошибке чтения или записи.
+     */
+    public IngestReport ingestCsv(Path input, Path rejected) throws IOException {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        IngestRecord record = new IngestRecord();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        byte[] bytes = buffer.array();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream rejects = rejectedOutput(rejected)) {
+            boolean eof = false;
+            boolean firstLine = true;
+            boolean skipping = false;
+            int scanned = 0;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = scanned; i < limit; i++) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    if (skipping) {
+                        skipping = false;
+                    } else if (!(firstLine && CsvRecordParser.isHeader(bytes, lineStart, lineEnd(bytes, lineStart, i)))) {
+                        applyCsv(bytes, lineStart, lineEnd(bytes, lineStart, i), record, counters, rejects);
+                    }
+                    firstLine = false;
+                    lineStart = i + 1;
+                }
+                if (eof && lineStart < limit && !skipping
+                        && !(firstLine && CsvRecordParser.isHeader(bytes, lineStart, limit))) {
+                    applyCsv(bytes, lineStart, lineEnd(bytes, lineStart, limit), record, counters, rejects);
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == bytes.length) {
+                    // Строка не поместилась в буфер: отклоняем её начало и пропускаем до перевода строки.
+                    if (!skipping) {
+                        counters.records++;
+                        reject(bytes, 0, Math.min(limit, 64), LINE_TOO_LONG, counters, rejects);
+                    }
+                    skipping = true;
+                    firstLine = false;
+                    lineStart = limit;
+                }
+                buffer.position(lineStart);
+                buffer.limit(limit);
+                buffer.compact();
+                scanned = buffer.position();
+            }
+            counters.bytes = channel.size();
+        }
+        return finish(input, counters, start);
+    }
+
+    /**
+     * Загружает двоичный файл.
+     *
+     * @param input    входной файл.
+     * @param rejected файл отклонённых записей в формате CSV с причиной.
+     * @return итог загрузки.
+     * @throws IOException при ошибке чтения или записи.
+     */
+    public IngestReport ingestBinary(Path input, Path rejected) throws IOException {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        IngestRecord record = new IngestRecord();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize - bufferSize % BINARY_RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream rejects = rejectedOutput(rejected)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.remaining() >= BINARY_RECORD_SIZE) {
+                    int position = buffer.position();
+                    record.accountNumber = buffer.getLong(position);
+                    record.operation = buffer.get(position + Long.BYTES);
+                    record.amount = buffer.getLong(position + Long.BYTES + 1);
+                    buffer.position(position + BINARY_RECORD_SIZE);
+                    counters.records++;
+                    if (record.operation != IngestRecord.DEPOSIT && record.operation != IngestRecord.WITHDRAW) {
+                        rejectBinary(record, PARSE_ERROR, counters, rejects);
+                        continue;
+                    }
+                    TransactionStatus status = apply(record);
+                    if (status.isSuccess()) {
+                        counters.applied++;
+                    } else {
+                        rejectBinary(record, STATUS_REASONS[status.ordinal()], counters, rejects);
+                    }
+                }
+                if (eof && buffer.hasRemaining()) {
+                    counters.records++;
+                    byte[] tail = new byte[buffer.remaining()];
+                    buffer.get(tail);
+                    reject(hex(tail), 0, tail.length * 2, TRUNCATED_RECORD, counters, rejects);
+                }
+                buffer.compact();
+            }
+            counters.bytes = channel.size();
+        }
+        return finish(input, counters, start);
+    }
+
+    private void applyCsv(byte[] bytes, int from, int to, IngestRecord record, Counters counters, OutputStream rejects)
+            throws IOException {
+        if (from == to) {
+            return;
+        }
+        counters.records++;
+        if (!CsvRecordParser.parse(bytes, from, to, record)) {
+            reject(bytes, from, to - from, PARSE_ERROR, counters, rejects);
+            return;
+        }
+        TransactionStatus status = apply(record);
+        if (status.isSuccess()) {
+            counters.applied++;
+        } else {
+            reject(bytes, from, to - from, STATUS_REASONS[status.ordinal()], counters, rejects);
+        }
+    }
+
+    private TransactionStatus apply(IngestRecord record) {
+        BankAccount account = accounts.get(record.accountNumber);
+        if (account == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        try {
+            Money amount = Money.ofMinor(record.amount);
+            return record.operation == IngestRecord.DEPOSIT ? account.tryDeposit(amount) : account.tryWithdraw(amount);
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка операции со счётом = {}", record.accountNumber, e);
+            return TransactionStatus.FAILED;
+        }
+    }
+
+    private static void reject(byte[] bytes, int from, int length, byte[] reason, Counters counters, OutputStream rejects)
+            throws IOException {
+        counters.rejected++;
+        rejects.write(bytes, from, length);
+        rejects.write(reason);
+    }
+
+    /**
+     * Двоичная запись отклоняется в том же CSV-виде, что и текстовая, - путь отказа редкий, строка здесь допустима.
+     */
+    private static void rejectBinary(IngestRecord record, byte[] reason, Counters counters, OutputStream rejects)
+            throws IOException {
+        String operation = record.operation == IngestRecord.DEPOSIT ? "deposit"
+                : record.operation == IngestRecord.WITHDRAW ? "withdraw"
+                : Byte.toString(record.operation);
+        byte[] line = (record.accountNumber + "," + operation + "," + Money.format(record.amount))
+                .getBytes(StandardCharsets.US_ASCII);
+        reject(line, 0, line.length, reason, counters, rejects);
+    }
+
+    private static IngestReport finish(Path input, Counters counters, long start) {
+        IngestReport report = new IngestReport(counters.records,
+                counters.applied,
+                counters.rejected,
+                counters.bytes,
+                System.nanoTime() - start);
+        log.info("Загрузка файла {} закончена: {}", input, report);
+        return report;
+    }
+
+    private static OutputStream rejectedOutput(Path rejected) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(rejected), 64 * 1024);
+    }
+
+    /**
+     * Конец строки без завершающего '\r'.
+     */
+    private static int lineEnd(byte[] bytes, int from, int to) {
+        return to > from && bytes[to - 1] == '\r' ? to - 1 : to;
+    }
+
+    private static byte[] reason(String reason) {
+        return ("," + reason + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] hex(byte[] bytes) {
+        byte[] digits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = digits[(bytes[i] >> 4) & 0xF];
+            result[2 * i + 1] = digits[bytes[i] & 0xF];
+        }
+        return result;
+    }
+
+    private static final class Counters {
+        private long records;
+        private long applied;
+        private long rejected;
+        private long bytes;
+    }
+}
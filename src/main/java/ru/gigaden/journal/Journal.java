@@ -0,0 +1,516 @@
+package ru.gigaden.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountEventListener;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал упреждающей записи (write-ahead log) изменений счетов.
+ * Каждое успешное пополнение, снятие, начисление процентов и изменение параметров
+ * дописывается записью фиксированной длины (см. {@link JournalRecord}) в файл сегмента,
+ * отображённый в память через FileChannel.map. Запись в журнал - это копирование 32 байт в память
+ * под короткой блокировкой, без системных вызовов.
+ * Сброс на диск (fsync) групповой: фоновый поток сбрасывает всё накопленное раз в
+ * fsyncIntervalMillis или досрочно, когда накопилось fsyncBatchSize записей.
+ * Поэтому после сбоя могут потеряться изменения последнего неподтверждённого интервала;
+ * кому нужна гарантия, вызывает {@link #sync()}.
+ * Каждая запись получает порядковый номер (LSN); сегмент называется по LSN своей первой записи.
+ * Чтобы время запуска не росло вместе с журналом, периодически строится снимок состояния
+ * (см. {@link #snapshot()}), а сегменты, целиком вошедшие в снимок, удаляются.
+ */
+@Slf4j
+public final class Journal implements AccountEventListener, Closeable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final JournalConfig config;
+    private final int recordsPerSegment;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final CRC32C checksum = new CRC32C();
+    private final byte[] scratch = new byte[JournalRecord.SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final ScheduledExecutorService flusher;
+    private final ScheduledExecutorService snapshotter;
+
+    // Поля ниже защищены appendLock.
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentFirstLsn;
+    private long nextLsn;
+    private int forcedPosition;
+    private int appendedSinceSync;
+    private boolean syncScheduled;
+    private boolean closed;
+
+    private volatile long durableLsn;
+
+    private Journal(Path directory, JournalConfig config, long lastSegmentLsn, long nextLsn) throws IOException {
+        this.directory = directory;
+        this.config = config;
+        this.recordsPerSegment = config.getSegmentSize() / JournalRecord.SIZE;
+        if (recordsPerSegment < 1) {
+            throw new IllegalArgumentException("Размер сегмента меньше одной записи");
+        }
+        this.nextLsn = nextLsn;
+        this.durableLsn = nextLsn;
+        mapSegment(lastSegmentLsn);
+        this.forcedPosition = positionOf(nextLsn);
+        this.flusher = daemonExecutor("journal-flusher");
+        flusher.scheduleWithFixedDelay(this::syncQuietly,
+                config.getFsyncIntervalMillis(),
+                config.getFsyncIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+        if (config.getSnapshotIntervalMillis() > 0) {
+            this.snapshotter = daemonExecutor("journal-snapshotter");
+            snapshotter.scheduleWithFixedDelay(this::snapshotQuietly,
+                    config.getSnapshotIntervalMillis(),
+                    config.getSnapshotIntervalMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotter = null;
+        }
+    }
+
+    /**
+     * Открывает журнал в каталоге; новые записи дописываются после последней целой записи.
+     *
+     * @param directory каталог журнала, создаётся при отсутствии.
+     * @param config    настройки.
+     * @return открытый журнал.
+     * @throws IOException при ошибке чтения или отображения файлов.
+     */
+    public static Journal open(Path directory, JournalConfig config) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            List<Long> snapshots = Snapshot.list(directory);
+            long start = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+            return new Journal(directory, config, start, start);
+        }
+        long last = segments.get(segments.size() - 1);
+        long[] end = {last};
+        readSegment(segmentPath(directory, last), last, (lsn, type, account, first, second) -> end[0] = lsn + 1);
+        return new Journal(directory, config, last, end[0]);
+    }
+
+    /**
+     * Восстанавливает все счета по последнему снимку и хвосту журнала после него
+     * и подписывает журнал на их изменения.
+     *
+     * @return хранилище с восстановленными счетами.
+     * @throws IOException при ошибке чтения.
+     */
+    public AccountRepository recover() throws IOException {
+        AccountRepository accounts = new AccountRepository();
+        long from = loadLatestSnapshot(accounts);
+        long next = replay(from, accounts);
+        accounts.forEach(account -> account.addListener(this));
+        log.info("Из журнала {} восстановлено счетов: {}, снимок до LSN {}, применено записей: {}",
+                directory, accounts.size(), from, next - from);
+        return accounts;
+    }
+
+    /**
+     * Применяет к хранилищу записи журнала начиная с fromLsn.
+     *
+     * @param fromLsn  первая применяемая запись.
+     * @param accounts восстанавливаемое хранилище.
+     * @return LSN, следующий за последней применённой записью.
+     * @throws IOException при ошибке чтения.
+     */
+    public long replay(long fromLsn, AccountRepository accounts) throws IOException {
+        return replay(fromLsn, Long.MAX_VALUE, accounts);
+    }
+
+    /**
+     * Применяет к хранилищу записи журнала из диапазона [fromLsn, toLsn).
+     */
+    long replay(long fromLsn, long toLsn, AccountRepository accounts) throws IOException {
+        long[] applied = {fromLsn};
+        List<Long> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            long first = segments.get(i);
+            if (i + 1 < segments.size() && segments.get(i + 1) <= fromLsn) {
+                continue;
+            }
+            if (first >= toLsn) {
+                break;
+            }
+            readSegment(segmentPath(directory, first), first, (lsn, type, account, a, b) -> {
+                if (lsn >= fromLsn && lsn < toLsn) {
+                    JournalRecord.apply(accounts, type, account, a, b);
+                    applied[0] = lsn + 1;
+                }
+            });
+        }
+        return applied[0];
+    }
+
+    /**
+     * Записывает открытие счёта с текущими параметрами и подписывает журнал на его изменения.
+     * Ненулевой текущий баланс записывается одной балансовой записью.
+     * Счёт регистрируется до того, как станет доступен операциям.
+     *
+     * @param account новый счёт.
+     */
+    public void register(BankAccount account) {
+        append(JournalRecord.OPEN, account.getAccountNumber(), account.getAccountHolder(), AccountType.of(account).getCode());
+        onSettingsChanged(account);
+        long balance = account.getBalanceMinorUnits();
+        if (balance != 0) {
+            append(balance > 0 ? JournalRecord.DEPOSIT : JournalRecord.WITHDRAW,
+                    account.getAccountNumber(),
+                    Math.abs(balance),
+                    0);
+        }
+        account.addListener(this);
+    }
+
+    @Override
+    public void onDeposit(BankAccount account, long amount, long balance) {
+        append(JournalRecord.DEPOSIT, account.getAccountNumber(), amount, 0);
+    }
+
+    @Override
+    public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+        append(JournalRecord.WITHDRAW, account.getAccountNumber(), amount, fee);
+    }
+
+    @Override
+    public void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+        append(JournalRecord.INTEREST, account.getAccountNumber(), interest, paidOn.toEpochDay());
+    }
+
+    @Override
+    public void onSettingsChanged(BankAccount account) {
+        AccountType type = AccountType.of(account);
+        if (type != AccountType.DEBIT) {
+            append(JournalRecord.SETTINGS,
+                    account.getAccountNumber(),
+                    JournalRecord.settingsFirst(account),
+                    JournalRecord.settingsSecond(account));
+        }
+    }
+
+    /**
+     * Строит снимок состояния на момент последней сброшенной на диск записи и удаляет
+     * сегменты журнала, целиком вошедшие в снимок.
+     * Снимок собирается не из живых счетов, а сворачиванием предыдущего снимка и записей журнала
+     * в отдельное хранилище, поэтому операции со счетами во время снимка не останавливаются
+     * и не блокируются, а снимок точно соответствует своему LSN.
+     *
+     * @return LSN, с которого журнал нужно читать после снимка.
+     * @throws IOException при ошибке чтения или записи.
+     */
+    public long snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            // В снимок попадают только записи, уже сброшенные на диск: иначе после сбоя
+            // журнал мог бы оказаться короче снимка.
+            long upTo = sync();
+            AccountRepository state = new AccountRepository();
+            long from = loadLatestSnapshot(state);
+            if (from >= upTo) {
+                return from;
+            }
+            replay(from, upTo, state);
+            Path written = Snapshot.write(directory, upTo, state);
+            int removed = truncate(upTo);
+            log.info("Снимок {}: счетов {}, удалено сегментов журнала: {}", written, state.size(), removed);
+            return upTo;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все записи, сделанные до вызова.
+     *
+     * @return LSN, до которого (не включая) журнал гарантированно на диске.
+     */
+    public long sync() {
+        syncLock.lock();
+        try {
+            MappedByteBuffer buffer;
+            int from;
+            int to;
+            long upTo;
+            appendLock.lock();
+            try {
+                if (closed) {
+                    return durableLsn;
+                }
+                buffer = segment;
+                from = forcedPosition;
+                to = positionOf(nextLsn);
+                upTo = nextLsn;
+                forcedPosition = to;
+                appendedSinceSync = 0;
+                syncScheduled = false;
+            } finally {
+                appendLock.unlock();
+            }
+            // fsync выполняется вне appendLock: запись в журнал в это время не останавливается.
+            if (to > from) {
+                buffer.force(from, to - from);
+            }
+            if (upTo > durableLsn) {
+                durableLsn = upTo;
+            }
+            return durableLsn;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Дожидается, пока на диске окажутся все записи до lsn (не включая).
+     * Если их уже сбросил другой поток или фоновый сброс, системный вызов не делается,
+     * поэтому много одновременных ожидающих разделяют один fsync.
+     *
+     * @param lsn граница ожидания, например {@link #getNextLsn()} после операции.
+     * @return LSN, до которого (не включая) журнал гарантированно на диске.
+     */
+    public long syncTo(long lsn) {
+        long durable = durableLsn;
+        return durable >= lsn ? durable : sync();
+    }
+
+    /**
+     * @return LSN следующей записи.
+     */
+    public long getNextLsn() {
+        appendLock.lock();
+        try {
+            return nextLsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return LSN, до которого (не включая) журнал гарантированно на диске.
+     */
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+        }
+        // Дожидаемся снимка, который мог строиться в момент закрытия.
+        snapshotLock.lock();
+        snapshotLock.unlock();
+        sync();
+        appendLock.lock();
+        try {
+            closed = true;
+            segment = null;
+            channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void append(byte type, long accountNumber, long first, long second) {
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Журнал закрыт");
+            }
+            if (nextLsn - segmentFirstLsn >= recordsPerSegment) {
+                roll();
+            }
+            scratchBuffer.putLong(JournalRecord.ACCOUNT_OFFSET, accountNumber);
+            scratchBuffer.putLong(JournalRecord.FIRST_OFFSET, first);
+            scratchBuffer.putLong(JournalRecord.SECOND_OFFSET, second);
+            checksum.reset();
+            checksum.update(type);
+            checksum.update(scratch, JournalRecord.ACCOUNT_OFFSET, JournalRecord.SIZE - JournalRecord.ACCOUNT_OFFSET);
+
+            int position = positionOf(nextLsn);
+            segment.putLong(position + JournalRecord.ACCOUNT_OFFSET, accountNumber);
+            segment.putLong(position + JournalRecord.FIRST_OFFSET, first);
+            segment.putLong(position + JournalRecord.SECOND_OFFSET, second);
+            segment.putInt(position + JournalRecord.CHECKSUM_OFFSET, (int) checksum.getValue());
+            // Тип пишется последним: ненулевой тип означает, что запись целиком на месте.
+            segment.put(position + JournalRecord.TYPE_OFFSET, type);
+            nextLsn++;
+
+            if (++appendedSinceSync >= config.getFsyncBatchSize() && !syncScheduled) {
+                syncScheduled = true;
+                flusher.execute(this::syncQuietly);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть новый сегмент журнала", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает заполненный сегмент, сбросив его на диск, и отображает следующий.
+     */
+    private void roll() throws IOException {
+        segment.force();
+        durableLsn = nextLsn;
+        channel.close();
+        mapSegment(nextLsn);
+        forcedPosition = 0;
+    }
+
+    private void mapSegment(long firstLsn) throws IOException {
+        channel = FileChannel.open(segmentPath(directory, firstLsn),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * JournalRecord.SIZE);
+        segmentFirstLsn = firstLsn;
+    }
+
+    private int positionOf(long lsn) {
+        return (int) (lsn - segmentFirstLsn) * JournalRecord.SIZE;
+    }
+
+    /**
+     * Загружает последний снимок, если он есть.
+     *
+     * @return LSN снимка или 0.
+     */
+    private long loadLatestSnapshot(AccountRepository accounts) throws IOException {
+        List<Long> snapshots = Snapshot.list(directory);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        return Snapshot.read(Snapshot.path(directory, snapshots.get(snapshots.size() - 1)), accounts);
+    }
+
+    /**
+     * Удаляет старые снимки и сегменты, все записи которых меньше lsn.
+     * Текущий (последний) сегмент не удаляется никогда.
+     *
+     * @return количество удалённых сегментов.
+     */
+    private int truncate(long lsn) throws IOException {
+        for (long snapshotLsn : Snapshot.list(directory)) {
+            if (snapshotLsn < lsn) {
+                Files.deleteIfExists(Snapshot.path(directory, snapshotLsn));
+            }
+        }
+        List<Long> segments = listSegments(directory);
+        int removed = 0;
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1) <= lsn; i++) {
+            Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+            removed++;
+        }
+        return removed;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка построения снимка журнала {}", directory, e);
+        }
+    }
+
+    private static ScheduledExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сброса журнала {} на диск", directory, e);
+        }
+    }
+
+    /**
+     * Читает записи сегмента до первой пустой или повреждённой записи.
+     */
+    static void readSegment(Path path, long firstLsn, JournalRecord.Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C crc = new CRC32C();
+            byte[] body = new byte[JournalRecord.SIZE - JournalRecord.ACCOUNT_OFFSET];
+            long lsn = firstLsn;
+            for (int position = 0; position + JournalRecord.SIZE <= size; position += JournalRecord.SIZE, lsn++) {
+                byte type = buffer.get(position + JournalRecord.TYPE_OFFSET);
+                if (type == 0) {
+                    return;
+                }
+                buffer.get(position + JournalRecord.ACCOUNT_OFFSET, body);
+                crc.reset();
+                crc.update(type);
+                crc.update(body);
+                if ((int) crc.getValue() != buffer.getInt(position + JournalRecord.CHECKSUM_OFFSET)) {
+                    log.warn("Повреждённая запись журнала {} в {}: чтение сегмента остановлено", lsn, path);
+                    return;
+                }
+                visitor.accept(lsn,
+                        type,
+                        buffer.getLong(position + JournalRecord.ACCOUNT_OFFSET),
+                        buffer.getLong(position + JournalRecord.FIRST_OFFSET),
+                        buffer.getLong(position + JournalRecord.SECOND_OFFSET));
+            }
+        }
+    }
+
+    /**
+     * @return LSN первых записей сегментов каталога по возрастанию.
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static Path segmentPath(Path directory, long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,36 @@
+package ru.gigaden.journal;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Настройки журнала.
+ */
+@Getter
+@Builder
+public class JournalConfig {
+    /**
+     * Размер файла сегмента в байтах; округляется вниз до целого числа записей.
+     */
+    @Builder.Default
+    private final int segmentSize = 64 * 1024 * 1024;
+    /**
+     * Период фонового сброса на диск (fsync) в миллисекундах.
+     */
+    @Builder.Default
+    private final long fsyncIntervalMillis = 10;
+    /**
+     * Количество записей, после которого сброс запускается, не дожидаясь периода.
+     */
+    @Builder.Default
+    private final int fsyncBatchSize = 4096;
+    /**
+     * Период фонового снимка состояния в миллисекундах; 0 - только явный вызов {@link Journal#snapshot()}.
+     */
+    @Builder.Default
+    private final long snapshotIntervalMillis = 60_000;
+
+    public static JournalConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,129 @@
+package ru.gigaden.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+
+import java.time.LocalDate;
+
+/**
+ * Формат записи журнала - 32 байта фиксированной длины:
+ * <pre>
+ * 0      тип записи (0 - пустое место, конец журнала)
+ * 1..3   резерв
+ * 4..7   CRC32C типа и байт 8..31
+ * 8..15  номер счёта
+ * 16..23 первое значение
+ * 24..31 второе значение
+ * </pre>
+ * Значения по типам:
+ * OPEN - владелец и код {@link AccountType};
+ * DEPOSIT - сумма;
+ * WITHDRAW - сумма вместе с комиссией и комиссия;
+ * INTEREST - проценты и дата начисления (epoch day);
+ * SETTINGS - для кредитного счёта лимит и биты double комиссии,
+ * для сберегательного биты double процента и дата последнего начисления.
+ * Балансовые записи хранят изменение, а не итоговый баланс: порядок записей
+ * конкурентных операций одного счёта может не совпадать с порядком CAS, а сумма изменений от него не зависит.
+ */
+@Slf4j
+final class JournalRecord {
+    static final int SIZE = 32;
+    static final int TYPE_OFFSET = 0;
+    static final int CHECKSUM_OFFSET = 4;
+    static final int ACCOUNT_OFFSET = 8;
+    static final int FIRST_OFFSET = 16;
+    static final int SECOND_OFFSET = 24;
+
+    static final byte OPEN = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAW = 3;
+    static final byte INTEREST = 4;
+    static final byte SETTINGS = 5;
+
+    private JournalRecord() {
+    }
+
+    /**
+     * Получатель прочитанных записей.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void accept(long lsn, byte type, long accountNumber, long first, long second);
+    }
+
+    /**
+     * Применяет запись к восстанавливаемому состоянию.
+     * Слушатели к счетам на этом этапе ещё не подключены, поэтому сеттеры не пишут в журнал повторно.
+     */
+    static void apply(AccountRepository accounts, byte type, long accountNumber, long first, long second) {
+        if (type == OPEN) {
+            accounts.add(AccountType.ofCode((int) second).create(accountNumber, first));
+            return;
+        }
+        BankAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            log.warn("Запись журнала типа {} для неизвестного счёта {} пропущена", type, accountNumber);
+            return;
+        }
+        switch (type) {
+            case DEPOSIT:
+                account.restoreBalance(account.getBalanceMinorUnits() + first);
+                break;
+            case WITHDRAW:
+                account.restoreBalance(account.getBalanceMinorUnits() - first);
+                break;
+            case INTEREST:
+                account.restoreBalance(account.getBalanceMinorUnits() + first);
+                ((SavingsAccount) account).setLastInterestPaid(LocalDate.ofEpochDay(second));
+                break;
+            case SETTINGS:
+                applySettings(account, first, second);
+                break;
+            default:
+                log.warn("Неизвестный тип записи журнала {} для счёта {}", type, accountNumber);
+        }
+    }
+
+    /**
+     * @return первое значение записи SETTINGS для счёта.
+     */
+    static long settingsFirst(BankAccount account) {
+        if (account instanceof CreditAccount) {
+            return ((CreditAccount) account).getCreditLimitAmount().getMinorUnits();
+        }
+        if (account instanceof SavingsAccount) {
+            return Double.doubleToLongBits(((SavingsAccount) account).getMonthlyInterest());
+        }
+        return 0;
+    }
+
+    /**
+     * @return второе значение записи SETTINGS для счёта.
+     */
+    static long settingsSecond(BankAccount account) {
+        if (account instanceof CreditAccount) {
+            return Double.doubleToLongBits(((CreditAccount) account).getWithdrawalFee());
+        }
+        if (account instanceof SavingsAccount) {
+            return ((SavingsAccount) account).getLastInterestPaid().toEpochDay();
+        }
+        return 0;
+    }
+
+    static void applySettings(BankAccount account, long first, long second) {
+        if (account instanceof CreditAccount) {
+            CreditAccount credit = (CreditAccount) account;
+            credit.setCreditLimit(Money.ofMinor(first));
+            credit.setWithdrawalFee(Double.longBitsToDouble(second));
+        } else if (account instanceof SavingsAccount) {
+            SavingsAccount savings = (SavingsAccount) account;
+            savings.setMonthlyInterest(Double.longBitsToDouble(first));
+            savings.setLastInterestPaid(LocalDate.ofEpochDay(second));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.gigaden.journal;
+
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Бинарный снимок состояния всех счетов на момент LSN журнала.
+ * Формат файла snapshot-&lt;lsn&gt;.snap:
+ * <pre>
+ * int  сигнатура
+ * long LSN - первая запись журнала, не вошедшая в снимок
+ * int  количество счетов
+ * на каждый счёт: byte код типа, long номер, long владелец, long баланс в копейках,
+ *                 long и long параметры в кодировке записи SETTINGS (см. {@link JournalRecord})
+ * int  CRC32C всего предыдущего содержимого
+ * </pre>
+ * Файл пишется во временный, сбрасывается на диск и переименовывается атомарно,
+ * поэтому снимок на диске либо целый, либо отсутствует.
+ */
+final class Snapshot {
+    private static final int MAGIC = 0x534E4150;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Записывает снимок хранилища.
+     *
+     * @param directory каталог журнала.
+     * @param lsn       первая запись журнала, не вошедшая в снимок.
+     * @param accounts  состояние счетов.
+     * @return путь к записанному снимку.
+     */
+    static Path write(Path directory, long lsn, AccountRepository accounts) throws IOException {
+        Path target = path(directory, lsn);
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), crc));
+            out.writeInt(MAGIC);
+            out.writeLong(lsn);
+            out.writeInt(accounts.size());
+            try {
+                accounts.forEach(account -> writeAccount(out, account));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+            // Контрольная сумма пишется мимо CheckedOutputStream, чтобы не учитывать саму себя.
+            DataOutputStream trailer = new DataOutputStream(Channels.newOutputStream(channel));
+            trailer.writeInt((int) crc.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Загружает снимок в хранилище.
+     *
+     * @param file     файл снимка.
+     * @param accounts пустое хранилище.
+     * @return LSN, с которого нужно продолжить чтение журнала.
+     * @throws IOException если файл повреждён или не читается.
+     */
+    static long read(Path file, AccountRepository accounts) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Файл не является снимком: " + file);
+            }
+            long lsn = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                BankAccount account = AccountType.ofCode(in.readByte()).create(in.readLong(), in.readLong());
+                account.restoreBalance(in.readLong());
+                JournalRecord.applySettings(account, in.readLong(), in.readLong());
+                accounts.add(account);
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Не совпадает контрольная сумма снимка " + file);
+            }
+            return lsn;
+        }
+    }
+
+    /**
+     * @return LSN снимков каталога по возрастанию.
+     */
+    static List<Long> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static Path path(Path directory, long lsn) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+    }
+
+    private static void writeAccount(DataOutputStream out, BankAccount account) {
+        try {
+            out.writeByte(AccountType.of(account).getCode());
+            out.writeLong(account.getAccountNumber());
+            out.writeLong(account.getAccountHolder());
+            out.writeLong(account.getBalanceMinorUnits());
+            out.writeLong(JournalRecord.settingsFirst(account));
+            out.writeLong(JournalRecord.settingsSecond(account));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ru.gigaden.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в стиле HdrHistogram: логарифмические интервалы, каждый из которых
+ * делится на 32 равные части, поэтому относительная погрешность значения не больше 1/32 (~3%)
+ * во всём диапазоне long, а память фиксирована.
+ * Значения меньше 32 хранятся точно.
+ * Счётчики интервалов - LongAdder, поэтому запись из многих потоков не создаёт конкуренции.
+ * Перцентили считаются по копии счётчиков, без остановки записи.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value значение, например задержка в наносекундах; отрицательное считается нулём.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts[indexOf(v)].increment();
+        total.increment();
+        max.accumulate(v);
+    }
+
+    /**
+     * @return количество записанных значений.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * @return наибольшее записанное значение.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile перцентиль от 0 до 100.
+     * @return наибольшее значение, эквивалентное (в пределах точности) значению этого перцентиля; 0 без записей.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Обнуляет гистограмму. Значения, записанные во время сброса, могут частично сохраниться.
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Номер интервала: старшие 6 бит значения - точные 32 ступени внутри степени двойки.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+}
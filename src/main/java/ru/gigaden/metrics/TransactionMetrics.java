@@ -0,0 +1,300 @@
+package ru.gigaden.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountEventListener;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionStatus;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики операций по типам счетов и гистограммы задержек.
+ * Подключается к счетам как {@link AccountEventListener}, поэтому считает и прямые вызовы,
+ * и операции через TransactionProcessor, TransferService или движок разделов.
+ * Все счётчики - LongAdder: запись из многих потоков не конкурирует за одну ячейку памяти,
+ * а стоимость сложения переносится на редкое чтение.
+ * Задержку снятия измеряет {@link #withdraw(BankAccount, Money)}; показатели
+ * публикуются в JMX через {@link #register(String)}.
+ */
+@Slf4j
+public class TransactionMetrics implements AccountEventListener, TransactionMetricsMXBean {
+    private static final AccountType[] TYPES = AccountType.values();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    /**
+     * Виды счётчиков для каждого типа счёта.
+     */
+    private enum Counter {
+        DEPOSITS("deposits"),
+        DEPOSITED_AMOUNT("depositedAmount"),
+        WITHDRAWALS("withdrawals"),
+        WITHDRAWN_AMOUNT("withdrawnAmount"),
+        FEES_COLLECTED("feesCollected"),
+        INTEREST_PAYMENTS("interestPayments"),
+        INTEREST_PAID("interestPaid");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private final LongAdder[][] counters = new LongAdder[TYPES.length][Counter.values().length];
+    private final LongAdder[][] rejections = new LongAdder[TYPES.length][STATUSES.length];
+    private final LatencyHistogram withdrawLatency = new LatencyHistogram();
+    private final LatencyHistogram processTransactionLatency = new LatencyHistogram();
+
+    public TransactionMetrics() {
+        for (int type = 0; type < TYPES.length; type++) {
+            for (int counter = 0; counter < Counter.values().length; counter++) {
+                counters[type][counter] = new LongAdder();
+            }
+            for (int status = 0; status < STATUSES.length; status++) {
+                rejections[type][status] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Подписывает метрики на все счета хранилища.
+     */
+    public void attach(AccountRepository accounts) {
+        accounts.forEach(account -> account.addListener(this));
+    }
+
+    /**
+     * Снимает сумму со счёта, измеряя задержку.
+     *
+     * @return итог tryWithdraw.
+     */
+    public TransactionStatus withdraw(BankAccount account, Money amount) {
+        long start = System.nanoTime();
+        try {
+            return account.tryWithdraw(amount);
+        } finally {
+            withdrawLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param nanos длительность пакетной обработки в наносекундах.
+     */
+    public void recordProcessTransaction(long nanos) {
+        processTransactionLatency.record(nanos);
+    }
+
+    public LatencyHistogram getWithdrawLatencyHistogram() {
+        return withdrawLatency;
+    }
+
+    public LatencyHistogram getProcessTransactionLatencyHistogram() {
+        return processTransactionLatency;
+    }
+
+    /**
+     * Публикует метрики в платформенном MBeanServer.
+     *
+     * @param name значение свойства name в ObjectName - чтобы различать несколько экземпляров.
+     * @return имя зарегистрированного бина.
+     * @throws IllegalStateException если бин с таким именем уже есть.
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("ru.gigaden:type=TransactionMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            log.info("Метрики операций опубликованы в JMX как {}", objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Не удалось зарегистрировать метрики в JMX", e);
+        }
+    }
+
+    /**
+     * Убирает метрики из платформенного MBeanServer.
+     */
+    public static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Не удалось снять метрики " + objectName + " с публикации", e);
+        }
+    }
+
+    @Override
+    public void onDeposit(BankAccount account, long amount, long balance) {
+        LongAdder[] type = counters[AccountType.of(account).ordinal()];
+        type[Counter.DEPOSITS.ordinal()].increment();
+        type[Counter.DEPOSITED_AMOUNT.ordinal()].add(amount);
+    }
+
+    @Override
+    public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+        LongAdder[] type = counters[AccountType.of(account).ordinal()];
+        type[Counter.WITHDRAWALS.ordinal()].increment();
+        type[Counter.WITHDRAWN_AMOUNT.ordinal()].add(amount);
+        if (fee != 0) {
+            type[Counter.FEES_COLLECTED.ordinal()].add(fee);
+        }
+    }
+
+    @Override
+    public void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+        LongAdder[] type = counters[AccountType.of(account).ordinal()];
+        type[Counter.INTEREST_PAYMENTS.ordinal()].increment();
+        type[Counter.INTEREST_PAID.ordinal()].add(interest);
+    }
+
+    @Override
+    public void onRejected(BankAccount account, TransactionStatus status, long amount) {
+        rejections[AccountType.of(account).ordinal()][status.ordinal()].increment();
+    }
+
+    /**
+     * @param type   тип счёта.
+     * @param status причина отказа.
+     * @return количество отказов.
+     */
+    public long getRejections(AccountType type, TransactionStatus status) {
+        return rejections[type.ordinal()][status.ordinal()].sum();
+    }
+
+    @Override
+    public long getDeposits() {
+        return sum(Counter.DEPOSITS);
+    }
+
+    @Override
+    public long getDepositedAmount() {
+        return sum(Counter.DEPOSITED_AMOUNT);
+    }
+
+    @Override
+    public long getWithdrawals() {
+        return sum(Counter.WITHDRAWALS);
+    }
+
+    @Override
+    public long getWithdrawnAmount() {
+        return sum(Counter.WITHDRAWN_AMOUNT);
+    }
+
+    @Override
+    public long getFeesCollected() {
+        return sum(Counter.FEES_COLLECTED);
+    }
+
+    @Override
+    public long getInterestPayments() {
+        return sum(Counter.INTEREST_PAYMENTS);
+    }
+
+    @Override
+    public long getInterestPaid() {
+        return sum(Counter.INTEREST_PAID);
+    }
+
+    @Override
+    public long getRejections() {
+        long total = 0;
+        for (LongAdder[] type : rejections) {
+            for (LongAdder count : type) {
+                total += count.sum();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getCountersByAccountType() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (AccountType type : TYPES) {
+            for (Counter counter : Counter.values()) {
+                result.put(type + "." + counter.key, counters[type.ordinal()][counter.ordinal()].sum());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getRejectionsByException() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (AccountType type : TYPES) {
+            for (TransactionStatus status : STATUSES) {
+                long count = rejections[type.ordinal()][status.ordinal()].sum();
+                if (count != 0) {
+                    result.merge(status.getExceptionType().getSimpleName(), count, Long::sum);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getRejectionsByAccountType() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (AccountType type : TYPES) {
+            for (TransactionStatus status : STATUSES) {
+                long count = rejections[type.ordinal()][status.ordinal()].sum();
+                if (count != 0) {
+                    result.merge(type + "." + status.getExceptionType().getSimpleName(), count, Long::sum);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getWithdrawLatency() {
+        return summary(withdrawLatency);
+    }
+
+    @Override
+    public Map<String, Long> getProcessTransactionLatency() {
+        return summary(processTransactionLatency);
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder[] type : counters) {
+            for (LongAdder count : type) {
+                count.reset();
+            }
+        }
+        for (LongAdder[] type : rejections) {
+            for (LongAdder count : type) {
+                count.reset();
+            }
+        }
+        withdrawLatency.reset();
+        processTransactionLatency.reset();
+    }
+
+    private long sum(Counter counter) {
+        long total = 0;
+        for (LongAdder[] type : counters) {
+            total += type[counter.ordinal()].sum();
+        }
+        return total;
+    }
+
+    private static Map<String, Long> summary(LatencyHistogram histogram) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("count", histogram.getCount());
+        result.put("p50", histogram.getValueAtPercentile(50));
+        result.put("p90", histogram.getValueAtPercentile(90));
+        result.put("p99", histogram.getValueAtPercentile(99));
+        result.put("p999", histogram.getValueAtPercentile(99.9));
+        result.put("max", histogram.getMax());
+        return result;
+    }
+}
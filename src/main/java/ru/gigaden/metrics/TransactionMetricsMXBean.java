@@ -0,0 +1,55 @@
+package ru.gigaden.metrics;
+
+import java.util.Map;
+
+/**
+ * Показатели операций со счетами для JMX. Суммы - в копейках, задержки - в наносекундах.
+ */
+public interface TransactionMetricsMXBean {
+
+    long getDeposits();
+
+    long getDepositedAmount();
+
+    long getWithdrawals();
+
+    long getWithdrawnAmount();
+
+    long getFeesCollected();
+
+    long getInterestPayments();
+
+    long getInterestPaid();
+
+    long getRejections();
+
+    /**
+     * @return количество операций по типу счёта и виду операции, ключ вида "CREDIT.withdrawals".
+     */
+    Map<String, Long> getCountersByAccountType();
+
+    /**
+     * @return количество отказов по простому имени исключения из ru.gigaden.exception.
+     */
+    Map<String, Long> getRejectionsByException();
+
+    /**
+     * @return количество отказов по типу счёта и исключению, ключ вида "CREDIT.WithdrawLimitException".
+     */
+    Map<String, Long> getRejectionsByAccountType();
+
+    /**
+     * @return count, p50, p90, p99, p999 и max задержки одного снятия.
+     */
+    Map<String, Long> getWithdrawLatency();
+
+    /**
+     * @return count, p50, p90, p99, p999 и max задержки пакетной обработки processTransaction.
+     */
+    Map<String, Long> getProcessTransactionLatency();
+
+    /**
+     * Обнуляет все показатели.
+     */
+    void reset();
+}
@@ -0,0 +1,194 @@
+package ru.gigaden.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Денежная сумма с фиксированной точкой: хранится целым числом копеек (минорных единиц).
+ * Объект неизменяемый. Для горячего пути есть статические методы над long,
+ * которые не создают объектов.
+ */
+public final class Money implements Comparable<Money> {
+    /**
+     * Количество знаков после запятой.
+     */
+    public static final int SCALE = 2;
+    /**
+     * Масштаб ставок в процентах: ставка хранится как процент * RATE_SCALE.
+     */
+    public static final long RATE_SCALE = 10_000;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+    private static final long PERCENT_DIVISOR = 100 * RATE_SCALE;
+    /**
+     * Граница, до которой double переводится в копейки без потери точности long.
+     */
+    private static final double FAST_PATH_LIMIT = 1e13;
+    private static final double FAST_PATH_EPSILON = 1e-6;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * @param minorUnits сумма в копейках.
+     * @return сумма.
+     */
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Переводит сумму в рублях в копейки с округлением HALF_UP.
+     *
+     * @param amount сумма в рублях.
+     * @return сумма.
+     */
+    public static Money of(double amount) {
+        return ofMinor(toMinor(amount));
+    }
+
+    /**
+     * Переводит сумму в рублях в копейки с округлением HALF_UP.
+     *
+     * @param amount сумма в рублях.
+     * @return сумма.
+     * @throws ArithmeticException если сумма не помещается в long.
+     */
+    public static Money of(BigDecimal amount) {
+        return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Переводит сумму в рублях в копейки с округлением HALF_UP.
+     * Обычные суммы переводятся без создания объектов, пограничные - через BigDecimal.
+     *
+     * @param amount сумма в рублях.
+     * @return сумма в копейках.
+     * @throws NumberFormatException если amount равен NaN или бесконечности.
+     */
+    public static long toMinor(double amount) {
+        if (Math.abs(amount) < FAST_PATH_LIMIT) {
+            double scaled = amount * MINOR_PER_UNIT;
+            long rounded = Math.round(scaled);
+            if (Math.abs(scaled - rounded) < FAST_PATH_EPSILON) {
+                return rounded;
+            }
+        }
+        return BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Переводит ставку в процентах во внутреннее представление.
+     *
+     * @param percent ставка в процентах.
+     * @return ставка, умноженная на RATE_SCALE.
+     */
+    public static long toRate(double percent) {
+        return BigDecimal.valueOf(percent)
+                .movePointRight(4)
+                .setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
+    }
+
+    /**
+     * Вычисляет процент от суммы с округлением до копейки по правилу HALF_UP,
+     * как BigDecimal.divide(..., RoundingMode.HALF_UP).
+     *
+     * @param minorUnits сумма в копейках.
+     * @param rate       ставка из {@link #toRate(double)}.
+     * @return процент от суммы в копейках.
+     */
+    public static long percentOf(long minorUnits, long rate) {
+        long high = Math.multiplyHigh(minorUnits, rate);
+        long product = minorUnits * rate;
+        if (high != (product >> 63)) {
+            return BigDecimal.valueOf(minorUnits)
+                    .multiply(BigDecimal.valueOf(rate))
+                    .divide(BigDecimal.valueOf(PERCENT_DIVISOR), 0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        }
+        long quotient = product / PERCENT_DIVISOR;
+        long remainder = product % PERCENT_DIVISOR;
+        if (Math.abs(remainder) * 2 >= PERCENT_DIVISOR) {
+            quotient += Long.signum(product);
+        }
+        return quotient;
+    }
+
+    /**
+     * Форматирует сумму в копейках как "рубли.копейки".
+     *
+     * @param minorUnits сумма в копейках.
+     * @return строковое представление.
+     */
+    public static String format(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE).toPlainString();
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public double toDouble() {
+        return (double) minorUnits / MINOR_PER_UNIT;
+    }
+
+    public Money add(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money subtract(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    /**
+     * @param rate ставка из {@link #toRate(double)}.
+     * @return процент от суммы, округлённый HALF_UP до копейки.
+     */
+    public Money percent(long rate) {
+        return ofMinor(percentOf(minorUnits, rate));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Money && ((Money) o).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return format(minorUnits);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.gigaden.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.utils.ConcurrentLongObjectMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище счетов в памяти.
+ * Поиск по номеру счёта - O(1) по таблице с ключами long без упаковки.
+ * Вторичный индекс по владельцу хранит массив его счетов, который
+ * заменяется целиком при изменении (у владельца обычно немного счетов),
+ * поэтому чтение индекса не требует копирования и блокировок.
+ * Счёт появляется в основном индексе чуть раньше, чем в индексе владельцев.
+ */
+@Slf4j
+public class AccountRepository {
+    private static final BankAccount[] NO_ACCOUNTS = new BankAccount[0];
+    private static final int DEFAULT_SEGMENTS = 64;
+
+    private final ConcurrentLongObjectMap<BankAccount> byNumber;
+    private final ConcurrentLongObjectMap<BankAccount[]> byHolder;
+
+    public AccountRepository() {
+        this(0);
+    }
+
+    /**
+     * @param expectedAccounts ожидаемое количество счетов - таблицы сразу выделяются под него.
+     */
+    public AccountRepository(int expectedAccounts) {
+        this.byNumber = new ConcurrentLongObjectMap<>(DEFAULT_SEGMENTS, expectedAccounts);
+        this.byHolder = new ConcurrentLongObjectMap<>(DEFAULT_SEGMENTS, expectedAccounts);
+    }
+
+    /**
+     * Добавляет счёт.
+     *
+     * @param account счёт.
+     * @return false, если счёт с таким номером уже есть - тогда хранилище не меняется.
+     */
+    public boolean add(BankAccount account) {
+        if (byNumber.putIfAbsent(account.getAccountNumber(), account) != null) {
+            log.warn("Счёт с номером {} уже существует", account.getAccountNumber());
+            return false;
+        }
+        byHolder.compute(account.getAccountHolder(), (holder, accounts) -> {
+            BankAccount[] current = accounts == null ? NO_ACCOUNTS : accounts;
+            BankAccount[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = account;
+            return updated;
+        });
+        return true;
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @return счёт или null - для горячего пути без создания Optional.
+     */
+    public BankAccount get(long accountNumber) {
+        return byNumber.get(accountNumber);
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @return счёт, если он есть.
+     */
+    public Optional<BankAccount> findByNumber(long accountNumber) {
+        return Optional.ofNullable(byNumber.get(accountNumber));
+    }
+
+    /**
+     * @param accountHolder идентификатор владельца.
+     * @return неизменяемый список счетов владельца в порядке добавления.
+     */
+    public List<BankAccount> findByHolder(long accountHolder) {
+        BankAccount[] accounts = byHolder.get(accountHolder);
+        return accounts == null ? List.of() : List.of(accounts);
+    }
+
+    /**
+     * Удаляет счёт.
+     *
+     * @param accountNumber номер счёта.
+     * @return удалённый счёт или null.
+     */
+    public BankAccount remove(long accountNumber) {
+        BankAccount account = byNumber.remove(accountNumber);
+        if (account != null) {
+            byHolder.compute(account.getAccountHolder(), (holder, accounts) -> {
+                if (accounts == null) {
+                    return null;
+                }
+                BankAccount[] updated = Arrays.stream(accounts)
+                        .filter(a -> a != account)
+                        .toArray(BankAccount[]::new);
+                return updated.length == 0 ? null : updated;
+            });
+        }
+        return account;
+    }
+
+    /**
+     * @return количество счетов.
+     */
+    public int size() {
+        return byNumber.size();
+    }
+
+    /**
+     * Обходит все счета. Порядок обхода не определён.
+     *
+     * @param action действие над счётом.
+     */
+    public void forEach(Consumer<? super BankAccount> action) {
+        byNumber.forEach((accountNumber, account) -> action.accept(account));
+    }
+}
@@ -0,0 +1,473 @@
+package ru.gigaden.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.FeeLedger;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.exception.WithdrawAmountException;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.FeeSchedule;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.utils.LongIntHashMap;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Колоночное хранилище счетов для пакетных проходов: списание со всех счетов, начисление процентов, отчёты.
+ * Каждое поле счёта лежит в своём массиве примитивов (номер, тип, баланс в копейках, кредитный лимит,
+ * лимит одной операции, ставки комиссии и процента, дата последнего начисления), строка i - один счёт.
+ * Пакетная операция - один плотный цикл по массивам без разыменования объектов и без ветвлений по классу счёта:
+ * различия типов сведены к значениям колонок (у дебетового счёта кредитный лимит и комиссия равны нулю,
+ * у сберегательного нет лимита операции, у не сберегательных проценты никогда не наступают).
+ * <p>
+ * Правила совпадают с {@link DebitAccount}, {@link CreditAccount} и {@link SavingsAccount}:
+ * комиссия считается через {@link Money#percentOf(long, long)}, лимит операции сравнивается с суммой
+ * вместе с комиссией, проценты начисляются, если {@code ChronoUnit.MONTHS.between(last, today) >= 1}.
+ * Лимит операции и тарифы комиссии берутся из цепочки правил счёта ({@link BankAccount#getRules()})
+ * на момент добавления строки; освобождение владельца от комиссии учитывается тогда же.
+ * Дополнительные правила цепочки и бесплатные снятия тарифов требуют объекта счёта, поэтому
+ * пакетное списание по строкам с ними не выполняется. Списанные комиссии зачисляются в журнал сборов
+ * тарифов одним вызовом на журнал за проход.
+ * <p>
+ * Хранилище - отдельная копия состояния: оно заполняется из {@link AccountRepository} через {@link #load},
+ * а результат возвращается в объекты через {@link #storeTo}. Слушатели счетов и журнал при пакетной
+ * обработке не вызываются. Класс не потокобезопасен; непересекающиеся диапазоны строк можно
+ * обрабатывать из разных потоков методами с границами from/to.
+ */
+@Slf4j
+public class ColumnarAccountStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final byte SUCCESS = (byte) TransactionStatus.SUCCESS.ordinal();
+    private static final byte LIMIT_EXCEEDED = (byte) TransactionStatus.LIMIT_EXCEEDED.ordinal();
+    private static final byte TRANSACTION_LIMIT_EXCEEDED = (byte) TransactionStatus.TRANSACTION_LIMIT_EXCEEDED.ordinal();
+    private static final byte INTEREST_NOT_DUE = (byte) TransactionStatus.INTEREST_NOT_DUE.ordinal();
+    /**
+     * Месяц последнего начисления у счетов без процентов: разница с любой реальной датой отрицательна.
+     */
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    private final LongIntHashMap rows;
+    /**
+     * Тарифы с уровнями комиссии; строка ссылается на свои через feeTiers.
+     */
+    private final List<FeeSchedule> feeSchedules = new ArrayList<>();
+    /**
+     * Журналы сборов; элемент 0 - строки без журнала, строка ссылается на свой через feeLedgers.
+     */
+    private final List<FeeLedger> ledgers = new ArrayList<>(Collections.singletonList(null));
+    private boolean customRules;
+    private int size;
+    private long[] numbers;
+    private long[] holders;
+    private byte[] types;
+    private long[] balances;
+    private long[] creditLimits;
+    private long[] transactionLimits;
+    private long[] feeRates;
+    /**
+     * Индекс тарифов с уровнями комиссии в feeSchedules или -1, если комиссия задаётся ставкой счёта.
+     */
+    private int[] feeTiers;
+    private int[] feeLedgers;
+    /**
+     * Рабочая колонка withdrawRange: до основного цикла - сумма списания строки вместе с комиссией,
+     * после него - списанная комиссия (0 при отказе). Не является состоянием счёта.
+     */
+    private long[] costs;
+    private long[] interestRates;
+    /**
+     * Дата последнего начисления разложена на номер месяца (год * 12 + месяц - 1) и день месяца,
+     * чтобы проверка периода была целочисленной арифметикой без объектов LocalDate.
+     */
+    private int[] interestMonths;
+    private byte[] interestDays;
+
+    public ColumnarAccountStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity ожидаемое количество счетов - массивы сразу выделяются под него.
+     */
+    public ColumnarAccountStore(int capacity) {
+        int initial = Math.max(capacity, 16);
+        this.rows = new LongIntHashMap(initial);
+        this.numbers = new long[initial];
+        this.holders = new long[initial];
+        this.types = new byte[initial];
+        this.balances = new long[initial];
+        this.creditLimits = new long[initial];
+        this.transactionLimits = new long[initial];
+        this.feeRates = new long[initial];
+        this.feeTiers = new int[initial];
+        this.feeLedgers = new int[initial];
+        this.costs = new long[initial];
+        this.interestRates = new long[initial];
+        this.interestMonths = new int[initial];
+        this.interestDays = new byte[initial];
+    }
+
+    /**
+     * Создаёт колоночную копию всех счетов хранилища.
+     *
+     * @param accounts хранилище счетов.
+     * @return заполненное колоночное хранилище.
+     */
+    public static ColumnarAccountStore load(AccountRepository accounts) {
+        ColumnarAccountStore store = new ColumnarAccountStore(accounts.size());
+        accounts.forEach(store::add);
+        return store;
+    }
+
+    /**
+     * Добавляет строку с текущим состоянием и параметрами счёта.
+     *
+     * @param account счёт.
+     * @return номер строки или -1, если счёт с таким номером уже есть.
+     */
+    public int add(BankAccount account) {
+        if (rows.containsKey(account.getAccountNumber())) {
+            log.warn("Счёт с номером {} уже есть в колоночном хранилище", account.getAccountNumber());
+            return -1;
+        }
+        if (size == numbers.length) {
+            grow();
+        }
+        int row = size++;
+        RuleChain rules = account.getRules();
+        FeeSchedule fees = rules.getFeeSchedule();
+        customRules |= rules.hasRules() || fees.hasFreeWithdrawals();
+        numbers[row] = account.getAccountNumber();
+        holders[row] = account.getAccountHolder();
+        types[row] = (byte) AccountType.of(account).getCode();
+        balances[row] = account.getBalanceMinorUnits();
+        creditLimits[row] = 0;
+        transactionLimits[row] = rules.getMaxTransactionMinorUnits();
+        feeRates[row] = 0;
+        feeTiers[row] = -1;
+        feeLedgers[row] = 0;
+        interestRates[row] = 0;
+        interestMonths[row] = NEVER;
+        interestDays[row] = 0;
+        if (account instanceof CreditAccount credit) {
+            creditLimits[row] = credit.getCreditLimitAmount().getMinorUnits();
+            boolean waived = fees.waives(account.getAccountHolder());
+            feeRates[row] = waived ? 0 : Money.toRate(credit.getWithdrawalFee());
+            feeTiers[row] = fees.hasTiers() && !waived ? index(feeSchedules, fees) : -1;
+            feeLedgers[row] = fees.getLedger() == null ? 0 : index(ledgers, fees.getLedger());
+        } else if (account instanceof SavingsAccount savings) {
+            interestRates[row] = Money.toRate(savings.getMonthlyInterest());
+            LocalDate last = savings.getLastInterestPaid();
+            interestMonths[row] = monthIndex(last);
+            interestDays[row] = (byte) last.getDayOfMonth();
+        }
+        rows.put(account.getAccountNumber(), row);
+        return row;
+    }
+
+    /**
+     * Записывает балансы и даты начисления процентов обратно в счета хранилища.
+     * Счета, которых в хранилище нет, пропускаются.
+     *
+     * @param accounts хранилище счетов.
+     * @return количество обновлённых счетов.
+     */
+    public int storeTo(AccountRepository accounts) {
+        int updated = 0;
+        for (int row = 0; row < size; row++) {
+            BankAccount account = accounts.get(numbers[row]);
+            if (account == null) {
+                continue;
+            }
+            account.restoreBalance(balances[row]);
+            if (account instanceof SavingsAccount savings) {
+                savings.setLastInterestPaid(getLastInterestPaid(row));
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    /**
+     * Снимает одну и ту же сумму со всех счетов.
+     *
+     * @param amount   сумма списания без комиссии.
+     * @param statuses массив под статусы строк ({@link TransactionStatus#ordinal()}) или null.
+     * @return количество успешных списаний.
+     * @throws WithdrawAmountException если сумма не положительна.
+     * @throws UnsupportedOperationException если у счетов есть дополнительные правила списания или бесплатные снятия.
+     */
+    public int withdrawAll(Money amount, byte[] statuses) {
+        return withdrawRange(amount, 0, size, statuses);
+    }
+
+    /**
+     * Снимает одну и ту же сумму со строк [from, to).
+     * Проход разбит на три цикла: сумма с комиссией каждой строки записывается в рабочую колонку,
+     * затем цикл без ветвлений по типу счёта и без косвенной адресации выбирает статус и новый баланс
+     * условными выражениями по колонкам, и только при настроенных журналах сборов отдельный цикл
+     * складывает списанные комиссии по журналам.
+     *
+     * @param amount   сумма списания без комиссии.
+     * @param from     первая строка.
+     * @param to       строка за последней.
+     * @param statuses массив под статусы строк ({@link TransactionStatus#ordinal()}) или null.
+     * @return количество успешных списаний.
+     * @throws WithdrawAmountException если сумма не положительна.
+     * @throws UnsupportedOperationException если у счетов есть дополнительные правила списания или бесплатные снятия.
+     */
+    public int withdrawRange(Money amount, int from, int to, byte[] statuses) {
+        checkRange(from, to);
+        long value = amount.getMinorUnits();
+        if (value <= 0) {
+            throw new WithdrawAmountException("Сумма = %s должна быть положительной".formatted(amount));
+        }
+        if (customRules) {
+            throw new UnsupportedOperationException("Дополнительные правила списания требуют объектов счетов");
+        }
+        // Сумма одна на весь проход, поэтому списание по уровням комиссии считается один раз на тарифы.
+        long[] tierCosts = new long[feeSchedules.size()];
+        for (int schedule = 0; schedule < tierCosts.length; schedule++) {
+            tierCosts[schedule] = value + feeSchedules.get(schedule).fee(value, 0);
+        }
+        long[] costs = this.costs;
+        long[] feeRates = this.feeRates;
+        int[] feeTiers = this.feeTiers;
+        if (tierCosts.length == 0) {
+            for (int i = from; i < to; i++) {
+                costs[i] = value + Money.percentOf(value, feeRates[i]);
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                int tier = feeTiers[i];
+                costs[i] = tier >= 0 ? tierCosts[tier] : value + Money.percentOf(value, feeRates[i]);
+            }
+        }
+        long[] balances = this.balances;
+        long[] creditLimits = this.creditLimits;
+        long[] transactionLimits = this.transactionLimits;
+        int succeeded = 0;
+        for (int i = from; i < to; i++) {
+            long cost = costs[i];
+            long balance = balances[i];
+            byte status = cost > transactionLimits[i] ? TRANSACTION_LIMIT_EXCEEDED
+                    : cost > balance + creditLimits[i] ? LIMIT_EXCEEDED
+                    : SUCCESS;
+            balances[i] = status == SUCCESS ? balance - cost : balance;
+            succeeded += status == SUCCESS ? 1 : 0;
+            costs[i] = status == SUCCESS ? cost - value : 0;
+            if (statuses != null) {
+                statuses[i] = status;
+            }
+        }
+        if (ledgers.size() > 1) {
+            collectFees(from, to);
+        }
+        return succeeded;
+    }
+
+    /**
+     * Зачисляет комиссии строк [from, to), оставленные в costs проходом списания, в журналы сборов:
+     * суммы складываются по журналам, затем один вызов на журнал.
+     */
+    private void collectFees(int from, int to) {
+        long[] collected = new long[ledgers.size()];
+        for (int i = from; i < to; i++) {
+            collected[feeLedgers[i]] += costs[i];
+        }
+        for (int ledger = 1; ledger < collected.length; ledger++) {
+            ledgers.get(ledger).collect(collected[ledger]);
+        }
+    }
+
+    /**
+     * Начисляет проценты всем сберегательным счетам, у которых с последнего начисления прошёл месяц.
+     *
+     * @param today    дата начисления, одна на весь проход.
+     * @param statuses массив под статусы строк ({@link TransactionStatus#ordinal()}) или null;
+     *                 у не сберегательных счетов статус INTEREST_NOT_DUE.
+     * @return количество счетов, которым начислены проценты.
+     */
+    public int applyInterestAll(LocalDate today, byte[] statuses) {
+        return applyInterestRange(today, 0, size, statuses);
+    }
+
+    /**
+     * Начисляет проценты строкам [from, to).
+     * Полные месяцы между датами считаются как в {@code LocalDate.until}: разница номеров месяцев
+     * минус один, если день месяца ещё не наступил.
+     *
+     * @param today    дата начисления.
+     * @param from     первая строка.
+     * @param to       строка за последней.
+     * @param statuses массив под статусы строк или null.
+     * @return количество счетов, которым начислены проценты.
+     */
+    public int applyInterestRange(LocalDate today, int from, int to, byte[] statuses) {
+        checkRange(from, to);
+        int month = monthIndex(today);
+        int day = today.getDayOfMonth();
+        byte dayOfMonth = (byte) day;
+        long[] balances = this.balances;
+        long[] interestRates = this.interestRates;
+        int[] interestMonths = this.interestMonths;
+        byte[] interestDays = this.interestDays;
+        int accrued = 0;
+        for (int i = from; i < to; i++) {
+            int months = month - interestMonths[i] - (day < interestDays[i] ? 1 : 0);
+            if (months >= 1) {
+                balances[i] += Money.percentOf(balances[i], interestRates[i]);
+                interestMonths[i] = month;
+                interestDays[i] = dayOfMonth;
+                accrued++;
+            }
+            if (statuses != null) {
+                statuses[i] = months >= 1 ? SUCCESS : INTEREST_NOT_DUE;
+            }
+        }
+        return accrued;
+    }
+
+    /**
+     * @return сумма балансов всех счетов в копейках.
+     */
+    public long totalBalance() {
+        long[] balances = this.balances;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += balances[i];
+        }
+        return total;
+    }
+
+    /**
+     * @param type тип счёта.
+     * @return сумма балансов счетов этого типа в копейках.
+     */
+    public long totalBalance(AccountType type) {
+        long[] balances = this.balances;
+        byte[] types = this.types;
+        byte code = (byte) type.getCode();
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += types[i] == code ? balances[i] : 0;
+        }
+        return total;
+    }
+
+    /**
+     * @return сумма задолженности по кредитным счетам (модуль отрицательных балансов) в копейках.
+     */
+    public long totalDebt() {
+        long[] balances = this.balances;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total -= Math.min(balances[i], 0);
+        }
+        return total;
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @return номер строки или -1, если счёта нет.
+     */
+    public int rowOf(long accountNumber) {
+        return rows.get(accountNumber);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getAccountNumber(int row) {
+        checkRow(row);
+        return numbers[row];
+    }
+
+    public long getAccountHolder(int row) {
+        checkRow(row);
+        return holders[row];
+    }
+
+    public AccountType getType(int row) {
+        checkRow(row);
+        return AccountType.ofCode(types[row]);
+    }
+
+    public long getBalanceMinorUnits(int row) {
+        checkRow(row);
+        return balances[row];
+    }
+
+    /**
+     * @return дата последнего начисления процентов или null у не сберегательного счёта.
+     */
+    public LocalDate getLastInterestPaid(int row) {
+        checkRow(row);
+        int month = interestMonths[row];
+        if (month == NEVER) {
+            return null;
+        }
+        return LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, interestDays[row]);
+    }
+
+    /**
+     * @param status статус из массива statuses пакетной операции.
+     * @return статус операции.
+     */
+    public static TransactionStatus status(byte status) {
+        return STATUSES[status];
+    }
+
+    private static <T> int index(List<T> values, T value) {
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == value) {
+                return i;
+            }
+        }
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private void grow() {
+        int capacity = numbers.length * 2;
+        numbers = Arrays.copyOf(numbers, capacity);
+        holders = Arrays.copyOf(holders, capacity);
+        types = Arrays.copyOf(types, capacity);
+        balances = Arrays.copyOf(balances, capacity);
+        creditLimits = Arrays.copyOf(creditLimits, capacity);
+        transactionLimits = Arrays.copyOf(transactionLimits, capacity);
+        feeRates = Arrays.copyOf(feeRates, capacity);
+        feeTiers = Arrays.copyOf(feeTiers, capacity);
+        feeLedgers = Arrays.copyOf(feeLedgers, capacity);
+        costs = new long[capacity];
+        interestRates = Arrays.copyOf(interestRates, capacity);
+        interestMonths = Arrays.copyOf(interestMonths, capacity);
+        interestDays = Arrays.copyOf(interestDays, capacity);
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Диапазон [%d, %d) вне [0, %d)".formatted(from, to, size));
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Строка %d вне [0, %d)".formatted(row, size));
+        }
+    }
+}
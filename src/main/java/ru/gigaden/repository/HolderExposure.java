@@ -0,0 +1,269 @@
+package ru.gigaden.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountEventListener;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.utils.ConcurrentLongObjectMap;
+import ru.gigaden.utils.LongObjectHashMap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Суммы по владельцам счетов: баланс всех счетов владельца и сумма кредитных лимитов.
+ * Доступные владельцу средства (exposure) = баланс + кредитные лимиты: использованная часть лимита
+ * уже учтена отрицательным балансом кредитного счёта, так что это сумма положительных остатков
+ * и неиспользованных лимитов.
+ * <p>
+ * Суммы обновляются приращениями из событий счёта ({@link AccountEventListener}): каждое успешное
+ * изменение баланса сообщает ровно одно событие со своей суммой, поэтому сложение атомарным
+ * getAndAdd коммутативно и не требует общей блокировки. Чтение - два volatile-чтения, O(1).
+ * Сумма владельца отстаёт от балансов только на операции, которые уже изменили баланс,
+ * но ещё не вызвали слушателя. Кредитный лимит меняется редко и пересчитывается по счетам владельца.
+ * <p>
+ * Изменения без событий ({@link BankAccount#restoreBalance(long)} при восстановлении из журнала,
+ * удаление счёта из хранилища) сверяются через {@link #verify()} и исправляются {@link #rebuild()}
+ * при остановленных операциях по счетам владельца.
+ */
+@Slf4j
+public class HolderExposure implements AccountEventListener {
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    private final AccountRepository accounts;
+    private final ConcurrentLongObjectMap<Exposure> exposures = new ConcurrentLongObjectMap<>();
+
+    public HolderExposure(AccountRepository accounts) {
+        this.accounts = accounts;
+    }
+
+    /**
+     * Подписывает суммы на все счета хранилища и учитывает их текущие балансы.
+     * Вызывается до начала операций: операция между подпиской и чтением баланса будет учтена дважды
+     * (такое расхождение находит {@link #verify()}).
+     */
+    public void attach() {
+        accounts.forEach(this::register);
+    }
+
+    /**
+     * Подписывает суммы на новый счёт и учитывает его текущий баланс и кредитный лимит.
+     */
+    public void register(BankAccount account) {
+        account.addListener(this);
+        exposure(account.getAccountHolder()).add(account.getBalanceMinorUnits());
+        if (account instanceof CreditAccount) {
+            refreshCreditLimit(account.getAccountHolder());
+        }
+    }
+
+    /**
+     * @return сумма балансов счетов владельца в копейках.
+     */
+    public long getBalanceMinorUnits(long accountHolder) {
+        Exposure exposure = exposures.get(accountHolder);
+        return exposure == null ? 0 : exposure.balance;
+    }
+
+    /**
+     * @return сумма кредитных лимитов счетов владельца в копейках.
+     */
+    public long getCreditLimitMinorUnits(long accountHolder) {
+        Exposure exposure = exposures.get(accountHolder);
+        return exposure == null ? 0 : exposure.creditLimit;
+    }
+
+    /**
+     * @return доступные владельцу средства в копейках: баланс плюс кредитные лимиты.
+     */
+    public long getExposureMinorUnits(long accountHolder) {
+        Exposure exposure = exposures.get(accountHolder);
+        return exposure == null ? 0 : exposure.balance + exposure.creditLimit;
+    }
+
+    /**
+     * Пересчитывает суммы всех владельцев по текущим балансам счетов.
+     * Как и {@link #attach()}, вызывается только при остановленных операциях: баланс счёта меняется
+     * раньше, чем приходит событие, поэтому операцию в пути пересчёт учёл бы, а её событие - ещё раз.
+     *
+     * @return количество владельцев, чьи суммы были исправлены.
+     * @throws IllegalStateException если во время пересчёта по счетам шли операции.
+     */
+    public int rebuild() {
+        return rebuild(holders());
+    }
+
+    /**
+     * Пересчитывает суммы указанных владельцев по текущим балансам их счетов.
+     * Операции должны быть остановлены только по счетам этих владельцев, по остальным могут идти.
+     * Сумма заменяется через CAS: если её изменило событие, условие нарушено - сумма владельца
+     * остаётся как есть, остальные владельцы пересчитываются, и в конце бросается исключение.
+     *
+     * @param holders владельцы, по счетам которых операции остановлены.
+     * @return количество владельцев, чьи суммы были исправлены.
+     * @throws IllegalStateException если во время пересчёта по счетам владельцев шли операции.
+     */
+    public int rebuild(long... holders) {
+        int corrected = 0;
+        List<Long> busy = new ArrayList<>();
+        for (long holder : holders) {
+            Exposure exposure = exposure(holder);
+            boolean changed = refreshCreditLimit(holder);
+            long seen = exposure.balance;
+            long actual = actualBalance(holder);
+            if (seen != actual) {
+                if (exposure.compareAndSetBalance(seen, actual)) {
+                    log.warn("Исправлена сумма балансов владельца {}: {} -> {}", holder, seen, actual);
+                    changed = true;
+                } else {
+                    busy.add(holder);
+                }
+            }
+            if (changed) {
+                corrected++;
+            }
+        }
+        log.info("Пересчитаны суммы по владельцам, исправлено {}", corrected);
+        if (!busy.isEmpty()) {
+            throw new IllegalStateException("Суммы владельцев " + busy + " изменились во время пересчёта: "
+                    + "операции по их счетам не остановлены");
+        }
+        return corrected;
+    }
+
+    /**
+     * Сверяет суммы владельцев с балансами счетов. Расхождение перепроверяется, чтобы не считать
+     * ошибкой операцию, событие которой ещё не дошло.
+     *
+     * @return владельцы, чьи суммы расходятся с балансами счетов.
+     */
+    public List<Long> verify() {
+        List<Long> mismatched = new ArrayList<>();
+        for (long holder : holders()) {
+            boolean consistent = false;
+            for (int attempt = 0; attempt < RECONCILE_ATTEMPTS && !consistent; attempt++) {
+                Exposure exposure = exposures.get(holder);
+                long balance = exposure == null ? 0 : exposure.balance;
+                long creditLimit = exposure == null ? 0 : exposure.creditLimit;
+                consistent = balance == actualBalance(holder) && creditLimit == actualCreditLimit(holder);
+                if (!consistent) {
+                    Thread.yield();
+                }
+            }
+            if (!consistent) {
+                mismatched.add(holder);
+            }
+        }
+        if (!mismatched.isEmpty()) {
+            log.warn("Суммы {} владельцев расходятся с балансами счетов", mismatched.size());
+        }
+        return mismatched;
+    }
+
+    @Override
+    public void onDeposit(BankAccount account, long amount, long balance) {
+        exposure(account.getAccountHolder()).add(amount);
+    }
+
+    @Override
+    public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+        exposure(account.getAccountHolder()).add(-amount);
+    }
+
+    @Override
+    public void onInterest(BankAccount account, long interest, LocalDate paidOn, long balance) {
+        exposure(account.getAccountHolder()).add(interest);
+    }
+
+    @Override
+    public void onSettingsChanged(BankAccount account) {
+        if (account instanceof CreditAccount) {
+            refreshCreditLimit(account.getAccountHolder());
+        }
+    }
+
+    /**
+     * Пересчитывает сумму кредитных лимитов владельца под блокировкой его сумм:
+     * последний пересчёт читает лимиты после всех изменений, о которых уже пришли события.
+     *
+     * @return true, если сумма изменилась.
+     */
+    private boolean refreshCreditLimit(long holder) {
+        Exposure exposure = exposure(holder);
+        exposure.lock.lock();
+        try {
+            long actual = actualCreditLimit(holder);
+            boolean changed = exposure.creditLimit != actual;
+            exposure.creditLimit = actual;
+            return changed;
+        } finally {
+            exposure.lock.unlock();
+        }
+    }
+
+    private long actualBalance(long holder) {
+        long total = 0;
+        for (BankAccount account : accounts.findByHolder(holder)) {
+            total += account.getBalanceMinorUnits();
+        }
+        return total;
+    }
+
+    private long actualCreditLimit(long holder) {
+        long total = 0;
+        for (BankAccount account : accounts.findByHolder(holder)) {
+            if (account instanceof CreditAccount credit) {
+                total += credit.getCreditLimitAmount().getMinorUnits();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return владельцы из хранилища и владельцы, по которым уже есть суммы (их счета могли удалить).
+     */
+    private long[] holders() {
+        LongObjectHashMap<Boolean> holders = new LongObjectHashMap<>();
+        accounts.forEach(account -> holders.put(account.getAccountHolder(), Boolean.TRUE));
+        exposures.forEach((holder, exposure) -> holders.put(holder, Boolean.TRUE));
+        long[] result = new long[holders.size()];
+        int[] index = {0};
+        holders.forEach((holder, ignored) -> result[index[0]++] = holder);
+        return result;
+    }
+
+    private Exposure exposure(long holder) {
+        return exposures.computeIfAbsent(holder, ignored -> new Exposure());
+    }
+
+    /**
+     * Суммы одного владельца. Баланс меняется через getAndAdd/CAS, лимит - под lock.
+     */
+    private static final class Exposure {
+        private static final VarHandle BALANCE;
+
+        static {
+            try {
+                BALANCE = MethodHandles.lookup().findVarHandle(Exposure.class, "balance", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long balance;
+        private volatile long creditLimit;
+
+        private void add(long amount) {
+            BALANCE.getAndAdd(this, amount);
+        }
+
+        private boolean compareAndSetBalance(long expected, long balance) {
+            return BALANCE.compareAndSet(this, expected, balance);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.gigaden.repository;
+
+import ru.gigaden.account.AccountType;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Курсор по строкам {@link OffHeapAccountStore}: один объект переводится с записи на запись
+ * и читает и меняет её на месте, не создавая объект счёта на каждый счёт.
+ * <p>
+ * Это не наследник {@link ru.gigaden.account.BankAccount}: баланс счёта - поле объекта,
+ * а здесь он лежит в записи хранилища. Курсор не потокобезопасен - у каждого потока свой,
+ * при этом операции над одной строкой из разных курсоров атомарны.
+ */
+public final class OffHeapAccount {
+    private final OffHeapAccountStore store;
+    private int row = -1;
+
+    OffHeapAccount(OffHeapAccountStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Переводит курсор на счёт с номером accountNumber.
+     *
+     * @return false, если счёта нет; курсор при этом не указывает ни на какую запись.
+     */
+    public boolean moveTo(long accountNumber) {
+        row = store.rowOf(accountNumber);
+        return row >= 0;
+    }
+
+    /**
+     * Переводит курсор на строку хранилища - для прохода по всем счетам.
+     *
+     * @throws IndexOutOfBoundsException если строки нет.
+     */
+    public OffHeapAccount moveToRow(int row) {
+        store.checkRow(row);
+        this.row = row;
+        return this;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public long getAccountNumber() {
+        return store.chunk(checkedRow()).getLong(store.offset(row) + OffHeapAccountStore.NUMBER);
+    }
+
+    public long getAccountHolder() {
+        return store.chunk(checkedRow()).getLong(store.offset(row) + OffHeapAccountStore.HOLDER);
+    }
+
+    public AccountType getType() {
+        return AccountType.ofCode(store.chunk(checkedRow()).get(store.offset(row) + OffHeapAccountStore.TYPE));
+    }
+
+    public long getBalanceMinorUnits() {
+        return store.balance(checkedRow());
+    }
+
+    /**
+     * @return дата последнего начисления процентов или null у счетов без процентов.
+     */
+    public LocalDate getLastInterestPaid() {
+        return OffHeapAccountStore.unpackDate(
+                store.chunk(checkedRow()).getInt(store.offset(row) + OffHeapAccountStore.LAST_INTEREST));
+    }
+
+    public TransactionStatus tryDeposit(Money amount) {
+        return store.tryDeposit(checkedRow(), amount.getMinorUnits());
+    }
+
+    /**
+     * Снимает средства по правилам типа счёта.
+     *
+     * @throws UnsupportedOperationException если в цепочке правил типа есть дополнительные правила.
+     */
+    public TransactionStatus tryWithdraw(Money amount) {
+        return store.tryWithdraw(checkedRow(), amount.getMinorUnits());
+    }
+
+    /**
+     * @return SUCCESS или INTEREST_NOT_DUE, если месяц не прошёл или у счёта нет процентов.
+     */
+    public TransactionStatus tryApplyInterest(LocalDate today) {
+        return store.tryApplyInterest(checkedRow(), today);
+    }
+
+    private int checkedRow() {
+        if (row < 0) {
+            throw new IllegalStateException("Курсор не установлен на счёт");
+        }
+        return row;
+    }
+}
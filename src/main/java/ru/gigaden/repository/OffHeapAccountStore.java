@@ -0,0 +1,523 @@
+package ru.gigaden.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.FeeSchedule;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.RuleEngine;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.utils.Validator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Хранилище состояния счетов вне кучи - для книг в десятки миллионов счетов, где объекты
+ * {@link BankAccount} с заголовками и датами начисления дают сотни байт на счёт и долгие паузы GC.
+ * Счёт - запись фиксированной длины {@link #RECORD_SIZE} байт в прямом буфере:
+ * <pre>
+ *  0 long   номер счёта          32 double комиссия за снятие, %
+ *  8 long   владелец             40 double процент на остаток, %
+ * 16 long   баланс в копейках    48 int    последнее начисление: (год * 12 + месяц - 1) * 32 + день
+ * 24 long   кредитный лимит      52 byte   код типа счёта
+ * </pre>
+ * Записи лежат блоками по chunkRecords штук, каждый блок - отдельный буфер, поэтому размер книги
+ * не ограничен 2 ГБ одного ByteBuffer. В куче остаются только индекс номер -> строка на двух массивах
+ * примитивов и массив буферов блоков.
+ * <p>
+ * Хранилище может быть отображено в файл ({@link #open(Path, int)}): после перезапуска файл
+ * отображается заново, а индекс строится одним проходом по номерам, без загрузки счетов в объекты.
+ * Число записей хранится в заголовке файла и обновляется после записи строки.
+ * <p>
+ * Операции над строками идут через CAS баланса и даты начисления, как в самих счетах,
+ * поэтому строки можно менять из разных потоков; добавление строк сериализуется блокировкой.
+ * Правила совпадают с {@link ru.gigaden.account.DebitAccount}, {@link CreditAccount} и {@link SavingsAccount}
+ * и берутся из действующей цепочки типа ({@link RuleEngine}); собственные цепочки счетов живут
+ * только в объектах и сюда не переносятся. Слушатели счетов и журнал не вызываются.
+ * Доступ к строке как к счёту - через переиспользуемый курсор {@link OffHeapAccount}.
+ * <p>
+ * API Foreign Memory в Java 21 ещё preview, поэтому память - ByteBuffer, а атомарный доступ -
+ * VarHandle вида byteBufferViewVarHandle.
+ */
+@Slf4j
+public final class OffHeapAccountStore implements Closeable {
+    public static final int RECORD_SIZE = 56;
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 20;
+    static final int NUMBER = 0;
+    static final int HOLDER = 8;
+    static final int BALANCE = 16;
+    static final int CREDIT_LIMIT = 24;
+    static final int WITHDRAWAL_FEE = 32;
+    static final int MONTHLY_INTEREST = 40;
+    static final int LAST_INTEREST = 48;
+    static final int TYPE = 52;
+    /**
+     * Последнее начисление у счетов без процентов: разница с любой реальной датой отрицательна.
+     */
+    static final int NEVER = Integer.MAX_VALUE;
+
+    private static final long MAGIC = 0x4749474144454E31L;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_CHUNK_RECORDS = 12;
+    private static final int HEADER_SIZE_OFFSET = 16;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int chunkRecords;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final ReentrantLock addLock = new ReentrantLock();
+    private final StampedLock indexLock = new StampedLock();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile int size;
+    /**
+     * Индекс номер -> строка; меняется под indexLock, при росте заменяется целиком.
+     */
+    private volatile Index index = new Index(16);
+    private int indexed;
+
+    private OffHeapAccountStore(int chunkRecords, FileChannel channel, MappedByteBuffer header) {
+        if (chunkRecords < 1 || Integer.bitCount(chunkRecords) != 1) {
+            throw new IllegalArgumentException("Размер блока должен быть степенью двойки");
+        }
+        if ((long) chunkRecords * RECORD_SIZE > Integer.MAX_VALUE) {
+            // Смещение записи внутри блока - int: (row & chunkMask) * RECORD_SIZE не должно переполняться.
+            throw new IllegalArgumentException("Блок из %d записей не помещается в один буфер".formatted(chunkRecords));
+        }
+        this.chunkRecords = chunkRecords;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkRecords);
+        this.chunkMask = chunkRecords - 1;
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /**
+     * @param chunkRecords количество записей в блоке; степень двойки, блок не больше Integer.MAX_VALUE байт.
+     * @return пустое хранилище в прямой памяти процесса.
+     */
+    public static OffHeapAccountStore allocate(int chunkRecords) {
+        return new OffHeapAccountStore(chunkRecords, null, null);
+    }
+
+    /**
+     * Открывает хранилище, отображённое в файл. Если файл уже содержит записи, они отображаются
+     * заново и индекс строится по ним; иначе файл размечается как пустое хранилище.
+     *
+     * @param file         файл хранилища, создаётся при отсутствии.
+     * @param chunkRecords количество записей в блоке для нового файла; у существующего берётся из заголовка.
+     * @return открытое хранилище.
+     * @throws IOException если файл не читается или не является хранилищем счетов.
+     */
+    public static OffHeapAccountStore open(Path file, int chunkRecords) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean existing = channel.size() >= HEADER_SIZE;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (!existing) {
+                header.putLong(0, MAGIC);
+                header.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                header.putInt(HEADER_CHUNK_RECORDS, chunkRecords);
+                header.putLong(HEADER_SIZE_OFFSET, 0);
+                return new OffHeapAccountStore(chunkRecords, channel, header);
+            }
+            if (header.getLong(0) != MAGIC || header.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("Файл не является хранилищем счетов: " + file);
+            }
+            OffHeapAccountStore store = new OffHeapAccountStore(header.getInt(HEADER_CHUNK_RECORDS), channel, header);
+            store.remap((int) header.getLong(HEADER_SIZE_OFFSET));
+            log.info("Хранилище счетов {} отображено заново, счетов: {}", file, store.size);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Добавляет в хранилище все счета репозитория.
+     *
+     * @return количество добавленных счетов.
+     */
+    public int addAll(AccountRepository accounts) {
+        int[] added = {0};
+        accounts.forEach(account -> added[0] += add(account) >= 0 ? 1 : 0);
+        return added[0];
+    }
+
+    /**
+     * Добавляет строку с текущим состоянием и параметрами счёта.
+     *
+     * @param account счёт.
+     * @return номер строки или -1, если счёт с таким номером уже есть.
+     */
+    public int add(BankAccount account) {
+        addLock.lock();
+        try {
+            if (rowOf(account.getAccountNumber()) >= 0) {
+                log.warn("Счёт с номером {} уже есть в хранилище вне кучи", account.getAccountNumber());
+                return -1;
+            }
+            int row = size;
+            if ((row >>> chunkShift) == chunks.length) {
+                addChunk();
+            }
+            ByteBuffer chunk = chunk(row);
+            int offset = offset(row);
+            chunk.putLong(offset + NUMBER, account.getAccountNumber());
+            chunk.putLong(offset + HOLDER, account.getAccountHolder());
+            chunk.putLong(offset + BALANCE, account.getBalanceMinorUnits());
+            chunk.putLong(offset + CREDIT_LIMIT, 0);
+            chunk.putDouble(offset + WITHDRAWAL_FEE, 0);
+            chunk.putDouble(offset + MONTHLY_INTEREST, 0);
+            chunk.putInt(offset + LAST_INTEREST, NEVER);
+            chunk.put(offset + TYPE, (byte) AccountType.of(account).getCode());
+            if (account instanceof CreditAccount credit) {
+                chunk.putLong(offset + CREDIT_LIMIT, credit.getCreditLimitAmount().getMinorUnits());
+                chunk.putDouble(offset + WITHDRAWAL_FEE, credit.getWithdrawalFee());
+            } else if (account instanceof SavingsAccount savings) {
+                chunk.putDouble(offset + MONTHLY_INTEREST, savings.getMonthlyInterest());
+                chunk.putInt(offset + LAST_INTEREST, packDate(savings.getLastInterestPaid()));
+            }
+            index(account.getAccountNumber(), row);
+            size = row + 1;
+            if (header != null) {
+                header.putLong(HEADER_SIZE_OFFSET, size);
+            }
+            return row;
+        } finally {
+            addLock.unlock();
+        }
+    }
+
+    /**
+     * @param accountNumber номер счёта.
+     * @return номер строки или -1, если счёта нет.
+     */
+    public int rowOf(long accountNumber) {
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int row = index.find(accountNumber);
+                if (indexLock.validate(stamp)) {
+                    return row;
+                }
+            } catch (RuntimeException ignored) {
+                // Индекс менялся во время чтения - повторяем под блокировкой.
+            }
+        }
+        stamp = indexLock.readLock();
+        try {
+            return index.find(accountNumber);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return новый курсор для работы со строками как со счетами.
+     */
+    public OffHeapAccount view() {
+        return new OffHeapAccount(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return сумма балансов всех счетов в копейках.
+     */
+    public long totalBalance() {
+        ByteBuffer[] chunks = this.chunks;
+        int size = this.size;
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            total += (long) LONGS.getVolatile(chunks[row >>> chunkShift], offset(row) + BALANCE);
+        }
+        return total;
+    }
+
+    /**
+     * Создаёт объект счёта с состоянием строки - для кода, которому нужен {@link BankAccount}.
+     * Объект не связан со строкой: его изменения в хранилище не попадают.
+     */
+    public BankAccount toAccount(int row) {
+        checkRow(row);
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        AccountType type = AccountType.ofCode(chunk.get(offset + TYPE));
+        BankAccount account = type.create(chunk.getLong(offset + NUMBER), chunk.getLong(offset + HOLDER));
+        if (account instanceof CreditAccount credit) {
+            credit.setCreditLimit(Money.ofMinor(chunk.getLong(offset + CREDIT_LIMIT)));
+            credit.setWithdrawalFee(chunk.getDouble(offset + WITHDRAWAL_FEE));
+        } else if (account instanceof SavingsAccount savings) {
+            savings.setMonthlyInterest(chunk.getDouble(offset + MONTHLY_INTEREST));
+            savings.setLastInterestPaid(unpackDate(chunk.getInt(offset + LAST_INTEREST)));
+        }
+        account.restoreBalance(balance(row));
+        return account;
+    }
+
+    /**
+     * Сбрасывает отображённый файл на диск; для хранилища в памяти ничего не делает.
+     */
+    public void force() {
+        if (header == null) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        header.force();
+    }
+
+    /**
+     * Сбрасывает файл на диск и закрывает его. Буферы освобождаются сборщиком мусора.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    TransactionStatus tryDeposit(int row, long amount) {
+        TransactionStatus status = Validator.depositStatus(amount);
+        if (!status.isSuccess()) {
+            return status;
+        }
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row) + BALANCE;
+        long current;
+        do {
+            current = (long) LONGS.getVolatile(chunk, offset);
+        } while (!LONGS.compareAndSet(chunk, offset, current, Math.addExact(current, amount)));
+        return status;
+    }
+
+    /**
+     * Списание по правилам типа счёта: лимит операции и тарифы комиссии из действующей цепочки,
+     * комиссия только у кредитного счёта, проверка остатка для того же значения баланса, которое заменяется.
+     * Списанная комиссия учитывается в журнале сборов тарифов.
+     *
+     * @throws UnsupportedOperationException если в цепочке типа есть дополнительные правила
+     *                                       или бесплатные снятия - им нужен объект счёта.
+     */
+    TransactionStatus tryWithdraw(int row, long amount) {
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        AccountType type = AccountType.ofCode(chunk.get(offset + TYPE));
+        RuleChain rules = RuleEngine.chain(type);
+        FeeSchedule fees = rules.getFeeSchedule();
+        if (rules.hasRules() || fees.hasFreeWithdrawals()) {
+            throw new UnsupportedOperationException("Дополнительные правила списания требуют объектов счетов");
+        }
+        long fee = 0;
+        long creditLimit = 0;
+        if (type == AccountType.CREDIT) {
+            fee = fees.fee(amount, chunk.getLong(offset + HOLDER), Money.toRate(chunk.getDouble(offset + WITHDRAWAL_FEE)));
+            creditLimit = chunk.getLong(offset + CREDIT_LIMIT);
+        }
+        long cost = amount + fee;
+        if (cost > rules.getMaxTransactionMinorUnits()) {
+            return TransactionStatus.TRANSACTION_LIMIT_EXCEEDED;
+        }
+        long current;
+        do {
+            current = (long) LONGS.getVolatile(chunk, offset + BALANCE);
+            TransactionStatus status = Validator.withdrawStatus(cost, current, creditLimit);
+            if (!status.isSuccess()) {
+                return status;
+            }
+        } while (!LONGS.compareAndSet(chunk, offset + BALANCE, current, current - cost));
+        if (fees.getLedger() != null) {
+            fees.getLedger().collect(fee);
+        }
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Начисляет проценты, если с последнего начисления прошёл месяц. Период занимается CAS даты,
+     * как в {@link SavingsAccount}, поэтому проценты за период не начисляются дважды.
+     */
+    TransactionStatus tryApplyInterest(int row, LocalDate today) {
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        int packed = packDate(today);
+        int last = (int) INTS.getVolatile(chunk, offset + LAST_INTEREST);
+        if (monthsBetween(last, packed) < 1 || !INTS.compareAndSet(chunk, offset + LAST_INTEREST, last, packed)) {
+            return TransactionStatus.INTEREST_NOT_DUE;
+        }
+        long rate = Money.toRate(chunk.getDouble(offset + MONTHLY_INTEREST));
+        long current;
+        do {
+            current = (long) LONGS.getVolatile(chunk, offset + BALANCE);
+        } while (!LONGS.compareAndSet(chunk, offset + BALANCE, current, current + Money.percentOf(current, rate)));
+        return TransactionStatus.SUCCESS;
+    }
+
+    long balance(int row) {
+        return (long) LONGS.getVolatile(chunk(row), offset(row) + BALANCE);
+    }
+
+    ByteBuffer chunk(int row) {
+        return chunks[row >>> chunkShift];
+    }
+
+    int offset(int row) {
+        return (row & chunkMask) * RECORD_SIZE;
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Строка %d вне [0, %d)".formatted(row, size));
+        }
+    }
+
+    static int packDate(LocalDate date) {
+        return (date.getYear() * 12 + date.getMonthValue() - 1) * 32 + date.getDayOfMonth();
+    }
+
+    static LocalDate unpackDate(int packed) {
+        if (packed == NEVER) {
+            return null;
+        }
+        int month = packed >> 5;
+        return LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, packed & 31);
+    }
+
+    /**
+     * Полные месяцы между датами - как {@code LocalDate.until}: разница номеров месяцев
+     * минус один, если день месяца ещё не наступил.
+     */
+    private static int monthsBetween(int from, int to) {
+        if (from == NEVER) {
+            return -1;
+        }
+        return (to >> 5) - (from >> 5) - ((to & 31) < (from & 31) ? 1 : 0);
+    }
+
+    private void addChunk() {
+        ByteBuffer chunk;
+        long bytes = (long) chunkRecords * RECORD_SIZE;
+        if (channel == null) {
+            chunk = ByteBuffer.allocateDirect(Math.toIntExact(bytes));
+        } else {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + chunks.length * bytes, bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось отобразить блок хранилища счетов", e);
+            }
+        }
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = chunk;
+        chunks = grown;
+    }
+
+    /**
+     * Отображает блоки существующего файла и строит индекс по номерам счетов.
+     */
+    private void remap(int records) {
+        while ((long) chunks.length * chunkRecords < records) {
+            addChunk();
+        }
+        for (int row = 0; row < records; row++) {
+            index(chunk(row).getLong(offset(row) + NUMBER), row);
+        }
+        size = records;
+    }
+
+    private void index(long accountNumber, int row) {
+        long stamp = indexLock.writeLock();
+        try {
+            Index current = index;
+            if ((indexed + 1) * 2 > current.keys.length) {
+                current = current.grow();
+                index = current;
+            }
+            current.insert(accountNumber, row + 1);
+            indexed++;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Таблица с открытой адресацией: номер счёта и строка + 1 (0 - пустая ячейка).
+     * Массивы одного размера публикуются одним объектом, поэтому читатель не увидит
+     * ключи новой таблицы вместе со строками старой.
+     */
+    private static final class Index {
+        private final long[] keys;
+        private final int[] rows;
+
+        private Index(int capacity) {
+            this.keys = new long[capacity];
+            this.rows = new int[capacity];
+        }
+
+        private int find(long accountNumber) {
+            int mask = keys.length - 1;
+            for (int i = slot(accountNumber, mask); ; i = (i + 1) & mask) {
+                int row = rows[i];
+                if (row == 0) {
+                    return -1;
+                }
+                if (keys[i] == accountNumber) {
+                    return row - 1;
+                }
+            }
+        }
+
+        private Index grow() {
+            Index grown = new Index(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (rows[i] != 0) {
+                    grown.insert(keys[i], rows[i]);
+                }
+            }
+            return grown;
+        }
+
+        private void insert(long accountNumber, int rowPlusOne) {
+            int mask = keys.length - 1;
+            int i = slot(accountNumber, mask);
+            while (rows[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = accountNumber;
+            rows[i] = rowPlusOne;
+        }
+
+        private static int slot(long accountNumber, int mask) {
+            long h = accountNumber * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ru.gigaden.rule;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import ru.gigaden.account.FeeLedger;
+import ru.gigaden.money.Money;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Тарифы комиссии за снятие, общие для счетов одного продукта (типа счёта).
+ * Настройки компилируются один раз в массивы копеек и ставок: уровни по сумме операции с минимальной
+ * и максимальной комиссией, отсортированный массив владельцев без комиссии, число бесплатных снятий
+ * за период. Расчёт комиссии на снятии - просмотр короткого массива порогов, умножение и два
+ * сравнения, без объектов и без блокировок.
+ * <p>
+ * Расписание неизменяемо и входит в {@link RuleChain}: смена тарифов - замена цепочки через
+ * {@link RuleEngine#install}, операция доводится по тарифам, которые прочитала.
+ * <p>
+ * Бесплатные снятия считаются счётом: расписание задаёт их число и длину периода, а счёт хранит
+ * упакованное в long состояние "период, использовано" и меняет его через {@link #claimFree}
+ * и {@link #releaseFree}. Периоды отсчитываются целыми длинами от начала эпохи.
+ */
+public final class FeeSchedule {
+    private static final long[] NONE = new long[0];
+    private static final int USED_BITS = 20;
+    private static final long USED_MASK = (1L << USED_BITS) - 1;
+    /**
+     * Результат {@link #claimFree}, если бесплатных снятий в периоде не осталось.
+     */
+    public static final long NO_FREE = -1;
+
+    private final long[] tierFrom;
+    private final long[] tierRates;
+    private final long[] tierMin;
+    private final long[] tierMax;
+    private final long[] waivedHolders;
+    private final int freeWithdrawals;
+    private final long periodMillis;
+    private final LongSupplier clock;
+    /**
+     * Журнал сборов, куда зачисляются списанные комиссии; null - комиссии не собираются.
+     */
+    @Getter
+    private final FeeLedger ledger;
+
+    /**
+     * @param tiers           уровни комиссии; если заданы, заменяют комиссию счёта.
+     * @param waivedHolders   владельцы, со счетов которых комиссия не берётся.
+     * @param freeWithdrawals количество снятий без комиссии за период; null - бесплатных снятий нет.
+     * @param freePeriod      длина периода бесплатных снятий.
+     * @param ledger          журнал сборов для списанных комиссий.
+     */
+    @Builder
+    private FeeSchedule(@Singular List<RuleChain.FeeTier> tiers,
+                        @Singular List<Long> waivedHolders,
+                        Integer freeWithdrawals,
+                        Duration freePeriod,
+                        FeeLedger ledger) {
+        this(tiers, waivedHolders, freeWithdrawals, freePeriod, ledger, System::currentTimeMillis);
+    }
+
+    FeeSchedule(List<RuleChain.FeeTier> tiers,
+                List<Long> waivedHolders,
+                Integer freeWithdrawals,
+                Duration freePeriod,
+                FeeLedger ledger,
+                LongSupplier clock) {
+        RuleChain.FeeTier[] sorted = tiers.toArray(new RuleChain.FeeTier[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(tier -> tier.from));
+        if (sorted.length > 0 && sorted[0].from != 0) {
+            throw new IllegalArgumentException("Первый уровень комиссии должен начинаться с нуля");
+        }
+        this.tierFrom = sorted.length == 0 ? NONE : new long[sorted.length];
+        this.tierRates = sorted.length == 0 ? NONE : new long[sorted.length];
+        this.tierMin = sorted.length == 0 ? NONE : new long[sorted.length];
+        this.tierMax = sorted.length == 0 ? NONE : new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i].from == sorted[i - 1].from) {
+                throw new IllegalArgumentException("Два уровня комиссии с одним порогом " + Money.format(sorted[i].from));
+            }
+            tierFrom[i] = sorted[i].from;
+            tierRates[i] = sorted[i].rate;
+            tierMin[i] = sorted[i].min;
+            tierMax[i] = sorted[i].max;
+        }
+        this.waivedHolders = waivedHolders.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        this.freeWithdrawals = freeWithdrawals == null ? 0 : freeWithdrawals;
+        if (this.freeWithdrawals < 0 || this.freeWithdrawals > USED_MASK) {
+            throw new IllegalArgumentException("Некорректное количество бесплатных снятий: " + freeWithdrawals);
+        }
+        if (this.freeWithdrawals > 0 && (freePeriod == null || freePeriod.toMillis() <= 0)) {
+            throw new IllegalArgumentException("Период бесплатных снятий должен быть положительным");
+        }
+        this.periodMillis = this.freeWithdrawals > 0 ? freePeriod.toMillis() : Long.MAX_VALUE;
+        this.ledger = ledger;
+        this.clock = clock;
+    }
+
+    /**
+     * Комиссия без учёта владельца: по уровню, в который попадает сумма, в пределах минимума и максимума уровня,
+     * или по ставке счёта, если уровней нет.
+     *
+     * @param amount      сумма операции в копейках без комиссии.
+     * @param accountRate комиссия счёта в формате {@link Money#toRate(double)}.
+     * @return комиссия в копейках.
+     */
+    public long fee(long amount, long accountRate) {
+        int tier = tier(amount);
+        if (tier < 0) {
+            return Money.percentOf(amount, accountRate);
+        }
+        return Math.min(Math.max(Money.percentOf(amount, tierRates[tier]), tierMin[tier]), tierMax[tier]);
+    }
+
+    /**
+     * Комиссия со счёта владельца holder: 0, если владелец освобождён от комиссии, иначе {@link #fee(long, long)}.
+     */
+    public long fee(long amount, long holder, long accountRate) {
+        return waives(holder) ? 0 : fee(amount, accountRate);
+    }
+
+    /**
+     * @return true, если со счетов владельца комиссия не берётся.
+     */
+    public boolean waives(long holder) {
+        return waivedHolders.length > 0 && Arrays.binarySearch(waivedHolders, holder) >= 0;
+    }
+
+    public boolean hasTiers() {
+        return tierFrom.length > 0;
+    }
+
+    public boolean hasFreeWithdrawals() {
+        return freeWithdrawals > 0;
+    }
+
+    /**
+     * Занимает бесплатное снятие текущего периода.
+     *
+     * @param state состояние бесплатных снятий счёта; 0 - снятий ещё не было.
+     * @return новое состояние или {@link #NO_FREE}, если бесплатных снятий нет или они исчерпаны.
+     */
+    public long claimFree(long state) {
+        if (freeWithdrawals == 0) {
+            return NO_FREE;
+        }
+        long period = Math.floorDiv(clock.getAsLong(), periodMillis);
+        long used = state >>> USED_BITS == period ? state & USED_MASK : 0;
+        return used < freeWithdrawals ? period << USED_BITS | used + 1 : NO_FREE;
+    }
+
+    /**
+     * Возвращает бесплатное снятие, занятое {@link #claimFree}, если снятие не состоялось.
+     * Если период уже сменился, состояние не меняется.
+     *
+     * @param state состояние после claimFree.
+     * @return новое состояние.
+     */
+    public long releaseFree(long state) {
+        long period = Math.floorDiv(clock.getAsLong(), periodMillis);
+        return state >>> USED_BITS == period && (state & USED_MASK) > 0 ? state - 1 : state;
+    }
+
+    /**
+     * Уровней обычно несколько, поэтому линейный просмотр с конца дешевле двоичного поиска.
+     *
+     * @return индекс уровня суммы или -1, если уровней нет.
+     */
+    private int tier(long amount) {
+        int tier = tierFrom.length - 1;
+        while (tier > 0 && amount < tierFrom[tier]) {
+            tier--;
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.gigaden.rule;
+
+import lombok.Builder;
+import lombok.Singular;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.util.List;
+
+/**
+ * Неизменяемый набор правил списания для типа счёта (или отдельного счёта).
+ * Настройки из построителя компилируются в поля-примитивы и массивы:
+ * лимит операции - одно сравнение, тарифы комиссии - {@link FeeSchedule},
+ * дополнительные правила - массив, который у цепочек по умолчанию пуст.
+ * Цепочки не меняются, а заменяются целиком через {@link RuleEngine#install}.
+ */
+public final class RuleChain {
+    private static final TransactionRule[] NO_RULES = new TransactionRule[0];
+    private static final FeeSchedule ACCOUNT_FEES = FeeSchedule.builder().build();
+
+    private final long maxTransaction;
+    private final long defaultCreditLimit;
+    private final FeeSchedule feeSchedule;
+    private final TransactionRule[] rules;
+
+    /**
+     * @param maxTransaction     лимит одной операции вместе с комиссией; null - без лимита.
+     * @param defaultCreditLimit кредитный лимит новых кредитных счетов; null - без кредита.
+     * @param feeTiers           уровни комиссии; если заданы, заменяют комиссию счёта.
+     * @param feeSchedule        тарифы комиссии целиком; задаются вместо feeTiers.
+     * @param rules              дополнительные правила в порядке проверки.
+     */
+    @Builder
+    private RuleChain(Money maxTransaction,
+                      Money defaultCreditLimit,
+                      @Singular List<FeeTier> feeTiers,
+                      FeeSchedule feeSchedule,
+                      @Singular List<TransactionRule> rules) {
+        this.maxTransaction = maxTransaction == null ? Long.MAX_VALUE : maxTransaction.getMinorUnits();
+        this.defaultCreditLimit = defaultCreditLimit == null ? 0 : defaultCreditLimit.getMinorUnits();
+        if (this.maxTransaction <= 0) {
+            throw new IllegalArgumentException("Лимит операции должен быть положительным");
+        }
+        if (this.defaultCreditLimit < 0) {
+            throw new IllegalArgumentException("Кредитный лимит не может быть отрицательным");
+        }
+        if (feeSchedule != null && !feeTiers.isEmpty()) {
+            throw new IllegalArgumentException("Уровни комиссии задаются либо в цепочке, либо в тарифах");
+        }
+        this.feeSchedule = feeSchedule != null ? feeSchedule
+                : feeTiers.isEmpty() ? ACCOUNT_FEES
+                : FeeSchedule.builder().tiers(feeTiers).build();
+        this.rules = rules.isEmpty() ? NO_RULES : rules.toArray(NO_RULES);
+    }
+
+    /**
+     * Проверяет списание: сначала лимит операции, затем дополнительные правила по порядку.
+     * При отказе правила уже пройденные правила отменяют учёт суммы.
+     *
+     * @param account счёт списания.
+     * @param amount  сумма в копейках вместе с комиссией.
+     * @return SUCCESS или первая причина отказа.
+     */
+    public TransactionStatus check(BankAccount account, long amount) {
+        if (amount > maxTransaction) {
+            return TransactionStatus.TRANSACTION_LIMIT_EXCEEDED;
+        }
+        for (int i = 0; i < rules.length; i++) {
+            TransactionStatus status = rules[i].check(account, amount);
+            if (!status.isSuccess()) {
+                release(account, amount, i);
+                return status;
+            }
+        }
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Отменяет учёт списания, прошедшего {@link #check}, если само списание не состоялось.
+     *
+     * @param account счёт списания.
+     * @param amount  сумма, переданная в check.
+     */
+    public void release(BankAccount account, long amount) {
+        release(account, amount, rules.length);
+    }
+
+    private void release(BankAccount account, long amount, int passed) {
+        for (int i = passed - 1; i >= 0; i--) {
+            rules[i].release(account, amount);
+        }
+    }
+
+    /**
+     * @return тарифы комиссии; без уровней комиссия берётся по ставке счёта.
+     */
+    public FeeSchedule getFeeSchedule() {
+        return feeSchedule;
+    }
+
+    /**
+     * @return true, если кроме лимита операции есть дополнительные правила.
+     */
+    public boolean hasRules() {
+        return rules.length > 0;
+    }
+
+    /**
+     * @return лимит одной операции в копейках; Long.MAX_VALUE - без лимита.
+     */
+    public long getMaxTransactionMinorUnits() {
+        return maxTransaction;
+    }
+
+    /**
+     * @return кредитный лимит новых кредитных счетов в копейках.
+     */
+    public long getDefaultCreditLimitMinorUnits() {
+        return defaultCreditLimit;
+    }
+
+    /**
+     * Уровень комиссии: сумма от from (включительно) до порога следующего уровня,
+     * комиссия по ставке уровня в пределах от min до max.
+     */
+    public static final class FeeTier {
+        final long from;
+        final long rate;
+        final long min;
+        final long max;
+
+        /**
+         * @param from    нижняя граница суммы операции.
+         * @param percent комиссия в процентах.
+         */
+        public FeeTier(Money from, double percent) {
+            this(from, percent, Money.ZERO, null);
+        }
+
+        /**
+         * @param from    нижняя граница суммы операции.
+         * @param percent комиссия в процентах.
+         * @param min     минимальная комиссия.
+         * @param max     максимальная комиссия; null - без ограничения.
+         */
+        public FeeTier(Money from, double percent, Money min, Money max) {
+            if (from.signum() < 0 || percent < 0 || min.signum() < 0) {
+                throw new IllegalArgumentException("Порог и комиссия уровня не могут быть отрицательными");
+            }
+            this.from = from.getMinorUnits();
+            this.rate = Money.toRate(percent);
+            this.min = min.getMinorUnits();
+            this.max = max == null ? Long.MAX_VALUE : max.getMinorUnits();
+            if (this.max < this.min) {
+                throw new IllegalArgumentException("Максимальная комиссия уровня меньше минимальной");
+            }
+        }
+    }
+}
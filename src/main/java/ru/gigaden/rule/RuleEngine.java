@@ -0,0 +1,79 @@
+package ru.gigaden.rule;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.money.Money;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Текущие цепочки правил по типам счетов.
+ * Чтение - одно volatile-чтение элемента массива на операцию; замена цепочки атомарна:
+ * операция, уже прочитавшая старую цепочку, доводится по ней, следующие видят новую.
+ * Обработка при замене не останавливается и не блокируется.
+ * <p>
+ * По умолчанию действуют прежние правила: дебетовый счёт - не больше 10 000 за операцию,
+ * кредитный - не больше 5 000 за операцию вместе с комиссией и кредитный лимит 5 000,
+ * сберегательный - без лимита операции.
+ */
+@Slf4j
+public final class RuleEngine {
+    private static final AtomicReferenceArray<RuleChain> CHAINS = new AtomicReferenceArray<>(AccountType.values().length + 1);
+
+    static {
+        reset();
+    }
+
+    private RuleEngine() {
+    }
+
+    /**
+     * @param type тип счёта.
+     * @return действующая цепочка правил.
+     */
+    public static RuleChain chain(AccountType type) {
+        return CHAINS.get(type.getCode());
+    }
+
+    /**
+     * Атомарно заменяет цепочку правил типа счёта.
+     *
+     * @param type  тип счёта.
+     * @param chain новая цепочка.
+     * @return прежняя цепочка.
+     */
+    public static RuleChain install(AccountType type, RuleChain chain) {
+        if (chain == null) {
+            throw new IllegalArgumentException("Цепочка правил не задана");
+        }
+        RuleChain previous = CHAINS.getAndSet(type.getCode(), chain);
+        log.info("Заменены правила счетов типа {}", type);
+        return previous;
+    }
+
+    /**
+     * @param type тип счёта.
+     * @return цепочка правил по умолчанию.
+     */
+    public static RuleChain defaults(AccountType type) {
+        return switch (type) {
+            case DEBIT -> RuleChain.builder()
+                    .maxTransaction(Money.of(10_000))
+                    .build();
+            case CREDIT -> RuleChain.builder()
+                    .maxTransaction(Money.of(5_000))
+                    .defaultCreditLimit(Money.of(5_000))
+                    .build();
+            case SAVINGS -> RuleChain.builder().build();
+        };
+    }
+
+    /**
+     * Возвращает всем типам счетов цепочки по умолчанию.
+     */
+    public static void reset() {
+        for (AccountType type : AccountType.values()) {
+            CHAINS.set(type.getCode(), defaults(type));
+        }
+    }
+}
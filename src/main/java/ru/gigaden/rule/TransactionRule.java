@@ -0,0 +1,32 @@
+package ru.gigaden.rule;
+
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.transaction.TransactionStatus;
+
+/**
+ * Дополнительное правило списания, которое нельзя свести к сравнению с лимитом цепочки:
+ * лимиты по владельцу, частоте операций и т.п.
+ * Вызывается до изменения баланса на каждом списании, поэтому должно быть быстрым: без ввода-вывода
+ * и ожидания внешних событий. Допустимы короткие блокировки собственного состояния правила
+ * (например, окна одного ключа в {@link VelocityRule}), если под ними не вызывается чужой код.
+ */
+@FunctionalInterface
+public interface TransactionRule {
+    /**
+     * @param account счёт списания.
+     * @param amount  сумма списания в копейках вместе с комиссией.
+     * @return SUCCESS или причина отказа.
+     */
+    TransactionStatus check(BankAccount account, long amount);
+
+    /**
+     * Отменяет учёт списания, которое прошло check, но не состоялось:
+     * отказал следующий элемент цепочки или не хватило средств.
+     * Нужен правилам, которые резервируют сумму при проверке.
+     *
+     * @param account счёт списания.
+     * @param amount  сумма, переданная в check.
+     */
+    default void release(BankAccount account, long amount) {
+    }
+}
@@ -0,0 +1,269 @@
+package ru.gigaden.rule;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.utils.ConcurrentLongObjectMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Лимит списаний за скользящее окно времени: не больше maxAmount и не больше maxCount операций
+ * за window - по счёту или по владельцу (все его счета вместе).
+ * <p>
+ * Окно каждого ключа - кольцо из buckets корзин длиной window / buckets с суммой и количеством
+ * списаний и текущими итогами по всему кольцу. Проверка - сдвиг кольца до текущей корзины
+ * (устаревшие корзины вычитаются из итогов) и два сравнения, поэтому стоит O(1) в среднем
+ * и не хранит сами операции: память ключа - два массива по buckets элементов.
+ * Окно отсчитывается целыми корзинами, поэтому фактически покрывает от window - window / buckets до window.
+ * <p>
+ * Проверка и учёт суммы выполняются под блокировкой окна ключа, поэтому параллельные списания
+ * одного владельца с разных счетов не превышают лимит вместе. Если списание после проверки не
+ * состоялось, сумма возвращается через {@link #release}.
+ */
+@Slf4j
+public final class VelocityRule implements TransactionRule {
+    /**
+     * Чей лимит: отдельного счёта или владельца по всем его счетам.
+     */
+    public enum Scope {
+        ACCOUNT,
+        HOLDER
+    }
+
+    private final Scope scope;
+    private final long bucketNanos;
+    private final int buckets;
+    private final long maxAmount;
+    private final int maxCount;
+    private final LongSupplier nanoClock;
+    private final ConcurrentLongObjectMap<Window> windows = new ConcurrentLongObjectMap<>();
+
+    /**
+     * @param scope     ключ лимита; по умолчанию счёт.
+     * @param window    длина окна.
+     * @param buckets   количество корзин окна - точность скольжения; по умолчанию 24.
+     * @param maxAmount сумма списаний за окно вместе с комиссией; null - без лимита суммы.
+     * @param maxCount  количество списаний за окно; null - без лимита количества.
+     */
+    @Builder
+    private VelocityRule(Scope scope, Duration window, Integer buckets, Money maxAmount, Integer maxCount) {
+        this(scope, window, buckets, maxAmount, maxCount, System::nanoTime);
+    }
+
+    VelocityRule(Scope scope, Duration window, Integer buckets, Money maxAmount, Integer maxCount,
+                 LongSupplier nanoClock) {
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Окно должно быть положительным");
+        }
+        if (maxAmount == null && maxCount == null) {
+            throw new IllegalArgumentException("Не задан ни лимит суммы, ни лимит количества");
+        }
+        this.scope = scope == null ? Scope.ACCOUNT : scope;
+        this.buckets = buckets == null ? 24 : buckets;
+        if (this.buckets < 1 || window.toNanos() < this.buckets) {
+            throw new IllegalArgumentException("Некорректное количество корзин: " + buckets);
+        }
+        this.bucketNanos = window.toNanos() / this.buckets;
+        this.maxAmount = maxAmount == null ? Long.MAX_VALUE : maxAmount.getMinorUnits();
+        this.maxCount = maxCount == null ? Integer.MAX_VALUE : maxCount;
+        if (this.maxAmount < 0 || this.maxCount < 0) {
+            throw new IllegalArgumentException("Лимит не может быть отрицательным");
+        }
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Проверяет лимит и сразу учитывает списание в окне.
+     * Не положительные суммы пропускаются без учёта - их отклонит сам счёт.
+     */
+    @Override
+    public TransactionStatus check(BankAccount account, long amount) {
+        if (amount <= 0) {
+            return TransactionStatus.SUCCESS;
+        }
+        long key = key(account);
+        while (true) {
+            Window window = windows.computeIfAbsent(key, ignored -> new Window(buckets));
+            window.lock.lock();
+            try {
+                if (window.retired) {
+                    continue;
+                }
+                window.advance(bucket());
+                if (amount > maxAmount - window.totalAmount || window.totalCount >= maxCount) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Превышен лимит списаний за период: {} = {}", scope, key);
+                    }
+                    return TransactionStatus.VELOCITY_LIMIT_EXCEEDED;
+                }
+                window.add(amount);
+                return TransactionStatus.SUCCESS;
+            } finally {
+                window.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Возвращает в окно сумму списания, которое прошло проверку, но не состоялось.
+     * Сумма снимается с самой свежей корзины (при необходимости - и с предыдущих),
+     * поэтому на границе корзин она может уйти из окна чуть раньше, но итог окна остаётся точным.
+     */
+    @Override
+    public void release(BankAccount account, long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        Window window = windows.get(key(account));
+        if (window == null) {
+            return;
+        }
+        window.lock.lock();
+        try {
+            if (!window.retired) {
+                window.advance(bucket());
+                window.subtract(amount);
+            }
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+    /**
+     * @param account счёт.
+     * @return сумма списаний в копейках за текущее окно ключа счёта.
+     */
+    public long usedAmount(BankAccount account) {
+        Window window = windows.get(key(account));
+        if (window == null) {
+            return 0;
+        }
+        window.lock.lock();
+        try {
+            window.advance(bucket());
+            return window.totalAmount;
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет окна ключей, по которым в текущем окне не было списаний.
+     * Вызывается периодически, чтобы память не росла с числом когда-либо активных счетов.
+     *
+     * @return количество удалённых окон.
+     */
+    public int purgeIdle() {
+        long bucket = bucket();
+        List<Long> keys = new ArrayList<>();
+        windows.forEach((key, window) -> keys.add(key));
+        int[] purged = {0};
+        for (long key : keys) {
+            windows.compute(key, (ignored, window) -> {
+                if (window == null) {
+                    return null;
+                }
+                window.lock.lock();
+                try {
+                    window.advance(bucket);
+                    if (window.totalCount != 0) {
+                        return window;
+                    }
+                    window.retired = true;
+                    purged[0]++;
+                    return null;
+                } finally {
+                    window.lock.unlock();
+                }
+            });
+        }
+        return purged[0];
+    }
+
+    private long key(BankAccount account) {
+        return scope == Scope.HOLDER ? account.getAccountHolder() : account.getAccountNumber();
+    }
+
+    private long bucket() {
+        return Math.floorDiv(nanoClock.getAsLong(), bucketNanos);
+    }
+
+    /**
+     * Кольцо корзин одного ключа. Все поля меняются только под lock.
+     */
+    private static final class Window {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] amounts;
+        private final int[] counts;
+        private long head = Long.MIN_VALUE;
+        private long totalAmount;
+        private int totalCount;
+        /**
+         * Окно удалено из таблицы - поток, успевший его получить, берёт новое.
+         */
+        private boolean retired;
+
+        private Window(int buckets) {
+            this.amounts = new long[buckets];
+            this.counts = new int[buckets];
+        }
+
+        /**
+         * Сдвигает кольцо до корзины bucket, обнуляя вышедшие из окна корзины.
+         */
+        private void advance(long bucket) {
+            if (head == Long.MIN_VALUE) {
+                head = bucket;
+                return;
+            }
+            if (bucket <= head) {
+                return;
+            }
+            long steps = Math.min(bucket - head, amounts.length);
+            for (long step = 1; step <= steps; step++) {
+                int index = index(head + step);
+                totalAmount -= amounts[index];
+                totalCount -= counts[index];
+                amounts[index] = 0;
+                counts[index] = 0;
+            }
+            head = bucket;
+        }
+
+        private void add(long amount) {
+            int index = index(head);
+            amounts[index] += amount;
+            counts[index]++;
+            totalAmount += amount;
+            totalCount++;
+        }
+
+        private void subtract(long amount) {
+            long left = Math.min(amount, totalAmount);
+            boolean counted = false;
+            for (int step = 0; step < amounts.length && (left > 0 || !counted); step++) {
+                int index = index(head - step);
+                long taken = Math.min(left, amounts[index]);
+                amounts[index] -= taken;
+                totalAmount -= taken;
+                left -= taken;
+                if (!counted && counts[index] > 0) {
+                    counts[index]--;
+                    totalCount--;
+                    counted = true;
+                }
+            }
+        }
+
+        private int index(long bucket) {
+            return (int) Math.floorMod(bucket, (long) amounts.length);
+        }
+    }
+}
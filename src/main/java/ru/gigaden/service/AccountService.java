@@ -0,0 +1,204 @@
+package ru.gigaden.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.journal.Journal;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.transaction.TransferService;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Фасад операций со счетами по номеру - для обработчиков запросов, где на каждый запрос
+ * запускается свой виртуальный поток.
+ * На пути операций нет synchronized: баланс меняется через CAS, хранилище читается без блокировок,
+ * переводы и журнал используют ReentrantLock. Поэтому виртуальный поток, ожидающий блокировку
+ * или fsync, освобождает поток-носитель, и в работе одновременно могут быть сотни тысяч операций.
+ * Если задан журнал, успешная операция возвращается только после того, как её запись на диске;
+ * одновременные операции при этом разделяют общий fsync (см. {@link Journal#syncTo(long)}).
+ * Пополнение, снятие и перевод можно передать с идентификатором операции от клиента:
+ * повтор с тем же идентификатором получает сохранённый итог и не меняет баланс (см. {@link IdempotencyCache}).
+ */
+@Slf4j
+public class AccountService {
+    private static final Duration DEFAULT_IDEMPOTENCY_WINDOW = Duration.ofMinutes(15);
+    private static final int DEFAULT_IDEMPOTENCY_ENTRIES = 1 << 20;
+
+    private final AccountRepository accounts;
+    private final TransferService transfers;
+    private final Journal journal;
+    private final IdempotencyCache operations;
+    private final ReentrantLock openLock = new ReentrantLock();
+
+    public AccountService(AccountRepository accounts) {
+        this(accounts, new TransferService(), null);
+    }
+
+    /**
+     * @param accounts  хранилище счетов.
+     * @param transfers сервис переводов.
+     * @param journal   журнал для подтверждения операций на диске или null.
+     */
+    public AccountService(AccountRepository accounts, TransferService transfers, Journal journal) {
+        this(accounts, transfers, journal, new IdempotencyCache(DEFAULT_IDEMPOTENCY_WINDOW, DEFAULT_IDEMPOTENCY_ENTRIES));
+    }
+
+    /**
+     * @param accounts   хранилище счетов.
+     * @param transfers  сервис переводов.
+     * @param journal    журнал для подтверждения операций на диске или null.
+     * @param operations кэш идентификаторов операций.
+     */
+    public AccountService(AccountRepository accounts,
+                          TransferService transfers,
+                          Journal journal,
+                          IdempotencyCache operations) {
+        this.accounts = accounts;
+        this.transfers = transfers;
+        this.journal = journal;
+        this.operations = operations;
+    }
+
+    /**
+     * Открывает счёт и, если задан журнал, записывает его открытие до того, как счёт станет доступен.
+     *
+     * @return новый счёт.
+     * @throws IllegalArgumentException если счёт с таким номером уже есть.
+     */
+    public BankAccount open(AccountType type, long accountNumber, long accountHolder) {
+        BankAccount account = type.create(accountNumber, accountHolder);
+        // Открытия редки; блокировка исключает гонку двух открытий одного номера
+        // и повторную запись открытия в журнал.
+        openLock.lock();
+        try {
+            if (accounts.get(accountNumber) != null) {
+                throw new IllegalArgumentException("Счёт с номером " + accountNumber + " уже существует");
+            }
+            if (journal != null) {
+                journal.register(account);
+            }
+            accounts.add(account);
+        } finally {
+            openLock.unlock();
+        }
+        durable(TransactionStatus.SUCCESS);
+        return account;
+    }
+
+    public TransactionStatus deposit(long accountNumber, Money amount) {
+        BankAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        return durable(account.tryDeposit(amount));
+    }
+
+    public TransactionStatus withdraw(long accountNumber, Money amount) {
+        BankAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        return durable(account.tryWithdraw(amount));
+    }
+
+    /**
+     * @see TransferService#transfer(BankAccount, BankAccount, Money)
+     */
+    public TransactionStatus transfer(long fromAccountNumber, long toAccountNumber, Money amount) {
+        BankAccount from = accounts.get(fromAccountNumber);
+        BankAccount to = accounts.get(toAccountNumber);
+        if (from == null || to == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        return durable(transfers.transfer(from, to, amount));
+    }
+
+    /**
+     * Пополнение, которое выполняется не больше одного раза на идентификатор.
+     *
+     * @param operationId идентификатор операции от клиента.
+     * @return итог первого выполнения или OPERATION_IN_PROGRESS, пока оно не закончено.
+     */
+    public TransactionStatus deposit(long operationId, long accountNumber, Money amount) {
+        return once(operationId, () -> deposit(accountNumber, amount));
+    }
+
+    /**
+     * Снятие, которое выполняется не больше одного раза на идентификатор.
+     *
+     * @param operationId идентификатор операции от клиента.
+     * @return итог первого выполнения или OPERATION_IN_PROGRESS, пока оно не закончено.
+     */
+    public TransactionStatus withdraw(long operationId, long accountNumber, Money amount) {
+        return once(operationId, () -> withdraw(accountNumber, amount));
+    }
+
+    /**
+     * Перевод, который выполняется не больше одного раза на идентификатор.
+     *
+     * @param operationId идентификатор операции от клиента.
+     * @return итог первого выполнения или OPERATION_IN_PROGRESS, пока оно не закончено.
+     */
+    public TransactionStatus transfer(long operationId, long fromAccountNumber, long toAccountNumber, Money amount) {
+        return once(operationId, () -> transfer(fromAccountNumber, toAccountNumber, amount));
+    }
+
+    /**
+     * @return SUCCESS, INTEREST_NOT_DUE, ACCOUNT_NOT_FOUND или FAILED для несберегательного счёта.
+     */
+    public TransactionStatus applyInterest(long accountNumber, LocalDate today) {
+        BankAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        if (!(account instanceof SavingsAccount)) {
+            return TransactionStatus.FAILED;
+        }
+        return durable(((SavingsAccount) account).tryApplyInterest(today));
+    }
+
+    /**
+     * @return текущий баланс, если счёт есть.
+     */
+    public Optional<Money> findBalance(long accountNumber) {
+        BankAccount account = accounts.get(accountNumber);
+        return account == null ? Optional.empty() : Optional.of(Money.ofMinor(account.getBalanceMinorUnits()));
+    }
+
+    private TransactionStatus once(long operationId, Supplier<TransactionStatus> operation) {
+        TransactionStatus known = operations.reserve(operationId);
+        if (known != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Повтор операции {}: возвращён сохранённый итог {}", operationId, known);
+            }
+            return known;
+        }
+        TransactionStatus status;
+        try {
+            status = operation.get();
+        } catch (RuntimeException e) {
+            operations.release(operationId);
+            throw e;
+        }
+        operations.complete(operationId, status);
+        return status;
+    }
+
+    /**
+     * Дожидается записи успешной операции на диск.
+     */
+    private TransactionStatus durable(TransactionStatus status) {
+        if (journal != null && status.isSuccess()) {
+            journal.syncTo(journal.getNextLsn());
+        }
+        return status;
+    }
+}
@@ -0,0 +1,205 @@
+package ru.gigaden.service;
+
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.utils.LongObjectHashMap;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Кэш итогов операций по идентификатору, присвоенному клиентом, - для защиты от повторов.
+ * Идентификаторы делятся на сегменты со своей блокировкой, внутри сегмента хранятся
+ * в таблицах с ключами long без упаковки (поиск O(1)) по поколениям времени:
+ * новое поколение начинается раз в window / GENERATIONS или когда текущее заполнено,
+ * при этом самое старое поколение очищается целиком. Поэтому идентификатор помнится
+ * не меньше window (если кэш не переполнен), а память ограничена maxEntries
+ * независимо от потока операций. Исключение - резервы операций, которые ещё выполняются:
+ * при очистке они переносятся в новое поколение, иначе повтор выполнил бы операцию второй раз.
+ * Их сверх maxEntries не больше, чем операций в работе.
+ * <p>
+ * Протокол: {@link #reserve(long)} занимает идентификатор, операция выполняется,
+ * {@link #complete(long, TransactionStatus)} сохраняет итог, а при исключении
+ * {@link #release(long)} снимает резерв, чтобы повтор мог выполнить операцию.
+ */
+public final class IdempotencyCache {
+    private static final int GENERATIONS = 4;
+    private static final int SEGMENTS = 64;
+    /**
+     * Отметка «операция выполняется» - итог ещё не известен.
+     */
+    private static final Object PENDING = new Object();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long generationNanos;
+    private final int generationCapacity;
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param window     сколько помнить идентификатор.
+     * @param maxEntries сколько идентификаторов помнить не больше.
+     */
+    public IdempotencyCache(Duration window, int maxEntries) {
+        this(window, maxEntries, System::nanoTime);
+    }
+
+    IdempotencyCache(Duration window, int maxEntries, LongSupplier nanoClock) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Окно должно быть положительным");
+        }
+        if (maxEntries < SEGMENTS * GENERATIONS) {
+            throw new IllegalArgumentException("Размер кэша должен быть не меньше " + SEGMENTS * GENERATIONS);
+        }
+        this.generationNanos = window.toNanos() / (GENERATIONS - 1);
+        this.generationCapacity = maxEntries / (SEGMENTS * GENERATIONS);
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(now);
+        }
+    }
+
+    /**
+     * Занимает идентификатор операции.
+     *
+     * @return null, если идентификатор новый и операцию нужно выполнить;
+     * сохранённый итог, если операция уже выполнена;
+     * OPERATION_IN_PROGRESS, если операция с этим идентификатором выполняется сейчас.
+     */
+    public TransactionStatus reserve(long operationId) {
+        Segment segment = segment(operationId);
+        segment.lock.lock();
+        try {
+            segment.rotateIfExpired(nanoClock.getAsLong());
+            Object known = segment.find(operationId);
+            if (known == PENDING) {
+                return TransactionStatus.OPERATION_IN_PROGRESS;
+            }
+            if (known != null) {
+                return (TransactionStatus) known;
+            }
+            segment.store(operationId, PENDING, nanoClock.getAsLong());
+            return null;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Сохраняет итог операции, занятой через {@link #reserve(long)}.
+     */
+    public void complete(long operationId, TransactionStatus status) {
+        Segment segment = segment(operationId);
+        segment.lock.lock();
+        try {
+            segment.removeFromAll(operationId);
+            segment.store(operationId, status, nanoClock.getAsLong());
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Снимает резерв операции, завершившейся исключением: повтор выполнит её заново.
+     */
+    public void release(long operationId) {
+        Segment segment = segment(operationId);
+        segment.lock.lock();
+        try {
+            segment.removeFromAll(operationId);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return количество запомненных идентификаторов.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (LongObjectHashMap<Object> generation : segment.generations) {
+                    size += generation.size();
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment segment(long operationId) {
+        long h = operationId * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 58)];
+    }
+
+    /**
+     * Поколения сегмента: generations[current] - текущее, остальные - более старые по кругу.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final LongObjectHashMap<Object>[] generations = new LongObjectHashMap[GENERATIONS];
+        private int current;
+        private long generationStart;
+
+        private Segment(long now) {
+            for (int i = 0; i < GENERATIONS; i++) {
+                generations[i] = new LongObjectHashMap<>();
+            }
+            this.generationStart = now;
+        }
+
+        private Object find(long operationId) {
+            for (int i = 0; i < GENERATIONS; i++) {
+                Object value = generations[(current - i + GENERATIONS) % GENERATIONS].get(operationId);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private void store(long operationId, Object value, long now) {
+            if (generations[current].size() >= generationCapacity) {
+                rotate(now);
+            }
+            generations[current].put(operationId, value);
+        }
+
+        private void removeFromAll(long operationId) {
+            for (LongObjectHashMap<Object> generation : generations) {
+                generation.remove(operationId);
+            }
+        }
+
+        private void rotateIfExpired(long now) {
+            // Простой дольше окна очищает все поколения за несколько шагов.
+            for (int i = 0; i < GENERATIONS && now - generationStart >= generationNanos; i++) {
+                rotate(generationStart + generationNanos);
+            }
+            if (now - generationStart >= generationNanos) {
+                generationStart = now;
+            }
+        }
+
+        private void rotate(long start) {
+            current = (current + 1) % GENERATIONS;
+            LongObjectHashMap<Object> oldest = generations[current];
+            long[] pending = new long[oldest.size()];
+            int[] count = {0};
+            oldest.forEach((operationId, value) -> {
+                if (value == PENDING) {
+                    pending[count[0]++] = operationId;
+                }
+            });
+            oldest.clear();
+            for (int i = 0; i < count[0]; i++) {
+                oldest.put(pending[i], PENDING);
+            }
+            generationStart = start;
+        }
+    }
+}
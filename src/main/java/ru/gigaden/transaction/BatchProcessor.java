@@ -0,0 +1,320 @@
+package ru.gigaden.transaction;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.account.WithdrawalReceipt;
+import ru.gigaden.journal.Journal;
+import ru.gigaden.metrics.TransactionMetrics;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.utils.LongObjectHashMap;
+import ru.gigaden.utils.Validator;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Обработка пакетов разнородных операций ({@link TransactionBatch}) в два прохода.
+ * <p>
+ * Первый проход проверяет весь пакет без изменения счетов: колонка за колонкой находит счета,
+ * проверяет суммы правилами {@link Validator} и лимитом операции, затем по порядку операций
+ * прогоняет ожидаемые балансы счетов - так снятие, которое пройдёт только после пополнения
+ * из того же пакета, не отклоняется, а два снятия, которые вместе не помещаются в лимит, отклоняются.
+ * Состояние правил с учётом во времени (например, VelocityRule) проверяется только при применении,
+ * а комиссия при проверке считается без бесплатных снятий периода - не меньше фактической.
+ * <p>
+ * Второй проход применяет прошедшие проверку операции через try-API счетов. Журнал сбрасывается
+ * на диск один раз на пакет, а метрики получают одно измерение задержки пакета.
+ * <p>
+ * В атомарном режиме пакет выполняется целиком или никак: отказ при проверке отклоняет пакет
+ * до применения, а отказ при применении (счёт изменили параллельно) откатывает уже применённые
+ * операции в обратном порядке компенсирующими операциями. Компенсации видны слушателям и журналу
+ * как обычные изменения. Если компенсация невозможна (пополнение уже потрачено), операция
+ * остаётся выполненной со статусом SUCCESS и это логируется как ошибка.
+ */
+@Slf4j
+public class BatchProcessor {
+    private static final byte DEPOSIT = (byte) TransactionBatch.Kind.DEPOSIT.ordinal();
+    private static final byte WITHDRAW = (byte) TransactionBatch.Kind.WITHDRAW.ordinal();
+    private static final byte WITHDRAWAL_FEE = (byte) TransactionBatch.Kind.WITHDRAWAL_FEE.ordinal();
+
+    private final AccountRepository accounts;
+    private final Journal journal;
+    private final TransactionMetrics metrics;
+    private final boolean atomic;
+
+    /**
+     * @param accounts хранилище счетов.
+     * @param journal  журнал, который сбрасывается на диск после пакета, или null.
+     * @param metrics  метрики для задержки пакета или null.
+     * @param atomic   true - пакет выполняется целиком или никак.
+     */
+    @Builder
+    private BatchProcessor(AccountRepository accounts, Journal journal, TransactionMetrics metrics, boolean atomic) {
+        this.accounts = accounts;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.atomic = atomic;
+    }
+
+    /**
+     * Проверяет и применяет пакет.
+     *
+     * @param batch пакет операций.
+     * @return статус каждой операции.
+     */
+    public BatchResult process(TransactionBatch batch) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        int size = batch.size();
+        BankAccount[] resolved = new BankAccount[size];
+        TransactionStatus[] statuses = new TransactionStatus[size];
+        validate(batch, resolved, statuses);
+
+        boolean aborted = false;
+        if (atomic && failed(statuses)) {
+            abort(statuses, 0);
+            aborted = true;
+        } else {
+            long[] charges = new long[size];
+            long[] previous = new long[size];
+            WithdrawalReceipt[] receipts = new WithdrawalReceipt[size];
+            for (int i = 0; i < size; i++) {
+                if (!statuses[i].isSuccess()) {
+                    continue;
+                }
+                statuses[i] = apply(batch, i, resolved[i], charges, previous, receipts);
+                if (!statuses[i].isSuccess() && atomic) {
+                    log.warn("Операция {} пакета отклонена при применении: {}, пакет откатывается", i, statuses[i]);
+                    rollback(batch, i, resolved, statuses, charges, previous, receipts);
+                    aborted = true;
+                    break;
+                }
+            }
+        }
+        if (journal != null) {
+            journal.syncTo(journal.getNextLsn());
+        }
+        if (metrics != null) {
+            metrics.recordProcessTransaction(System.nanoTime() - start);
+        }
+        BatchResult result = new BatchResult(statuses, aborted);
+        log.info("Пакет из {} операций обработан: {}", size, result);
+        return result;
+    }
+
+    /**
+     * Первый проход: статусы всех операций без изменения счетов.
+     */
+    private void validate(TransactionBatch batch, BankAccount[] resolved, TransactionStatus[] statuses) {
+        int size = batch.size();
+        long[] numbers = batch.accountNumbers;
+        byte[] kinds = batch.kinds;
+        long[] values = batch.values;
+        for (int i = 0; i < size; i++) {
+            resolved[i] = accounts.get(numbers[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            BankAccount account = resolved[i];
+            byte kind = kinds[i];
+            long value = values[i];
+            if (account == null) {
+                statuses[i] = TransactionStatus.ACCOUNT_NOT_FOUND;
+            } else if (kind == DEPOSIT) {
+                statuses[i] = Validator.depositStatus(value);
+            } else if (kind == WITHDRAW) {
+                statuses[i] = value <= 0 ? TransactionStatus.INVALID_AMOUNT : TransactionStatus.SUCCESS;
+            } else if (kind == WITHDRAWAL_FEE) {
+                statuses[i] = !(account instanceof CreditAccount) ? TransactionStatus.FAILED
+                        : Double.longBitsToDouble(value) < 0 ? TransactionStatus.INVALID_AMOUNT
+                        : TransactionStatus.SUCCESS;
+            } else {
+                statuses[i] = account instanceof SavingsAccount ? TransactionStatus.SUCCESS : TransactionStatus.FAILED;
+            }
+        }
+        LongObjectHashMap<Projection> projections = new LongObjectHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (!statuses[i].isSuccess()) {
+                continue;
+            }
+            BankAccount account = resolved[i];
+            Projection projection = projections.get(numbers[i]);
+            if (projection == null) {
+                projection = new Projection(account);
+                projections.put(numbers[i], projection);
+            }
+            statuses[i] = projection.apply(account, kinds[i], values[i], batch.interestDate);
+        }
+    }
+
+    private TransactionStatus apply(TransactionBatch batch,
+                                    int i,
+                                    BankAccount account,
+                                    long[] charges,
+                                    long[] previous,
+                                    WithdrawalReceipt[] receipts) {
+        byte kind = batch.kinds[i];
+        long value = batch.values[i];
+        try {
+            if (kind == DEPOSIT) {
+                return account.tryDeposit(Money.ofMinor(value));
+            }
+            if (kind == WITHDRAW) {
+                WithdrawalReceipt receipt = atomic ? new WithdrawalReceipt() : null;
+                receipts[i] = receipt;
+                return account.tryWithdraw(Money.ofMinor(value), receipt);
+            }
+            if (kind == WITHDRAWAL_FEE) {
+                CreditAccount credit = (CreditAccount) account;
+                previous[i] = Double.doubleToLongBits(credit.getWithdrawalFee());
+                credit.setWithdrawalFee(Double.longBitsToDouble(value));
+                return TransactionStatus.SUCCESS;
+            }
+            SavingsAccount savings = (SavingsAccount) account;
+            previous[i] = savings.getLastInterestPaid().toEpochDay();
+            long interest = savings.tryAccrueInterest(batch.interestDate);
+            if (interest < 0) {
+                return TransactionStatus.INTEREST_NOT_DUE;
+            }
+            charges[i] = interest;
+            return TransactionStatus.SUCCESS;
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка операции {} пакета со счётом = {}", i, account.getAccountNumber(), e);
+            return TransactionStatus.FAILED;
+        }
+    }
+
+    /**
+     * Откатывает применённые операции перед failedIndex в обратном порядке и помечает пакет отклонённым.
+     */
+    private void rollback(TransactionBatch batch,
+                          int failedIndex,
+                          BankAccount[] resolved,
+                          TransactionStatus[] statuses,
+                          long[] charges,
+                          long[] previous,
+                          WithdrawalReceipt[] receipts) {
+        for (int i = failedIndex - 1; i >= 0; i--) {
+            if (statuses[i].isSuccess() && compensate(batch, i, resolved[i], charges, previous, receipts)) {
+                statuses[i] = TransactionStatus.BATCH_ABORTED;
+            }
+        }
+        abort(statuses, failedIndex + 1);
+    }
+
+    private boolean compensate(TransactionBatch batch,
+                               int i,
+                               BankAccount account,
+                               long[] charges,
+                               long[] previous,
+                               WithdrawalReceipt[] receipts) {
+        byte kind = batch.kinds[i];
+        TransactionStatus status = TransactionStatus.SUCCESS;
+        try {
+            if (kind == DEPOSIT) {
+                status = account.tryRevertDeposit(Money.ofMinor(batch.values[i]));
+            } else if (kind == WITHDRAW) {
+                account.revertWithdraw(receipts[i]);
+            } else if (kind == WITHDRAWAL_FEE) {
+                ((CreditAccount) account).setWithdrawalFee(Double.longBitsToDouble(previous[i]));
+            } else {
+                SavingsAccount savings = (SavingsAccount) account;
+                status = savings.tryRevertDeposit(Money.ofMinor(charges[i]));
+                if (status.isSuccess()) {
+                    savings.setLastInterestPaid(LocalDate.ofEpochDay(previous[i]));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка отката операции {} пакета со счётом = {}", i, account.getAccountNumber(), e);
+            return false;
+        }
+        if (!status.isSuccess()) {
+            log.error("Не удалось откатить операцию {} пакета со счётом = {}: {}",
+                    i, account.getAccountNumber(), status);
+        }
+        return status.isSuccess();
+    }
+
+    private static boolean failed(TransactionStatus[] statuses) {
+        for (TransactionStatus status : statuses) {
+            if (!status.isSuccess()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Помечает невыполненными успешные по проверке операции начиная с from.
+     */
+    private static void abort(TransactionStatus[] statuses, int from) {
+        for (int i = from; i < statuses.length; i++) {
+            if (statuses[i].isSuccess()) {
+                statuses[i] = TransactionStatus.BATCH_ABORTED;
+            }
+        }
+    }
+
+    /**
+     * Ожидаемое состояние счёта при проверке пакета.
+     */
+    private static final class Projection {
+        private final RuleChain rules;
+        private final long overdraft;
+        private long balance;
+        private long feeRate;
+        private long interestRate;
+        private LocalDate lastInterestPaid;
+
+        private Projection(BankAccount account) {
+            this.rules = account.getRules();
+            this.balance = account.getBalanceMinorUnits();
+            if (account instanceof CreditAccount credit) {
+                this.overdraft = credit.getCreditLimitAmount().getMinorUnits();
+                this.feeRate = Money.toRate(credit.getWithdrawalFee());
+            } else {
+                this.overdraft = 0;
+            }
+            if (account instanceof SavingsAccount savings) {
+                this.interestRate = Money.toRate(savings.getMonthlyInterest());
+                this.lastInterestPaid = savings.getLastInterestPaid();
+            }
+        }
+
+        private TransactionStatus apply(BankAccount account,
+                                        byte kind,
+                                        long value,
+                                        LocalDate interestDate) {
+            if (kind == DEPOSIT) {
+                balance += value;
+                return TransactionStatus.SUCCESS;
+            }
+            if (kind == WITHDRAW) {
+                long charged = account instanceof TransactionFee
+                        ? value + rules.getFeeSchedule().fee(value, account.getAccountHolder(), feeRate)
+                        : value;
+                if (charged > rules.getMaxTransactionMinorUnits()) {
+                    return TransactionStatus.TRANSACTION_LIMIT_EXCEEDED;
+                }
+                TransactionStatus status = Validator.withdrawStatus(charged, balance, overdraft);
+                if (status.isSuccess()) {
+                    balance -= charged;
+                }
+                return status;
+            }
+            if (kind == WITHDRAWAL_FEE) {
+                feeRate = Money.toRate(Double.longBitsToDouble(value));
+                return TransactionStatus.SUCCESS;
+            }
+            if (ChronoUnit.MONTHS.between(lastInterestPaid, interestDate) < 1) {
+                return TransactionStatus.INTEREST_NOT_DUE;
+            }
+            balance += Money.percentOf(balance, interestRate);
+            lastInterestPaid = interestDate;
+            return TransactionStatus.SUCCESS;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.gigaden.transaction;
+
+/**
+ * Итог пакета операций: статус каждой операции в порядке пакета.
+ */
+public final class BatchResult {
+    private final TransactionStatus[] statuses;
+    private final boolean aborted;
+
+    BatchResult(TransactionStatus[] statuses, boolean aborted) {
+        this.statuses = statuses;
+        this.aborted = aborted;
+    }
+
+    /**
+     * @return количество операций пакета.
+     */
+    public int size() {
+        return statuses.length;
+    }
+
+    /**
+     * @param index позиция операции в пакете.
+     * @return итог операции.
+     */
+    public TransactionStatus getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * @return true, если атомарный пакет отклонён целиком: операции не выполнены или отменены.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @param status искомый итог.
+     * @return количество операций с этим итогом.
+     */
+    public int count(TransactionStatus status) {
+        int count = 0;
+        for (TransactionStatus s : statuses) {
+            if (s == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return количество успешных операций.
+     */
+    public int getSuccessCount() {
+        return count(TransactionStatus.SUCCESS);
+    }
+
+    /**
+     * @return количество невыполненных операций.
+     */
+    public int getFailedCount() {
+        return statuses.length - getSuccessCount();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult(size=" + statuses.length
+                + ", success=" + getSuccessCount()
+                + ", failed=" + getFailedCount()
+                + ", aborted=" + aborted + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package ru.gigaden.transaction;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Задача пакетной обработки для диапазона [from, to) массива счетов.
+ * Диапазон делится пополам, пока часть не станет не больше batchSize,
+ * каждая часть обрабатывается одним потоком последовательно.
+ * Каждая задача пишет только в свой диапазон массива статусов,
+ * поэтому синхронизация между задачами не нужна.
+ */
+final class BatchTask<A> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Минимальный размер части списка, которую обрабатывает одна задача.
+     */
+    private static final int MIN_BATCH_SIZE = 1_024;
+    /**
+     * Сколько задач приходится на один поток пула - запас для work stealing.
+     */
+    private static final int TASKS_PER_THREAD = 8;
+
+    /**
+     * Задача выполняется только внутри пула и не сериализуется: счета и операция не Serializable.
+     */
+    private final transient A[] accounts;
+    private final transient TransactionStatus[] statuses;
+    private final transient Function<A, TransactionStatus> operation;
+    private final int from;
+    private final int to;
+    private final int batchSize;
+
+    BatchTask(A[] accounts,
+              TransactionStatus[] statuses,
+              Function<A, TransactionStatus> operation,
+              int from,
+              int to,
+              int batchSize) {
+        this.accounts = accounts;
+        this.statuses = statuses;
+        this.operation = operation;
+        this.from = from;
+        this.to = to;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Подбирает размер части по числу потоков пула.
+     */
+    static int batchSize(int size, ForkJoinPool pool) {
+        return Math.max(MIN_BATCH_SIZE, size / (pool.getParallelism() * TASKS_PER_THREAD));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= batchSize) {
+            for (int i = from; i < to; i++) {
+                statuses[i] = operation.apply(accounts[i]);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new BatchTask<>(accounts, statuses, operation, from, middle, batchSize),
+                new BatchTask<>(accounts, statuses, operation, middle, to, batchSize));
+    }
+}
@@ -0,0 +1,146 @@
+package ru.gigaden.transaction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная очередь команд «много писателей - один читатель» на заранее выделенном кольце.
+ * У каждой ячейки есть номер последовательности: писатель занимает позицию CAS-ом хвоста,
+ * заполняет ячейку и публикует её записью номера; читатель ждёт номер позиции + 1
+ * и возвращает ячейку писателям номером позиции + ёмкость.
+ * Ячейки переиспользуются, поэтому отправка команды не создаёт объектов.
+ * Закрытие выставляет бит в хвосте: после него позиции не выдаются, и читатель знает,
+ * до какой позиции дочитать, чтобы не потерять уже принятые команды.
+ */
+final class CommandRing {
+    private static final long CLOSED = 1L << 62;
+
+    /**
+     * Ячейка кольца. Поля команды пишутся до публикации номера и читаются после него.
+     */
+    static final class Slot {
+        private volatile long sequence;
+        PartitionedTransactionEngine.Operation operation;
+        long accountNumber;
+        long argument;
+        long tag;
+        TransactionCallback callback;
+
+        private void clear() {
+            operation = null;
+            callback = null;
+        }
+    }
+
+    /**
+     * Обработчик прочитанной команды.
+     */
+    @FunctionalInterface
+    interface Handler {
+        void handle(Slot slot);
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Позиция чтения - меняется только потоком-читателем.
+     */
+    private long head;
+
+    /**
+     * @param capacity ёмкость; округляется вверх до степени двойки.
+     */
+    CommandRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ёмкость очереди должна быть положительной");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Добавляет команду без блокировок.
+     *
+     * @return false, если очередь заполнена или закрыта.
+     */
+    boolean offer(PartitionedTransactionEngine.Operation operation,
+                  long accountNumber,
+                  long argument,
+                  long tag,
+                  TransactionCallback callback) {
+        while (true) {
+            long position = tail.get();
+            if ((position & CLOSED) != 0) {
+                return false;
+            }
+            Slot slot = slots[(int) position & mask];
+            long sequence = slot.sequence;
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.operation = operation;
+                    slot.accountNumber = accountNumber;
+                    slot.argument = argument;
+                    slot.tag = tag;
+                    slot.callback = callback;
+                    slot.sequence = position + 1;
+                    return true;
+                }
+            } else if (sequence < position) {
+                // Ячейку ещё не освободил читатель: кольцо заполнено.
+                return false;
+            }
+            // Иначе позицию занял другой писатель - повторяем с новым хвостом.
+        }
+    }
+
+    /**
+     * Обрабатывает до limit опубликованных команд. Вызывается только потоком-читателем.
+     *
+     * @return количество обработанных команд.
+     */
+    int drain(Handler handler, int limit) {
+        int processed = 0;
+        while (processed < limit) {
+            Slot slot = slots[(int) head & mask];
+            if (slot.sequence != head + 1) {
+                break;
+            }
+            handler.handle(slot);
+            slot.clear();
+            slot.sequence = head + slots.length;
+            head++;
+            processed++;
+        }
+        return processed;
+    }
+
+    /**
+     * Запрещает новые команды.
+     */
+    void close() {
+        long current;
+        do {
+            current = tail.get();
+        } while ((current & CLOSED) == 0 && !tail.compareAndSet(current, current | CLOSED));
+    }
+
+    boolean isClosed() {
+        return (tail.get() & CLOSED) != 0;
+    }
+
+    /**
+     * @return true, если очередь закрыта и все принятые команды прочитаны. Вызывается только потоком-читателем.
+     */
+    boolean isDrained() {
+        long current = tail.get();
+        return (current & CLOSED) != 0 && head == (current & ~CLOSED);
+    }
+}
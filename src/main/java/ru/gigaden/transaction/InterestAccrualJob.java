@@ -0,0 +1,72 @@
+package ru.gigaden.transaction;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.SavingsAccount;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Пакетное начисление процентов на сберегательные счета в конце периода.
+ * Часы читаются один раз за запуск, счета, которым ещё рано начислять, пропускаются без исключений.
+ * Каждый счёт сам атомарно занимает период (см. {@link SavingsAccount#tryApplyInterest(LocalDate)}),
+ * поэтому повторный запуск после сбоя на середине начисляет проценты только оставшимся счетам:
+ * уже обработанные получают INTEREST_NOT_DUE. При работе с журналом дата начисления восстанавливается
+ * вместе с балансом, так что и после перезапуска процесса проценты не начисляются дважды.
+ */
+@Slf4j
+public final class InterestAccrualJob {
+    private final Clock clock;
+    private final ForkJoinPool pool;
+
+    public InterestAccrualJob(Clock clock, ForkJoinPool pool) {
+        this.clock = clock;
+        this.pool = pool;
+    }
+
+    /**
+     * Начисляет проценты на дату по часам задания.
+     *
+     * @param accounts сберегательные счета.
+     * @return статус начисления для каждого счёта.
+     */
+    public TransactionSummary run(List<SavingsAccount> accounts) {
+        return run(accounts, LocalDate.now(clock));
+    }
+
+    /**
+     * Начисляет проценты на заданную дату.
+     *
+     * @param accounts сберегательные счета.
+     * @param today    дата начисления.
+     * @return статус начисления для каждого счёта.
+     */
+    public TransactionSummary run(List<SavingsAccount> accounts, LocalDate today) {
+        log.info("Начато начисление процентов на {} счетов на дату {}", accounts.size(), today);
+        BankAccount[] snapshot = accounts.toArray(new BankAccount[0]);
+        TransactionStatus[] statuses = new TransactionStatus[snapshot.length];
+        pool.invoke(new BatchTask<>(snapshot,
+                statuses,
+                account -> accrue((SavingsAccount) account, today),
+                0,
+                snapshot.length,
+                BatchTask.batchSize(snapshot.length, pool)));
+        TransactionSummary summary = new TransactionSummary(List.of(snapshot), statuses);
+        log.info("Начисление процентов закончено: {}, не наступил период: {}",
+                summary,
+                summary.count(TransactionStatus.INTEREST_NOT_DUE));
+        return summary;
+    }
+
+    private static TransactionStatus accrue(SavingsAccount account, LocalDate today) {
+        try {
+            return account.tryApplyInterest(today);
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка начисления процентов на счёт = {}", account.getAccountNumber(), e);
+            return TransactionStatus.FAILED;
+        }
+    }
+}
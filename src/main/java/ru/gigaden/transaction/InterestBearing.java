@@ -1,11 +1,15 @@
 package ru.gigaden.transaction;
 
+import ru.gigaden.money.Money;
+
 /**
  * Интерфейс для начисления процентов на остаток.
  */
 public interface InterestBearing {
     /**
-     * Вычисляет размер процентов на остаток.
+     * Вычисляет размер процентов на остаток и зачисляет их.
+     *
+     * @return начисленные проценты.
      */
-    void applyInterest();
+    Money applyInterest();
 }
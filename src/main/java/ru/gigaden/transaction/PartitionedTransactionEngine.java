@@ -0,0 +1,246 @@
+package ru.gigaden.transaction;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Обработка операций в режиме «один писатель на раздел».
+ * Счета делятся на разделы по хэшу номера; каждым разделом владеет один поток,
+ * который читает команды из своего кольца ({@link CommandRing}) и выполняет их над счетами
+ * из {@link AccountRepository}. Отправители не блокируются: команда копируется в заранее
+ * выделенную ячейку кольца, итог приходит в {@link TransactionCallback} или CompletableFuture.
+ * Все команды одного счёта выполняются одним потоком в порядке отправки, поэтому
+ * CAS баланса внутри счёта проходит с первой попытки, а отказы не требуют исключений.
+ * Операции над теми же счетами в обход движка допустимы - они просто конкурируют за CAS.
+ */
+@Slf4j
+public class PartitionedTransactionEngine implements Closeable {
+    private static final int DRAIN_LIMIT = 256;
+    private static final int SPINS_BEFORE_YIELD = 100;
+    private static final int YIELDS_BEFORE_PARK = 10;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Вид команды. Аргумент команды - сумма в копейках, для INTEREST - дата начисления (epoch day).
+     */
+    public enum Operation {
+        DEPOSIT,
+        WITHDRAW,
+        INTEREST
+    }
+
+    private final AccountRepository accounts;
+    private final CommandRing[] rings;
+    private final Thread[] threads;
+    private final int mask;
+
+    /**
+     * @param accounts     хранилище счетов.
+     * @param partitions   количество разделов (потоков); округляется вверх до степени двойки.
+     * @param ringCapacity ёмкость очереди каждого раздела.
+     */
+    public PartitionedTransactionEngine(AccountRepository accounts, int partitions, int ringCapacity) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Количество разделов должно быть положительным");
+        }
+        int size = 1;
+        while (size < partitions) {
+            size <<= 1;
+        }
+        this.accounts = accounts;
+        this.mask = size - 1;
+        this.rings = new CommandRing[size];
+        this.threads = new Thread[size];
+        for (int i = 0; i < size; i++) {
+            CommandRing ring = new CommandRing(ringCapacity);
+            rings[i] = ring;
+            threads[i] = new Thread(() -> run(ring), "partition-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        log.info("Запущен движок операций: разделов {}, ёмкость очереди {}", size, ringCapacity);
+    }
+
+    /**
+     * Отправляет команду без блокировки.
+     *
+     * @param operation     вид команды.
+     * @param accountNumber номер счёта.
+     * @param argument      сумма в копейках или дата начисления (epoch day) для INTEREST.
+     * @param tag           метка, возвращаемая в callback.
+     * @param callback      получатель итога; вызывается в потоке раздела.
+     * @return false, если очередь раздела заполнена или движок закрыт - команда не принята.
+     */
+    public boolean trySubmit(Operation operation,
+                             long accountNumber,
+                             long argument,
+                             long tag,
+                             TransactionCallback callback) {
+        return rings[partition(accountNumber)].offer(operation, accountNumber, argument, tag, callback);
+    }
+
+    /**
+     * Отправляет команду, ожидая места в очереди раздела, если она заполнена.
+     *
+     * @throws RejectedExecutionException если движок закрыт.
+     */
+    public void submit(Operation operation,
+                       long accountNumber,
+                       long argument,
+                       long tag,
+                       TransactionCallback callback) {
+        CommandRing ring = rings[partition(accountNumber)];
+        int attempts = 0;
+        while (!ring.offer(operation, accountNumber, argument, tag, callback)) {
+            if (ring.isClosed()) {
+                throw new RejectedExecutionException("Движок операций закрыт");
+            }
+            idle(++attempts);
+        }
+    }
+
+    /**
+     * @return true, если движок закрыт и команды больше не принимает.
+     */
+    public boolean isClosed() {
+        return rings[0].isClosed();
+    }
+
+    public CompletableFuture<TransactionStatus> deposit(long accountNumber, Money amount) {
+        return toFuture(Operation.DEPOSIT, accountNumber, amount.getMinorUnits());
+    }
+
+    public CompletableFuture<TransactionStatus> withdraw(long accountNumber, Money amount) {
+        return toFuture(Operation.WITHDRAW, accountNumber, amount.getMinorUnits());
+    }
+
+    public CompletableFuture<TransactionStatus> applyInterest(long accountNumber, LocalDate today) {
+        return toFuture(Operation.INTEREST, accountNumber, today.toEpochDay());
+    }
+
+    /**
+     * Списывает amount с каждого счёта через разделы движка - замена последовательного
+     * {@link TransactionProcessor#processTransaction(List, double)} для потокового приёма.
+     * Счета ищутся в хранилище движка по номеру.
+     *
+     * @param accounts список счетов.
+     * @param amount   сумма для снятия.
+     * @return статус списания для каждого счёта.
+     * @throws InterruptedException если ожидание итогов прервано.
+     */
+    public TransactionSummary withdrawAll(List<BankAccount> accounts, Money amount) throws InterruptedException {
+        BankAccount[] snapshot = accounts.toArray(new BankAccount[0]);
+        TransactionStatus[] statuses = new TransactionStatus[snapshot.length];
+        CountDownLatch done = new CountDownLatch(snapshot.length);
+        TransactionCallback callback = (tag, status) -> {
+            statuses[(int) tag] = status;
+            done.countDown();
+        };
+        for (int i = 0; i < snapshot.length; i++) {
+            submit(Operation.WITHDRAW, snapshot[i].getAccountNumber(), amount.getMinorUnits(), i, callback);
+        }
+        done.await();
+        return new TransactionSummary(List.of(snapshot), statuses);
+    }
+
+    /**
+     * Прекращает приём команд, дожидается выполнения уже принятых и останавливает потоки разделов.
+     */
+    @Override
+    public void close() {
+        for (CommandRing ring : rings) {
+            ring.close();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("Движок операций остановлен");
+    }
+
+    private CompletableFuture<TransactionStatus> toFuture(Operation operation, long accountNumber, long argument) {
+        CompletableFuture<TransactionStatus> future = new CompletableFuture<>();
+        submit(operation, accountNumber, argument, 0, (tag, status) -> future.complete(status));
+        return future;
+    }
+
+    private int partition(long accountNumber) {
+        long h = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Цикл потока раздела: выбирает команды пачками, а без работы
+     * сначала крутится, затем уступает процессор и наконец засыпает на короткое время.
+     */
+    private void run(CommandRing ring) {
+        CommandRing.Handler handler = this::execute;
+        int idle = 0;
+        while (!ring.isDrained()) {
+            if (ring.drain(handler, DRAIN_LIMIT) > 0) {
+                idle = 0;
+            } else {
+                idle(++idle);
+            }
+        }
+    }
+
+    private void execute(CommandRing.Slot slot) {
+        TransactionStatus status = apply(slot.operation, slot.accountNumber, slot.argument);
+        try {
+            slot.callback.onComplete(slot.tag, status);
+        } catch (RuntimeException e) {
+            log.error("Ошибка обработчика итога операции со счётом = {}", slot.accountNumber, e);
+        }
+    }
+
+    private TransactionStatus apply(Operation operation, long accountNumber, long argument) {
+        BankAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            return TransactionStatus.ACCOUNT_NOT_FOUND;
+        }
+        try {
+            switch (operation) {
+                case DEPOSIT:
+                    return account.tryDeposit(Money.ofMinor(argument));
+                case WITHDRAW:
+                    return account.tryWithdraw(Money.ofMinor(argument));
+                default:
+                    // Проценты начисляются только на сберегательный счёт.
+                    if (!(account instanceof SavingsAccount)) {
+                        return TransactionStatus.FAILED;
+                    }
+                    return ((SavingsAccount) account).tryApplyInterest(LocalDate.ofEpochDay(argument));
+            }
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка операции {} со счётом = {}", operation, accountNumber, e);
+            return TransactionStatus.FAILED;
+        }
+    }
+
+    private static void idle(int attempt) {
+        if (attempt < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.gigaden.transaction;
+
+import ru.gigaden.money.Money;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Пакет разнородных операций над счетами: пополнения, снятия, изменения комиссии и начисления процентов.
+ * Операции хранятся в колонках примитивов в порядке добавления - так их проверяет и применяет
+ * {@link BatchProcessor}. Проценты всех операций пакета начисляются на одну дату.
+ */
+public final class TransactionBatch {
+    private static final Kind[] KINDS = Kind.values();
+
+    final long[] accountNumbers;
+    final byte[] kinds;
+    /**
+     * Сумма в копейках; для изменения комиссии - Double.doubleToLongBits процента, для процентов - 0.
+     */
+    final long[] values;
+    final LocalDate interestDate;
+
+    private TransactionBatch(Builder builder) {
+        this.accountNumbers = Arrays.copyOf(builder.accountNumbers, builder.size);
+        this.kinds = Arrays.copyOf(builder.kinds, builder.size);
+        this.values = Arrays.copyOf(builder.values, builder.size);
+        this.interestDate = builder.interestDate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return количество операций.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    public long getAccountNumber(int index) {
+        return accountNumbers[index];
+    }
+
+    public Kind getKind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    public LocalDate getInterestDate() {
+        return interestDate;
+    }
+
+    /**
+     * Вид операции пакета.
+     */
+    public enum Kind {
+        DEPOSIT,
+        WITHDRAW,
+        WITHDRAWAL_FEE,
+        INTEREST
+    }
+
+    public static final class Builder {
+        private long[] accountNumbers = new long[16];
+        private byte[] kinds = new byte[16];
+        private long[] values = new long[16];
+        private int size;
+        private LocalDate interestDate = LocalDate.now();
+
+        private Builder() {
+        }
+
+        public Builder deposit(long accountNumber, Money amount) {
+            return add(accountNumber, Kind.DEPOSIT, amount.getMinorUnits());
+        }
+
+        public Builder withdraw(long accountNumber, Money amount) {
+            return add(accountNumber, Kind.WITHDRAW, amount.getMinorUnits());
+        }
+
+        /**
+         * Изменение комиссии за снятие кредитного счёта, в процентах.
+         */
+        public Builder withdrawalFee(long accountNumber, double withdrawalFee) {
+            return add(accountNumber, Kind.WITHDRAWAL_FEE, Double.doubleToLongBits(withdrawalFee));
+        }
+
+        /**
+         * Начисление процентов сберегательного счёта на {@link #interestDate(LocalDate)}.
+         */
+        public Builder interest(long accountNumber) {
+            return add(accountNumber, Kind.INTEREST, 0);
+        }
+
+        /**
+         * @param interestDate дата начисления процентов для всего пакета; по умолчанию - сегодня.
+         */
+        public Builder interestDate(LocalDate interestDate) {
+            this.interestDate = interestDate;
+            return this;
+        }
+
+        public TransactionBatch build() {
+            return new TransactionBatch(this);
+        }
+
+        private Builder add(long accountNumber, Kind kind, long value) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                accountNumbers = Arrays.copyOf(accountNumbers, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            accountNumbers[size] = accountNumber;
+            kinds[size] = (byte) kind.ordinal();
+            values[size] = value;
+            size++;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.gigaden.transaction;
+
+/**
+ * Получатель итога асинхронной операции.
+ * Вызывается в потоке раздела, выполнившего операцию, поэтому должен быть коротким и не блокирующим.
+ */
+@FunctionalInterface
+public interface TransactionCallback {
+    /**
+     * @param tag    метка, переданная при отправке команды.
+     * @param status итог операции.
+     */
+    void onComplete(long tag, TransactionStatus status);
+}
@@ -1,5 +1,7 @@
 package ru.gigaden.transaction;
 
+import ru.gigaden.money.Money;
+
 /**
  * Интерфейс для начисления комиссии на денежные средства.
  */
@@ -10,5 +12,5 @@ public interface TransactionFee {
      * @param amount сумма для расчёта комиссии.
      * @return сумма с учётом комиссии.
      */
-    double applyFee(double amount);
+    Money applyFee(Money amount);
 }
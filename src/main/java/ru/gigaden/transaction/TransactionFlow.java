@@ -0,0 +1,311 @@
+package ru.gigaden.transaction;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.money.Money;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потоковая обработка операций через {@link Flow}: подписывается на поток команд и публикует поток итогов.
+ * Команды выполняются разделами {@link PartitionedTransactionEngine}, поэтому команды одного счёта
+ * выполняются по порядку, а параллельность ограничена числом разделов.
+ * <p>
+ * Давление обратной связи: у источника запрашивается не больше maxInFlight команд, которые ещё
+ * не переданы подписчику итогов, - следующая команда запрашивается только после передачи итога.
+ * Пока подписчик итогов не запрашивает, источник останавливается, и память ограничена maxInFlight
+ * итогами без неограниченных очередей. Итоги разных счетов приходят в порядке выполнения,
+ * итоги одного счёта - в порядке команд.
+ * <p>
+ * Поддерживается один подписчик итогов. Ошибка источника передаётся подписчику после итогов
+ * уже принятых команд.
+ */
+@Slf4j
+public final class TransactionFlow implements Flow.Processor<TransactionFlow.Command, TransactionFlow.Result> {
+    private final PartitionedTransactionEngine engine;
+    private final int maxInFlight;
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Итоги, ещё не переданные подписчику; защищены lock.
+     */
+    private final ArrayDeque<Result> ready;
+    /**
+     * Команды, не поместившиеся в очередь раздела, в порядке поступления; защищены lock.
+     */
+    private final ArrayDeque<Command> pending;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    /**
+     * Команды, принятые от источника, итоги которых ещё не переданы подписчику.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super Result> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private boolean terminated;
+
+    /**
+     * @param engine      движок, выполняющий команды.
+     * @param maxInFlight максимум команд, принятых от источника и ещё не переданных подписчику итогов.
+     */
+    public TransactionFlow(PartitionedTransactionEngine engine, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Количество команд в работе должно быть положительным");
+        }
+        this.engine = engine;
+        this.maxInFlight = maxInFlight;
+        this.ready = new ArrayDeque<>(maxInFlight);
+        this.pending = new ArrayDeque<>();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(maxInFlight);
+    }
+
+    /**
+     * Принимает команду без блокировки: если очередь раздела заполнена, команда ждёт в pending
+     * и отправляется при следующем проходе {@link #drain()}. Пока pending не пуст, новые команды
+     * встают за ней, чтобы не обогнать команды того же счёта. Размер pending ограничен maxInFlight.
+     * Ждать места в очереди здесь нельзя: источник может вызвать onNext из потока раздела.
+     */
+    @Override
+    public void onNext(Command command) {
+        outstanding.incrementAndGet();
+        boolean queued;
+        lock.lock();
+        try {
+            queued = !pending.isEmpty();
+            if (queued) {
+                pending.add(command);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!queued && !trySubmit(command)) {
+            lock.lock();
+            try {
+                pending.add(command);
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Result> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("У потока итогов уже есть подписчик"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("Запрошено неположительное количество: " + n));
+                    return;
+                }
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+                drain();
+            }
+        });
+        drain();
+    }
+
+    private boolean trySubmit(Command command) {
+        return engine.trySubmit(command.operation, command.accountNumber, command.argument, 0,
+                (tag, status) -> complete(new Result(command, status)));
+    }
+
+    /**
+     * Отправляет ожидающие команды по порядку, пока очередь раздела принимает.
+     * Команды закрытого движка завершаются итогом FAILED.
+     */
+    private void flush() {
+        lock.lock();
+        try {
+            Command command;
+            while ((command = pending.peek()) != null) {
+                if (!trySubmit(command)) {
+                    if (!engine.isClosed()) {
+                        return;
+                    }
+                    log.warn("Команда со счётом = {} не принята: движок закрыт", command.accountNumber);
+                    ready.add(new Result(command, TransactionStatus.FAILED));
+                }
+                pending.poll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete(Result result) {
+        lock.lock();
+        try {
+            ready.add(result);
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * Передаёт подписчику готовые итоги в пределах его запроса и запрашивает у источника столько же команд.
+     * Выполняется одним потоком за раз: вызовы из других потоков только отмечают, что нужен ещё проход.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            flush();
+            Flow.Subscriber<? super Result> subscriber = downstream;
+            if (cancelled) {
+                clear();
+            } else if (subscriber != null && !terminated) {
+                int emitted = 0;
+                Result result;
+                while (requested.get() > 0 && (result = poll()) != null) {
+                    subscriber.onNext(result);
+                    requested.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+                    outstanding.decrementAndGet();
+                    emitted++;
+                }
+                Flow.Subscription subscription = upstream;
+                if (emitted > 0 && subscription != null && !upstreamDone) {
+                    subscription.request(emitted);
+                }
+                if (upstreamDone && outstanding.get() == 0) {
+                    terminated = true;
+                    Throwable error = upstreamError;
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private Result poll() {
+        lock.lock();
+        try {
+            return ready.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clear() {
+        lock.lock();
+        try {
+            ready.clear();
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Команда потока.
+     */
+    @Getter
+    @ToString
+    public static final class Command {
+        private final PartitionedTransactionEngine.Operation operation;
+        private final long accountNumber;
+        /**
+         * Сумма в копейках или дата начисления (epoch day) для INTEREST.
+         */
+        private final long argument;
+
+        private Command(PartitionedTransactionEngine.Operation operation, long accountNumber, long argument) {
+            this.operation = operation;
+            this.accountNumber = accountNumber;
+            this.argument = argument;
+        }
+
+        public static Command deposit(long accountNumber, Money amount) {
+            return new Command(PartitionedTransactionEngine.Operation.DEPOSIT, accountNumber, amount.getMinorUnits());
+        }
+
+        public static Command withdraw(long accountNumber, Money amount) {
+            return new Command(PartitionedTransactionEngine.Operation.WITHDRAW, accountNumber, amount.getMinorUnits());
+        }
+
+        public static Command interest(long accountNumber, LocalDate today) {
+            return new Command(PartitionedTransactionEngine.Operation.INTEREST, accountNumber, today.toEpochDay());
+        }
+    }
+
+    /**
+     * Итог команды потока.
+     */
+    @Getter
+    @ToString
+    public static final class Result {
+        private final Command command;
+        private final TransactionStatus status;
+
+        private Result(Command command, TransactionStatus status) {
+            this.command = command;
+            this.status = status;
+        }
+    }
+}
@@ -2,29 +2,139 @@ package ru.gigaden.transaction;
 
 import lombok.extern.slf4j.Slf4j;
 import ru.gigaden.account.BankAccount;
-import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.exception.WithdrawAmountException;
+import ru.gigaden.metrics.TransactionMetrics;
+import ru.gigaden.money.Money;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 @Slf4j
 public final class TransactionProcessor {
+    /**
+     * Метрики задержек; null - задержки не измеряются и System.nanoTime не вызывается.
+     */
+    private static volatile TransactionMetrics metrics;
+
+    /**
+     * Включает измерение задержек снятия и пакетной обработки.
+     *
+     * @param transactionMetrics метрики или null, чтобы выключить измерение.
+     */
+    public static void setMetrics(TransactionMetrics transactionMetrics) {
+        metrics = transactionMetrics;
+    }
 
     /**
      * @param amount   размер суммы для снятия.
      * @param accounts список счетов.
-     *                 Для каждого счета вызывает withdraw(amount).
+     *                 Для каждого счета вызывает tryWithdraw(amount):
+     *                 отказ по лимиту - обычный исход, он логируется без исключения.
      *                 Использует полиморфизм: метод работает с любыми
      *                 наследниками BankAccount.
+     * @throws WithdrawAmountException если сумма не положительная.
      */
     public static void processTransaction(List<BankAccount> accounts, double amount) {
+        Money value = checkedAmount(amount);
+        TransactionMetrics current = metrics;
+        long start = current == null ? 0 : System.nanoTime();
         log.info("Начат процесс списания средств со счетов.");
         accounts.forEach(account -> {
-            try {
-                account.withdraw(amount);
-            } catch (WithdrawLimitException e) {
-                log.info("Ошибка списания со счёта = {}: {}", account.getAccountNumber(), e.getMessage());
+            TransactionStatus status = current == null ? account.tryWithdraw(value) : current.withdraw(account, value);
+            if (!status.isSuccess() && log.isDebugEnabled()) {
+                log.debug("Ошибка списания со счёта = {}: {}", account.getAccountNumber(), status);
             }
         });
+        if (current != null) {
+            current.recordProcessTransaction(System.nanoTime() - start);
+        }
         log.info("Списание со счетов закончено.");
     }
+
+    /**
+     * Параллельно списывает amount с каждого счёта, разбивая список на части
+     * и распределяя их по потокам пула.
+     * Размер части подбирается по числу потоков пула.
+     *
+     * @param accounts список счетов.
+     * @param amount   размер суммы для снятия.
+     * @param pool     пул, в котором выполняется списание.
+     * @return статус списания для каждого счёта.
+     */
+    public static TransactionSummary processTransaction(List<BankAccount> accounts, double amount, ForkJoinPool pool) {
+        return processTransaction(accounts, amount, pool, BatchTask.batchSize(accounts.size(), pool));
+    }
+
+    /**
+     * Параллельно списывает amount с каждого счёта.
+     * Список делится пополам, пока часть не станет не больше batchSize,
+     * каждая часть обрабатывается одним потоком последовательно.
+     * Ошибки не прерывают обработку: они попадают в итоговую сводку.
+     *
+     * @param accounts  список счетов.
+     * @param amount    размер суммы для снятия.
+     * @param pool      пул, в котором выполняется списание.
+     * @param batchSize максимальный размер части, обрабатываемой без деления.
+     * @return статус списания для каждого счёта.
+     */
+    public static TransactionSummary processTransaction(List<BankAccount> accounts,
+                                                        double amount,
+                                                        ForkJoinPool pool,
+                                                        int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер части должен быть положительным");
+        }
+        Money value = checkedAmount(amount);
+        TransactionMetrics current = metrics;
+        long start = current == null ? 0 : System.nanoTime();
+        log.info("Начат параллельный процесс списания средств с {} счетов.", accounts.size());
+        BankAccount[] snapshot = accounts.toArray(new BankAccount[0]);
+        TransactionStatus[] statuses = new TransactionStatus[snapshot.length];
+        pool.invoke(new BatchTask<>(snapshot,
+                statuses,
+                account -> withdraw(account, value, current),
+                0,
+                snapshot.length,
+                batchSize));
+        if (current != null) {
+            current.recordProcessTransaction(System.nanoTime() - start);
+        }
+        TransactionSummary summary = new TransactionSummary(List.of(snapshot), statuses);
+        log.info("Параллельное списание со счетов закончено: {}", summary);
+        return summary;
+    }
+
+    /**
+     * Потоковый режим для непрерывного приёма вместо методов со списком счетов:
+     * операции приходят через {@link java.util.concurrent.Flow} с запросом по мере обработки,
+     * итоги публикуются таким же потоком.
+     *
+     * @param engine      движок разделов, выполняющий операции с сохранением порядка по счёту.
+     * @param maxInFlight максимум операций, принятых и ещё не переданных подписчику итогов.
+     * @return обработчик, который подписывается на источник операций и публикует итоги.
+     */
+    public static TransactionFlow flow(PartitionedTransactionEngine engine, int maxInFlight) {
+        return new TransactionFlow(engine, maxInFlight);
+    }
+
+    /**
+     * Сумма одинакова для всех счетов, поэтому её знак проверяется один раз,
+     * а не отказом на каждом счёте.
+     */
+    private static Money checkedAmount(double amount) {
+        Money value = Money.of(amount);
+        if (!value.isPositive()) {
+            throw new WithdrawAmountException("Сумма = %s должна быть положительной".formatted(value));
+        }
+        return value;
+    }
+
+    private static TransactionStatus withdraw(BankAccount account, Money amount, TransactionMetrics current) {
+        try {
+            return current == null ? account.tryWithdraw(amount) : current.withdraw(account, amount);
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка списания со счёта = {}", account.getAccountNumber(), e);
+            return TransactionStatus.FAILED;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package ru.gigaden.transaction;
+
+import ru.gigaden.exception.DepositAmountException;
+import ru.gigaden.exception.InterestPeriodException;
+import ru.gigaden.exception.WithdrawAmountException;
+import ru.gigaden.exception.WithdrawLimitException;
+
+import java.util.function.Function;
+
+/**
+ * Итог операции над отдельным счётом.
+ * Значения заранее созданы, поэтому неуспешная операция обходится без
+ * исключения и без выделения памяти. Для старого API каждому отказу
+ * сопоставлено исключение из ru.gigaden.exception.
+ */
+public enum TransactionStatus {
+    /**
+     * Операция выполнена.
+     */
+    SUCCESS(null, null),
+    /**
+     * Недостаточно средств с учётом кредитного лимита.
+     */
+    LIMIT_EXCEEDED(WithdrawLimitException.class, WithdrawLimitException::new),
+    /**
+     * Сумма превышает допустимый размер одной транзакции.
+     */
+    TRANSACTION_LIMIT_EXCEEDED(WithdrawLimitException.class, WithdrawLimitException::new),
+    /**
+     * Превышен лимит суммы или количества списаний за период.
+     */
+    VELOCITY_LIMIT_EXCEEDED(WithdrawLimitException.class, WithdrawLimitException::new),
+    /**
+     * Сумма снятия не положительная.
+     */
+    INVALID_AMOUNT(WithdrawAmountException.class, WithdrawAmountException::new),
+    /**
+     * Сумма пополнения не положительная.
+     */
+    INVALID_DEPOSIT_AMOUNT(DepositAmountException.class, DepositAmountException::new),
+    /**
+     * С последнего начисления процентов не прошёл месяц.
+     */
+    INTEREST_NOT_DUE(InterestPeriodException.class, InterestPeriodException::new),
+    /**
+     * Счёт с таким номером не найден.
+     */
+    ACCOUNT_NOT_FOUND(IllegalArgumentException.class, IllegalArgumentException::new),
+    /**
+     * Операция с тем же идентификатором ещё выполняется.
+     */
+    OPERATION_IN_PROGRESS(IllegalStateException.class, IllegalStateException::new),
+    /**
+     * Операция атомарного пакета не выполнена или отменена, потому что отклонена другая операция пакета.
+     */
+    BATCH_ABORTED(IllegalStateException.class, IllegalStateException::new),
+    /**
+     * Операция завершилась непредвиденной ошибкой.
+     */
+    FAILED(IllegalStateException.class, IllegalStateException::new);
+
+    private final Class<? extends RuntimeException> exceptionType;
+    private final Function<String, ? extends RuntimeException> exceptionFactory;
+
+    TransactionStatus(Class<? extends RuntimeException> exceptionType,
+                      Function<String, ? extends RuntimeException> exceptionFactory) {
+        this.exceptionType = exceptionType;
+        this.exceptionFactory = exceptionFactory;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+
+    /**
+     * @return тип исключения, которое старый API выбрасывает для этого итога; null для SUCCESS.
+     */
+    public Class<? extends RuntimeException> getExceptionType() {
+        return exceptionType;
+    }
+
+    /**
+     * Создаёт исключение, которое старый API выбрасывает для этого итога.
+     *
+     * @param message текст исключения.
+     * @return исключение для выброса.
+     * @throws IllegalStateException если итог успешный.
+     */
+    public RuntimeException toException(String message) {
+        if (exceptionFactory == null) {
+            throw new IllegalStateException("Успешная операция не может быть преобразована в исключение");
+        }
+        return exceptionFactory.apply(message);
+    }
+}
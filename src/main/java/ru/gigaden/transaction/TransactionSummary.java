@@ -0,0 +1,76 @@
+package ru.gigaden.transaction;
+
+import ru.gigaden.account.BankAccount;
+
+import java.util.List;
+
+/**
+ * Итог пакетной операции: статус для каждого счёта в порядке исходного списка.
+ */
+public final class TransactionSummary {
+    private final List<BankAccount> accounts;
+    private final TransactionStatus[] statuses;
+
+    TransactionSummary(List<BankAccount> accounts, TransactionStatus[] statuses) {
+        this.accounts = accounts;
+        this.statuses = statuses;
+    }
+
+    /**
+     * @return количество обработанных счетов.
+     */
+    public int size() {
+        return statuses.length;
+    }
+
+    /**
+     * @param index позиция счёта в исходном списке.
+     * @return счёт на этой позиции.
+     */
+    public BankAccount getAccount(int index) {
+        return accounts.get(index);
+    }
+
+    /**
+     * @param index позиция счёта в исходном списке.
+     * @return итог операции для этого счёта.
+     */
+    public TransactionStatus getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * @param status искомый итог.
+     * @return количество счетов с этим итогом.
+     */
+    public int count(TransactionStatus status) {
+        int count = 0;
+        for (TransactionStatus s : statuses) {
+            if (s == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return количество успешных операций.
+     */
+    public int getSuccessCount() {
+        return count(TransactionStatus.SUCCESS);
+    }
+
+    /**
+     * @return количество отклонённых операций.
+     */
+    public int getFailedCount() {
+        return statuses.length - getSuccessCount();
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionSummary(size=" + statuses.length
+                + ", success=" + getSuccessCount()
+                + ", failed=" + getFailedCount() + ")";
+    }
+}
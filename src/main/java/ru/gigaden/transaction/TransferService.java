@@ -0,0 +1,154 @@
+package ru.gigaden.transaction;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.WithdrawalReceipt;
+import ru.gigaden.exception.WithdrawAmountException;
+import ru.gigaden.money.Money;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Переводы между счетами.
+ * Перевод - это tryWithdraw со счёта-источника, поэтому к нему применяются правила источника:
+ * комиссия и кредитный лимит CreditAccount, лимит одной транзакции DebitAccount.
+ * Получатель получает сумму без комиссии.
+ * Если зачисление после успешного списания отклонено или выбросило исключение (переполнение баланса,
+ * сбой слушателя), списание отменяется по квитанции: деньги не остаются списанными, но не зачисленными.
+ * Оба счёта на время перевода захватываются через полосы (stripes) блокировок,
+ * так что переводы и {@link #totalBalance(Collection)} видят перевод целиком или не видят вовсе.
+ * Полосы захватываются в порядке возрастания номера, поэтому встречные переводы не взаимоблокируются.
+ */
+@Slf4j
+public class TransferService {
+    private static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public TransferService() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes количество полос блокировок; округляется вверх до степени двойки.
+     */
+    public TransferService(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Количество полос должно быть положительным");
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Переводит amount со счёта from на счёт to.
+     *
+     * @param from   счёт-источник.
+     * @param to     счёт-получатель.
+     * @param amount сумма перевода.
+     * @return SUCCESS, причина отказа источника или FAILED, если получатель отклонил зачисление.
+     * @throws WithdrawAmountException  если сумма не положительная.
+     * @throws IllegalArgumentException если источник и получатель совпадают.
+     */
+    public TransactionStatus transfer(BankAccount from, BankAccount to, Money amount) {
+        if (!amount.isPositive()) {
+            throw new WithdrawAmountException("Сумма = %s должна быть положительной".formatted(amount));
+        }
+        if (from.getAccountNumber() == to.getAccountNumber()) {
+            throw new IllegalArgumentException("Перевод на тот же счёт = " + from.getAccountNumber());
+        }
+        int first = stripe(from.getAccountNumber());
+        int second = stripe(to.getAccountNumber());
+        ReentrantLock lower = stripes[Math.min(first, second)];
+        ReentrantLock upper = stripes[Math.max(first, second)];
+        lower.lock();
+        upper.lock();
+        try {
+            WithdrawalReceipt receipt = new WithdrawalReceipt();
+            TransactionStatus status = from.tryWithdraw(amount, receipt);
+            if (!status.isSuccess()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Перевод со счёта = {} на счёт = {} отклонён: {}",
+                            from.getAccountNumber(), to.getAccountNumber(), status);
+                }
+                return status;
+            }
+            TransactionStatus credited;
+            try {
+                credited = to.tryDeposit(amount);
+            } catch (RuntimeException e) {
+                from.revertWithdraw(receipt);
+                throw e;
+            }
+            if (!credited.isSuccess()) {
+                from.revertWithdraw(receipt);
+                log.warn("Перевод со счёта = {} отменён: счёт = {} отклонил зачисление: {}",
+                        from.getAccountNumber(), to.getAccountNumber(), credited);
+                return TransactionStatus.FAILED;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Переведено {} со счёта = {} на счёт = {}",
+                        amount, from.getAccountNumber(), to.getAccountNumber());
+            }
+            return TransactionStatus.SUCCESS;
+        } finally {
+            upper.unlock();
+            lower.unlock();
+        }
+    }
+
+    /**
+     * Переводит amount со счёта from на счёт to, выбрасывая исключение при отказе.
+     *
+     * @throws RuntimeException исключение из ru.gigaden.exception, соответствующее отказу.
+     */
+    public void transfer(BankAccount from, BankAccount to, double amount) {
+        Money value = Money.of(amount);
+        TransactionStatus status = transfer(from, to, value);
+        if (!status.isSuccess()) {
+            log.warn("Отказ в переводе со счёта = {}: {}", from.getAccountNumber(), status);
+            throw status.toException("Перевод %s со счёта = %d отклонён: %s"
+                    .formatted(value, from.getAccountNumber(), status));
+        }
+    }
+
+    /**
+     * Считает сумму балансов под всеми полосами блокировок.
+     * Переводы в это время стоят, поэтому сумма не содержит переводов «в пути».
+     * Операции со счетами в обход сервиса не блокируются.
+     *
+     * @param accounts счета.
+     * @return сумма балансов в копейках.
+     */
+    public long totalBalance(Collection<? extends BankAccount> accounts) {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            long total = 0;
+            for (BankAccount account : accounts) {
+                total += account.getBalanceMinorUnits();
+            }
+            return total;
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private int stripe(long accountNumber) {
+        // Перемешивание, чтобы последовательные номера счетов не попадали в соседние полосы пачками.
+        long h = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,200 @@
+package ru.gigaden.utils;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * Потокобезопасная таблица с ключами long: набор сегментов {@link LongObjectHashMap},
+ * каждый под своим StampedLock.
+ * Чтение сначала выполняется оптимистично, без записи в общую память,
+ * и только при конкурентной записи в тот же сегмент повторяется под блокировкой чтения.
+ * Записи в разные сегменты не мешают друг другу.
+ *
+ * @param <V> тип значений.
+ */
+public final class ConcurrentLongObjectMap<V> {
+    private static final int DEFAULT_SEGMENTS = 64;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    public ConcurrentLongObjectMap() {
+        this(DEFAULT_SEGMENTS, 0);
+    }
+
+    /**
+     * @param segments     количество сегментов, округляется вверх до степени двойки.
+     * @param expectedSize ожидаемое количество элементов.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLongObjectMap(int segments, int expectedSize) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Количество сегментов должно быть положительным");
+        }
+        int count = 1;
+        while (count < segments) {
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int perSegment = expectedSize / count;
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    /**
+     * Функция, пересчитывающая значение по ключу.
+     *
+     * @param <V> тип значений.
+     */
+    @FunctionalInterface
+    public interface Remapping<V> {
+        /**
+         * @param key     ключ.
+         * @param current текущее значение или null.
+         * @return новое значение или null, чтобы удалить ключ.
+         */
+        V apply(long key, V current);
+    }
+
+    public V get(long key) {
+        Segment<V> segment = segmentFor(key);
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                V value = segment.map.get(key);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException ignored) {
+                // Таблица менялась во время чтения - повторяем под блокировкой.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return segment.map.get(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public V put(long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.put(key, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public V putIfAbsent(long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.putIfAbsent(key, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Возвращает значение по ключу, создавая его при отсутствии.
+     * Функция вызывается под блокировкой сегмента и должна быть быстрой.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            value = segment.map.get(key);
+            if (value == null) {
+                value = factory.apply(key);
+                segment.map.put(key, value);
+            }
+            return value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Атомарно пересчитывает значение по ключу под блокировкой сегмента.
+     *
+     * @return новое значение или null, если ключ удалён.
+     */
+    public V compute(long key, Remapping<V> remapping) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            V value = remapping.apply(key, segment.map.get(key));
+            if (value == null) {
+                segment.map.remove(key);
+            } else {
+                segment.map.put(key, value);
+            }
+            return value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public V remove(long key) {
+        Segment<V> segment = segmentFor(key);
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.remove(key);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return количество элементов; при конкурентных изменениях - приблизительное.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Обходит элементы сегмент за сегментом под блокировкой чтения сегмента.
+     * Изменения в уже пройденных сегментах не видны обходу.
+     */
+    public void forEach(LongObjectHashMap.Visitor<? super V> visitor) {
+        for (Segment<V> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                segment.map.forEach(visitor);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private Segment<V> segmentFor(long key) {
+        return segments[(int) (LongObjectHashMap.mix(key) >>> 32) & segmentMask];
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private final LongObjectHashMap<V> map;
+
+        private Segment(int expectedSize) {
+            this.map = new LongObjectHashMap<>(expectedSize);
+        }
+    }
+}
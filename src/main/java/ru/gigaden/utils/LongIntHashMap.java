@@ -0,0 +1,136 @@
+package ru.gigaden.utils;
+
+/**
+ * Хеш-таблица long -> int с открытой адресацией (линейное пробирование) без объектов на элемент:
+ * ключи и значения лежат в параллельных примитивных массивах. Подходит для индексов
+ * «номер счёта -> строка» на десятки миллионов записей, где Integer на каждую запись
+ * заметно увеличивает память и нагрузку на GC.
+ * Ключ 0 служит меткой пустой ячейки и хранится отдельно. Удаления нет.
+ * Не потокобезопасна.
+ */
+public final class LongIntHashMap {
+    /**
+     * Результат {@link #get(long)}, если ключа нет.
+     */
+    public static final int NO_VALUE = -1;
+
+    private static final long FREE = 0;
+    private static final int MIN_CAPACITY = 8;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое количество элементов - таблица сразу выделяется под него.
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    /**
+     * @param key ключ.
+     * @return значение или {@link #NO_VALUE}, если ключа нет.
+     */
+    public int get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : NO_VALUE;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : NO_VALUE;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasZeroKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    /**
+     * @param value значение, отличное от {@link #NO_VALUE}.
+     * @return предыдущее значение или {@link #NO_VALUE}.
+     */
+    public int put(long key, int value) {
+        if (value == NO_VALUE) {
+            throw new IllegalArgumentException("Значение " + NO_VALUE + " зарезервировано");
+        }
+        if (key == FREE) {
+            int previous = hasZeroKey ? zeroValue : NO_VALUE;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            int previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        if (size >= resizeAt) {
+            rehash(keys.length << 1);
+            index = indexOf(key);
+        }
+        values[index] = value;
+        keys[index] = key;
+        size++;
+        return NO_VALUE;
+    }
+
+    /**
+     * @return ячейка с ключом или первая свободная ячейка на пути пробирования.
+     */
+    private int indexOf(long key) {
+        int index = (int) LongObjectHashMap.mix(key) & mask;
+        while (keys[index] != key && keys[index] != FREE) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE) {
+                int index = indexOf(key);
+                values[index] = oldValues[i];
+                keys[index] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            if (capacity >= 1 << 30) {
+                throw new IllegalArgumentException("Слишком большая таблица: " + expectedSize);
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
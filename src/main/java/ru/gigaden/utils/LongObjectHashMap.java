@@ -0,0 +1,271 @@
+package ru.gigaden.utils;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица с ключами long и открытой адресацией (линейное пробирование).
+ * Ключи хранятся в long[] без упаковки в Long, значения - в параллельном массиве.
+ * Ключ 0 служит меткой пустой ячейки и хранится отдельно.
+ * Не потокобезопасна, для конкурентного доступа см. {@link ConcurrentLongObjectMap}.
+ *
+ * @param <V> тип значений.
+ */
+public final class LongObjectHashMap<V> {
+    private static final long FREE = 0;
+    private static final int MIN_CAPACITY = 8;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое количество элементов - таблица сразу выделяется под него.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Функция над парой ключ-значение без упаковки ключа.
+     *
+     * @param <V> тип значений.
+     */
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void accept(long key, V value);
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param key ключ.
+     * @return значение или null, если ключа нет.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : null;
+        }
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int index = slot(key, mask);
+        // Цикл ограничен размером таблицы, чтобы чтение без блокировки
+        // в ConcurrentLongObjectMap не зациклилось на несогласованном состоянии.
+        for (int probe = 0; probe <= mask; probe++) {
+            long current = keys[index];
+            if (current == key) {
+                return (V) values[index];
+            }
+            if (current == FREE) {
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasZeroKey;
+        }
+        int index = indexOf(key);
+        return keys[index] == key;
+    }
+
+    /**
+     * @return предыдущее значение или null.
+     */
+    public V put(long key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * @return текущее значение, если ключ уже есть, иначе null - и значение добавляется.
+     */
+    public V putIfAbsent(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @return удалённое значение или null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            return previous;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            return null;
+        }
+        V previous = (V) values[index];
+        shiftBack(index);
+        size--;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    /**
+     * Обходит все пары. Изменять таблицу во время обхода нельзя.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (hasZeroKey) {
+            visitor.accept(FREE, zeroValue);
+        }
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean onlyIfAbsent) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            if (!hasZeroKey || !onlyIfAbsent) {
+                hasZeroKey = true;
+                zeroValue = value;
+            }
+            return previous;
+        }
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            V previous = (V) values[index];
+            if (!onlyIfAbsent) {
+                values[index] = value;
+            }
+            return previous;
+        }
+        if (size >= resizeAt) {
+            rehash(keys.length << 1);
+            index = indexOf(key);
+        }
+        // Значение записывается раньше ключа: читатель без блокировки не увидит ключ без значения.
+        values[index] = value;
+        keys[index] = key;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return ячейка с ключом или первая свободная ячейка на пути пробирования.
+     */
+    private int indexOf(long key) {
+        int index = slot(key, mask);
+        while (keys[index] != key && keys[index] != FREE) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Удаление со сдвигом: элементы той же цепочки подтягиваются в освободившуюся ячейку,
+     * поэтому метки удалённых ячеек не нужны и поиск не деградирует.
+     */
+    private void shiftBack(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            long key = keys[index];
+            if (key == FREE) {
+                break;
+            }
+            int home = slot(key, mask);
+            boolean movable = gap <= index
+                    ? home <= gap || home > index
+                    : home <= gap && home > index;
+            if (movable) {
+                values[gap] = values[index];
+                keys[gap] = key;
+                gap = index;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE) {
+                int index = indexOf(key);
+                values[index] = oldValues[i];
+                keys[index] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        // Новые массивы создаются целиком до публикации - старые больше не меняются.
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        values = newValues;
+        keys = newKeys;
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            if (capacity >= 1 << 30) {
+                throw new IllegalArgumentException("Слишком большая таблица: " + expectedSize);
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) mix(key) & mask;
+    }
+
+    /**
+     * Перемешивание битов ключа (финализатор MurmurHash3), чтобы последовательные номера
+     * счетов не образовывали длинных цепочек. Младшие 32 бита выбирают ячейку таблицы,
+     * старшие - сегмент в {@link ConcurrentLongObjectMap}.
+     */
+    static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,8 +1,14 @@
 package ru.gigaden.utils;
 
+import ru.gigaden.money.Money;
+
 /**
  * Содержит методы для валидации транзакций.
  */
 public interface TransactionValidator {
-    boolean validate(double amount);
+    /**
+     * @param amount сумма транзакции.
+     * @return true, если сумма превышает допустимую для счёта.
+     */
+    boolean validate(Money amount);
 }
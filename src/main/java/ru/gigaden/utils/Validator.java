@@ -4,25 +4,69 @@ import lombok.extern.slf4j.Slf4j;
 import ru.gigaden.exception.DepositAmountException;
 import ru.gigaden.exception.WithdrawAmountException;
 import ru.gigaden.exception.WithdrawLimitException;
-
-import java.math.BigDecimal;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
 
 /**
- * Класс содержит статические методы валидации
+ * Класс содержит статические методы валидации.
+ * Все суммы передаются в копейках (см. {@link Money}).
+ * Методы check* выбрасывают исключения, методы *Status возвращают
+ * итог проверки и не создают объектов - их использует горячий путь.
  */
 @Slf4j
 public final class Validator {
 
+    /**
+     * Проверяет размер денежных средств при пополнении.
+     *
+     * @param amount размер средств.
+     * @return INVALID_DEPOSIT_AMOUNT в случае если amount <= 0, иначе SUCCESS.
+     */
+    public static TransactionStatus depositStatus(long amount) {
+        return amount <= 0 ? TransactionStatus.INVALID_DEPOSIT_AMOUNT : TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Проверяет размер денежных средств при снятии без учёта кредитного лимита.
+     *
+     * @param amount  размер средств.
+     * @param balance баланс аккаунта.
+     * @return LIMIT_EXCEEDED если amount > balance, INVALID_AMOUNT если amount <= 0, иначе SUCCESS.
+     */
+    public static TransactionStatus withdrawStatus(long amount, long balance) {
+        return withdrawStatus(amount, balance, 0);
+    }
+
+    /**
+     * Проверяет размер денежных средств при снятии с учётом кредитного лимита.
+     *
+     * @param amount      размер средств.
+     * @param balance     баланс аккаунта.
+     * @param creditLimit кредитный лимит аккаунта.
+     * @return LIMIT_EXCEEDED если amount превышает сумму кредитного лимита и баланса,
+     * INVALID_AMOUNT если amount <= 0, иначе SUCCESS.
+     */
+    public static TransactionStatus withdrawStatus(long amount, long balance, long creditLimit) {
+        if (amount > balance + creditLimit) {
+            return TransactionStatus.LIMIT_EXCEEDED;
+        }
+        if (amount <= 0) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        return TransactionStatus.SUCCESS;
+    }
+
     /**
      * Проверяет размер денежных средств при пополнении
      *
      * @param amount размер средств.
      * @throws DepositAmountException в случае если amount <= 0.
      */
-    public static void checkDepositAmount(double amount) {
-        if (amount <= 0) {
+    public static void checkDepositAmount(long amount) {
+        if (!depositStatus(amount).isSuccess()) {
             log.warn("Попытка пополнить отрицательной суммой.");
-            throw new DepositAmountException("Сумма пополнения = %.2f должна быть положительной".formatted(amount));
+            throw new DepositAmountException("Сумма пополнения = %s должна быть положительной"
+                    .formatted(Money.format(amount)));
         }
     }
 
@@ -34,14 +78,16 @@ public final class Validator {
      * @throws WithdrawLimitException в случае если amount > balance.
      * @throws DepositAmountException в случае если amount <= 0.
      */
-    public static void checkWithdrawLimit(BigDecimal amount, BigDecimal balance) {
-        if (amount.compareTo(balance) > 0) {
+    public static void checkWithdrawLimit(long amount, long balance) {
+        TransactionStatus status = withdrawStatus(amount, balance);
+        if (status == TransactionStatus.LIMIT_EXCEEDED) {
             log.warn("Попытка снять сумму превышающую лимит.");
-            throw new WithdrawLimitException("Сумма = %.2f превышает лимит = %.2f".formatted(amount, balance));
+            throw new WithdrawLimitException("Сумма = %s превышает лимит = %s"
+                    .formatted(Money.format(amount), Money.format(balance)));
         }
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (status == TransactionStatus.INVALID_AMOUNT) {
             log.warn("Попытка снять отрицательную сумму.");
-            throw new WithdrawAmountException("Сумма = %.2f должна быть положительной".formatted(amount));
+            throw new WithdrawAmountException("Сумма = %s должна быть положительной".formatted(Money.format(amount)));
         }
     }
 
@@ -54,16 +100,17 @@ public final class Validator {
      * @throws WithdrawLimitException в случае если amount > превышает сумму кредитного лимита и баланса.
      * @throws DepositAmountException в случае если amount <= 0.
      */
-    public static void checkWithdrawLimit(BigDecimal amount, BigDecimal balance, double creditLimit) {
-        if (amount.compareTo(balance.add(BigDecimal.valueOf(creditLimit))) > 0) {
+    public static void checkWithdrawLimit(long amount, long balance, long creditLimit) {
+        TransactionStatus status = withdrawStatus(amount, balance, creditLimit);
+        if (status == TransactionStatus.LIMIT_EXCEEDED) {
             log.warn("Попытка снять сумму превышающую лимит с учётом кредитного.");
-            throw new WithdrawLimitException("Сумма = %.2f превышает доступный лимит = %.2f"
-                    .formatted(amount, balance.doubleValue() + creditLimit)
+            throw new WithdrawLimitException("Сумма = %s превышает доступный лимит = %s"
+                    .formatted(Money.format(amount), Money.format(balance + creditLimit))
             );
         }
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (status == TransactionStatus.INVALID_AMOUNT) {
             log.warn("Попытка снять отрицательную сумму с учётом кредитного.");
-            throw new WithdrawAmountException("Сумма = %.2f должна быть положительной".formatted(amount));
+            throw new WithdrawAmountException("Сумма = %s должна быть положительной".formatted(Money.format(amount)));
         }
     }
 }
@@ -0,0 +1,109 @@
+package ru.gigaden.account;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.exception.WithdrawLimitException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BankAccountConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 1_000;
+
+    @Test
+    public void shouldNotLoseDepositsWhenAccountIsUpdatedConcurrently() throws Exception {
+        DebitAccount account = new DebitAccount(1L, 11L);
+
+        runConcurrently(() -> account.deposit(1));
+
+        BigDecimal expected = BigDecimal.valueOf(THREADS * OPERATIONS_PER_THREAD);
+        assertEquals(0, expected.compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesWhenDepositsAndWithdrawalsAreInterleaved() throws Exception {
+        SavingsAccount account = new SavingsAccount(1L, 11L);
+
+        runConcurrently(() -> {
+            account.deposit(2);
+            account.withdraw(1);
+        });
+
+        BigDecimal expected = BigDecimal.valueOf(THREADS * OPERATIONS_PER_THREAD);
+        assertEquals(0, expected.compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldNeverOverdrawWhenWithdrawalsRaceForTheSameBalance() throws Exception {
+        int initial = THREADS * OPERATIONS_PER_THREAD / 2;
+        DebitAccount account = new DebitAccount(1L, 11L);
+        account.deposit(initial);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        runConcurrently(() -> {
+            try {
+                account.withdraw(1);
+                succeeded.incrementAndGet();
+            } catch (WithdrawLimitException ignored) {
+                // Недостаточно средств - ожидаемый исход для половины попыток.
+            }
+        });
+
+        assertEquals(initial, succeeded.get());
+        assertEquals(0, BigDecimal.ZERO.compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldRespectCreditLimitWhenWithdrawalsRaceForTheSameAccount() throws Exception {
+        CreditAccount account = new CreditAccount(1L, 11L);
+        account.setWithdrawalFee(0);
+        account.setCreditLimit(1000);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        runConcurrently(() -> {
+            try {
+                account.withdraw(1);
+                succeeded.incrementAndGet();
+            } catch (WithdrawLimitException ignored) {
+                // Кредитный лимит исчерпан.
+            }
+        });
+
+        assertEquals(1000, succeeded.get());
+        assertEquals(0, BigDecimal.valueOf(-1000).compareTo(account.getBalance()));
+    }
+
+    private static void runConcurrently(Runnable operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                        operation.run();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.junit.jupiter.params.provider.ValueSource;
 import ru.gigaden.exception.DepositAmountException;
 import ru.gigaden.exception.WithdrawAmountException;
 import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
 
 import java.math.BigDecimal;
 
@@ -87,4 +89,19 @@ public class CreditAccountTest {
         assertThrows(WithdrawLimitException.class, () -> creditAccount.withdraw(maxAmount + 1));
     }
 
+    @ParameterizedTest
+    @ValueSource(doubles = {1000.0})
+    public void shouldReturnLimitExceededWhenFeePushesAmountOverCreditLimit(double amount) {
+        creditAccount.setCreditLimit(amount);
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, creditAccount.tryWithdraw(Money.of(amount)));
+        assertEquals(0, creditAccount.getBalance().signum());
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {1000.0})
+    public void shouldChargeFeeRoundedToKopecksWhenTryWithdrawSucceeds(double amount) {
+        creditAccount.setWithdrawalFee(0.333);
+        assertEquals(TransactionStatus.SUCCESS, creditAccount.tryWithdraw(Money.of(amount + 0.01)));
+        assertEquals(0, creditAccount.getBalance().compareTo(new BigDecimal("-1003.34")));
+    }
 }
@@ -6,6 +6,8 @@ import org.junit.jupiter.params.provider.ValueSource;
 import ru.gigaden.exception.DepositAmountException;
 import ru.gigaden.exception.WithdrawAmountException;
 import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
 
 import java.math.BigDecimal;
 
@@ -65,4 +67,32 @@ public class DebitAccountTest {
         assertThrows(WithdrawLimitException.class, () -> debitAccount.withdraw(maxAmount + 1));
     }
 
+    @ParameterizedTest
+    @ValueSource(doubles = {1000.0})
+    public void shouldReturnLimitExceededWithoutThrowingWhenBalanceIsInsufficient(double amount) {
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, debitAccount.tryWithdraw(Money.of(amount)));
+        assertEquals(0, debitAccount.getBalance().signum());
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {10000.0})
+    public void shouldReturnTransactionLimitExceededWhenAmountGreaterThenMaxTransactionValue(double amount) {
+        debitAccount.deposit(amount * 2);
+        assertEquals(TransactionStatus.TRANSACTION_LIMIT_EXCEEDED, debitAccount.tryWithdraw(Money.of(amount + 1)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {-1000.0, 0.0})
+    public void shouldReturnInvalidAmountWhenTryingNonPositiveOperations(double amount) {
+        assertEquals(TransactionStatus.INVALID_AMOUNT, debitAccount.tryWithdraw(Money.of(amount)));
+        assertEquals(TransactionStatus.INVALID_DEPOSIT_AMOUNT, debitAccount.tryDeposit(Money.of(amount)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {1000.0})
+    public void shouldReturnSuccessWhenTryWithdrawIsWithinBalance(double amount) {
+        assertEquals(TransactionStatus.SUCCESS, debitAccount.tryDeposit(Money.of(amount)));
+        assertEquals(TransactionStatus.SUCCESS, debitAccount.tryWithdraw(Money.of(amount)));
+        assertEquals(0, debitAccount.getBalance().signum());
+    }
 }
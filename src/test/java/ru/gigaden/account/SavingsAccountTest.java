@@ -7,6 +7,7 @@ import ru.gigaden.exception.DepositAmountException;
 import ru.gigaden.exception.InterestPeriodException;
 import ru.gigaden.exception.WithdrawAmountException;
 import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.transaction.TransactionStatus;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -75,4 +76,15 @@ public class SavingsAccountTest {
         assertEquals(0, expected.compareTo(savingsAccount.getBalance()));
     }
 
+    @Test
+    public void shouldReturnNotDueWhenInterestIsAppliedTwiceInOnePeriod() {
+        LocalDate today = LocalDate.of(2024, 5, 31);
+        savingsAccount.setLastInterestPaid(today.minusMonths(1));
+        savingsAccount.deposit(1000);
+
+        assertEquals(TransactionStatus.SUCCESS, savingsAccount.tryApplyInterest(today));
+        assertEquals(TransactionStatus.INTEREST_NOT_DUE, savingsAccount.tryApplyInterest(today));
+        assertEquals(103000, savingsAccount.getBalanceMinorUnits());
+    }
+
 }
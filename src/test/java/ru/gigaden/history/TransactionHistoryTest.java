@@ -0,0 +1,136 @@
+package ru.gigaden.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TransactionHistoryTest {
+    private static final Instant START = Instant.parse("2024-03-01T00:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+    private final TickingClock clock = new TickingClock();
+
+    @Test
+    public void shouldRecordFeeAndRejectionWhenCreditAccountWithdraws() {
+        TransactionHistory history = new TransactionHistory(HistoryConfig.defaults(), clock);
+        CreditAccount account = new CreditAccount(1L, 1L);
+        account.addListener(history);
+
+        account.deposit(Money.of(100));
+        account.tryWithdraw(Money.of(100));
+        account.tryWithdraw(Money.of(6_000));
+
+        List<HistoryEntry> entries = history.last(1L, 10);
+        assertEquals(3, entries.size());
+        assertEquals(HistoryEntry.Kind.DEPOSIT, entries.get(0).getKind());
+        assertEquals(HistoryEntry.Kind.WITHDRAW, entries.get(1).getKind());
+        assertEquals(101_00, entries.get(1).getAmount());
+        assertEquals(1_00, entries.get(1).getFee());
+        assertEquals(-1_00, entries.get(1).getBalance());
+        assertEquals(HistoryEntry.Kind.REJECTED, entries.get(2).getKind());
+        assertEquals(TransactionStatus.TRANSACTION_LIMIT_EXCEEDED, entries.get(2).getStatus());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 8, 9, 50, 1_000})
+    public void shouldReturnLastEntriesWhenOldChunksAreSpilled(int n) {
+        TransactionHistory history = spilling();
+        DebitAccount account = account(history, 1_000);
+
+        List<HistoryEntry> entries = history.last(1L, n);
+
+        assertEquals(Math.min(n, 1_000), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(1_000 - entries.size() + i + 1, entries.get(i).getAmount());
+        }
+        assertEquals(8, history.memoryEntries(1L));
+        assertEquals(0, history.droppedEntries(1L));
+        assertEquals(account.getBalanceMinorUnits(), entries.get(entries.size() - 1).getBalance());
+    }
+
+    @Test
+    public void shouldReturnEntriesInRangeWhenRangeSpansDiskAndMemory() {
+        TransactionHistory history = spilling();
+        account(history, 1_000);
+
+        List<HistoryEntry> entries = history.range(1L, START.plusSeconds(10), START.plusSeconds(996));
+
+        assertEquals(986, entries.size());
+        assertEquals(11, entries.get(0).getAmount());
+        assertEquals(START.plusSeconds(10), entries.get(0).getTimestamp());
+        assertEquals(996, entries.get(entries.size() - 1).getAmount());
+        assertEquals(List.of(), history.range(2L, START, START.plusSeconds(10)));
+    }
+
+    @Test
+    public void shouldBoundMemoryWhenSpillDirectoryIsNotSet() {
+        TransactionHistory history = new TransactionHistory(HistoryConfig.builder()
+                .chunkSize(4)
+                .chunksInMemory(2)
+                .build(), clock);
+        account(history, 100);
+
+        assertEquals(8, history.memoryEntries(1L));
+        assertEquals(92, history.droppedEntries(1L));
+        assertEquals(8, history.last(1L, 100).size());
+        assertEquals(93, history.last(1L, 100).get(0).getAmount());
+    }
+
+    private TransactionHistory spilling() {
+        return new TransactionHistory(HistoryConfig.builder()
+                .chunkSize(4)
+                .chunksInMemory(2)
+                .spillDirectory(directory)
+                .build(), clock);
+    }
+
+    /**
+     * Счёт с count пополнениями на 1, 2, ..., count копеек - по одному в секунду.
+     */
+    private DebitAccount account(TransactionHistory history, int count) {
+        DebitAccount account = new DebitAccount(1L, 1L);
+        account.addListener(history);
+        for (int i = 1; i <= count; i++) {
+            account.deposit(Money.ofMinor(i));
+        }
+        return account;
+    }
+
+    /**
+     * Часы, которые сдвигаются на секунду при каждом чтении.
+     */
+    private static final class TickingClock extends Clock {
+        private long seconds;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return START.plusSeconds(seconds++);
+        }
+    }
+}
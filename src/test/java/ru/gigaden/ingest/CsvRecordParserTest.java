@@ -0,0 +1,40 @@
+package ru.gigaden.ingest;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CsvRecordParserTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "1,deposit,100|1|1|10000",
+            "42, Withdraw , 12.5|42|2|1250",
+            "7,DEPOSIT,0.01|7|1|1",
+            "9,withdraw,-3.25|9|2|-325"
+    })
+    public void shouldParseRecordWhenLineIsValid(String line, long account, byte operation, long amount) {
+        IngestRecord record = new IngestRecord();
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(CsvRecordParser.parse(bytes, 0, bytes.length, record));
+        assertEquals(account, record.accountNumber);
+        assertEquals(operation, record.operation);
+        assertEquals(amount, record.amount);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "1", "1,deposit", "x,deposit,1", "1,transfer,1", "1,deposit,1.234",
+            "1,deposit,1.", "1,deposit,", "1,deposit,1,2", "1234567890123456789,deposit,1"})
+    public void shouldRejectLineWhenFormatIsInvalid(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+
+        assertFalse(CsvRecordParser.parse(bytes, 0, bytes.length, new IngestRecord()));
+    }
+}
@@ -0,0 +1,107 @@
+package ru.gigaden.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionIngestTest {
+    @TempDir
+    Path directory;
+
+    private final AccountRepository accounts = new AccountRepository();
+
+    {
+        accounts.add(new DebitAccount(1L, 11L));
+        accounts.add(new CreditAccount(2L, 22L));
+    }
+
+    @Test
+    public void shouldApplyValidRecordsAndWriteRejectedWhenCsvIsIngested() throws IOException {
+        Path input = directory.resolve("batch.csv");
+        Files.writeString(input, "accountNumber,operation,amount\r\n"
+                + "1,deposit,100\r\n"
+                + "1, withdraw, 30.5\n"
+                + "2,withdraw,10\n"
+                + "\n"
+                + "3,deposit,5\n"
+                + "1,withdraw,1000\n"
+                + "1,deposit,abc\n"
+                + "1,deposit,0.5");
+        Path rejected = directory.resolve("rejected.csv");
+
+        IngestReport report = new TransactionIngest(accounts).ingestCsv(input, rejected);
+
+        assertEquals(7, report.getRecords());
+        assertEquals(4, report.getApplied());
+        assertEquals(3, report.getRejected());
+        assertEquals(Files.size(input), report.getBytes());
+        assertEquals(7000, accounts.get(1L).getBalanceMinorUnits());
+        assertEquals(-1010, accounts.get(2L).getBalanceMinorUnits());
+        assertEquals(List.of("3,deposit,5,ACCOUNT_NOT_FOUND",
+                        "1,withdraw,1000,LIMIT_EXCEEDED",
+                        "1,deposit,abc,PARSE_ERROR"),
+                Files.readAllLines(rejected));
+    }
+
+    @Test
+    public void shouldHandleRecordsAcrossBufferBoundariesWhenBufferIsSmall() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            content.append("1,deposit,0.01\n");
+        }
+        content.append("1,deposit,").append("1".repeat(100)).append('\n');
+        content.append("1,deposit,1\n");
+        Path input = directory.resolve("batch.csv");
+        Files.writeString(input, content);
+        Path rejected = directory.resolve("rejected.csv");
+
+        IngestReport report = new TransactionIngest(accounts, 32).ingestCsv(input, rejected);
+
+        assertEquals(1_002, report.getRecords());
+        assertEquals(1_001, report.getApplied());
+        assertEquals(1100, accounts.get(1L).getBalanceMinorUnits());
+        assertEquals(1, Files.readAllLines(rejected).size());
+        assertTrue(Files.readAllLines(rejected).get(0).endsWith(",LINE_TOO_LONG"));
+    }
+
+    @Test
+    public void shouldApplyRecordsAndRejectTruncatedTailWhenBinaryFileIsIngested() throws IOException {
+        Path input = directory.resolve("batch.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(input))) {
+            for (int i = 0; i < 500; i++) {
+                out.writeLong(1L);
+                out.writeByte(IngestRecord.DEPOSIT);
+                out.writeLong(2);
+            }
+            out.writeLong(1L);
+            out.writeByte(IngestRecord.WITHDRAW);
+            out.writeLong(100_000);
+            out.writeLong(1L);
+            out.writeByte(9);
+            out.writeLong(1);
+            out.writeLong(1L);
+        }
+        Path rejected = directory.resolve("rejected.csv");
+
+        IngestReport report = new TransactionIngest(accounts, 100).ingestBinary(input, rejected);
+
+        assertEquals(503, report.getRecords());
+        assertEquals(500, report.getApplied());
+        assertEquals(1000, accounts.get(1L).getBalanceMinorUnits());
+        List<String> lines = Files.readAllLines(rejected);
+        assertEquals("1,withdraw,1000.00,LIMIT_EXCEEDED", lines.get(0));
+        assertEquals("1,9,0.01,PARSE_ERROR", lines.get(1));
+        assertEquals("0000000000000001,TRUNCATED_RECORD", lines.get(2));
+    }
+}
@@ -0,0 +1,156 @@
+package ru.gigaden.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRestoreBalancesAndSettingsWhenJournalIsReplayed() throws IOException {
+        LocalDate paidOn = LocalDate.now().minusMonths(1);
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            DebitAccount debit = new DebitAccount(1L, 11L);
+            CreditAccount credit = new CreditAccount(2L, 22L);
+            SavingsAccount saving = new SavingsAccount(3L, 33L);
+            journal.register(debit);
+            journal.register(credit);
+            journal.register(saving);
+
+            debit.deposit(4000);
+            debit.withdraw(1000.5);
+            credit.setWithdrawalFee(2);
+            credit.setCreditLimit(700);
+            credit.withdraw(500);
+            saving.deposit(1000);
+            saving.setMonthlyInterest(10);
+            saving.setLastInterestPaid(paidOn);
+            saving.applyInterest();
+        }
+
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            AccountRepository accounts = journal.recover();
+
+            assertEquals(3, accounts.size());
+            assertEquals(299950, accounts.get(1L).getBalanceMinorUnits());
+            CreditAccount credit = assertInstanceOf(CreditAccount.class, accounts.get(2L));
+            assertEquals(-51000, credit.getBalanceMinorUnits());
+            assertEquals(700, credit.getCreditLimit());
+            assertEquals(2, credit.getWithdrawalFee());
+            SavingsAccount saving = assertInstanceOf(SavingsAccount.class, accounts.get(3L));
+            assertEquals(110000, saving.getBalanceMinorUnits());
+            assertEquals(10, saving.getMonthlyInterest());
+            assertEquals(LocalDate.now(), saving.getLastInterestPaid());
+            assertEquals(33L, saving.getAccountHolder());
+        }
+    }
+
+    @Test
+    public void shouldContinueAppendingAfterRecoveryAcrossSegments() throws IOException {
+        JournalConfig config = JournalConfig.builder().segmentSize(JournalRecord.SIZE * 16).build();
+        try (Journal journal = Journal.open(directory, config)) {
+            DebitAccount debit = new DebitAccount(1L, 11L);
+            journal.register(debit);
+            for (int i = 0; i < 100; i++) {
+                debit.deposit(1);
+            }
+        }
+        try (Journal journal = Journal.open(directory, config)) {
+            BankAccount debit = journal.recover().get(1L);
+            assertEquals(10000, debit.getBalanceMinorUnits());
+            for (int i = 0; i < 100; i++) {
+                debit.withdraw(0.5);
+            }
+        }
+
+        assertTrue(Journal.listSegments(directory).size() > 10);
+        try (Journal journal = Journal.open(directory, config)) {
+            assertEquals(5000, journal.recover().get(1L).getBalanceMinorUnits());
+            assertEquals(201, journal.getNextLsn());
+        }
+    }
+
+    @Test
+    public void shouldStopReplayAtTornRecord() throws IOException {
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            DebitAccount debit = new DebitAccount(1L, 11L);
+            journal.register(debit);
+            debit.deposit(10);
+            debit.deposit(20);
+        }
+        Path segment = Journal.segmentPath(directory, 0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{1}), 2L * JournalRecord.SIZE + JournalRecord.FIRST_OFFSET);
+        }
+
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            AccountRepository accounts = journal.recover();
+            assertEquals(1000, accounts.get(1L).getBalanceMinorUnits());
+            assertEquals(2, journal.getNextLsn());
+        }
+    }
+
+    @Test
+    public void shouldNotLoseRecordsWhenAccountsAreUpdatedConcurrently() throws Exception {
+        int threads = 8;
+        int operations = 5_000;
+        try (Journal journal = Journal.open(directory, JournalConfig.builder().fsyncBatchSize(256).build())) {
+            List<BankAccount> accounts = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                BankAccount account = new CreditAccount(i, i);
+                journal.register(account);
+                accounts.add(account);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                BankAccount own = accounts.get(t);
+                BankAccount shared = accounts.get(0);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < operations; i++) {
+                        own.deposit(1);
+                        shared.deposit(2);
+                        shared.withdraw(1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertEquals(journal.getNextLsn(), journal.sync());
+        }
+
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            AccountRepository restored = journal.recover();
+            assertEquals(operations * 100L + threads * operations * 99L, restored.get(0L).getBalanceMinorUnits());
+            for (int i = 1; i < threads; i++) {
+                assertEquals(operations * 100L, restored.get(i).getBalanceMinorUnits());
+            }
+            assertNull(restored.get(threads));
+        }
+    }
+}
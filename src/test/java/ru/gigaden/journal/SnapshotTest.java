@@ -0,0 +1,131 @@
+package ru.gigaden.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.repository.AccountRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotTest {
+    private static final JournalConfig SMALL_SEGMENTS = JournalConfig.builder()
+            .segmentSize(JournalRecord.SIZE * 16)
+            .snapshotIntervalMillis(0)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRecoverFromSnapshotAndJournalTail() throws IOException {
+        LocalDate paidOn = LocalDate.of(2024, 1, 15);
+        try (Journal journal = Journal.open(directory, SMALL_SEGMENTS)) {
+            DebitAccount debit = new DebitAccount(1L, 11L);
+            CreditAccount credit = new CreditAccount(2L, 22L);
+            SavingsAccount saving = new SavingsAccount(3L, 33L);
+            journal.register(debit);
+            journal.register(credit);
+            journal.register(saving);
+            for (int i = 0; i < 50; i++) {
+                debit.deposit(10);
+            }
+            credit.setCreditLimit(800);
+            credit.setWithdrawalFee(3);
+            credit.withdraw(100);
+            saving.setMonthlyInterest(7.5);
+            saving.setLastInterestPaid(paidOn);
+
+            long snapshotLsn = journal.snapshot();
+            assertEquals(journal.getNextLsn(), snapshotLsn);
+
+            debit.withdraw(1);
+            saving.deposit(200);
+        }
+
+        try (Journal journal = Journal.open(directory, SMALL_SEGMENTS)) {
+            AccountRepository accounts = journal.recover();
+            assertEquals(49900, accounts.get(1L).getBalanceMinorUnits());
+            CreditAccount credit = assertInstanceOf(CreditAccount.class, accounts.get(2L));
+            assertEquals(-10300, credit.getBalanceMinorUnits());
+            assertEquals(800, credit.getCreditLimit());
+            assertEquals(3, credit.getWithdrawalFee());
+            SavingsAccount saving = assertInstanceOf(SavingsAccount.class, accounts.get(3L));
+            assertEquals(20000, saving.getBalanceMinorUnits());
+            assertEquals(7.5, saving.getMonthlyInterest());
+            assertEquals(paidOn, saving.getLastInterestPaid());
+            assertEquals(33L, saving.getAccountHolder());
+        }
+    }
+
+    @Test
+    public void shouldDeleteSegmentsCoveredBySnapshot() throws IOException {
+        try (Journal journal = Journal.open(directory, SMALL_SEGMENTS)) {
+            DebitAccount debit = new DebitAccount(1L, 11L);
+            journal.register(debit);
+            for (int i = 0; i < 100; i++) {
+                debit.deposit(1);
+            }
+            assertTrue(Journal.listSegments(directory).size() > 5);
+
+            long lsn = journal.snapshot();
+
+            List<Long> segments = Journal.listSegments(directory);
+            assertEquals(1, segments.size());
+            assertTrue(segments.get(0) <= lsn);
+            assertEquals(List.of(lsn), Snapshot.list(directory));
+
+            debit.deposit(1);
+            long next = journal.snapshot();
+            assertEquals(lsn + 1, next);
+            assertEquals(List.of(next), Snapshot.list(directory));
+        }
+
+        try (Journal journal = Journal.open(directory, SMALL_SEGMENTS)) {
+            assertEquals(10100, journal.recover().get(1L).getBalanceMinorUnits());
+            assertEquals(102, journal.getNextLsn());
+        }
+    }
+
+    @Test
+    public void shouldWriteSnapshotInBackgroundWhileAccountsAreUpdated() throws Exception {
+        JournalConfig config = JournalConfig.builder().snapshotIntervalMillis(5).build();
+        BankAccount debit = new DebitAccount(1L, 11L);
+        try (Journal journal = Journal.open(directory, config)) {
+            journal.register(debit);
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (Snapshot.list(directory).isEmpty() && System.currentTimeMillis() < deadline) {
+                debit.deposit(1);
+            }
+            debit.deposit(1);
+        }
+
+        assertTrue(!Snapshot.list(directory).isEmpty());
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            assertEquals(debit.getBalanceMinorUnits(), journal.recover().get(1L).getBalanceMinorUnits());
+        }
+    }
+
+    @Test
+    public void shouldRejectCorruptedSnapshot() throws IOException {
+        AccountRepository accounts = new AccountRepository();
+        accounts.add(new DebitAccount(1L, 11L));
+        Path file = Snapshot.write(directory, 10, accounts);
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 10] ^= 1;
+        Files.write(file, content);
+
+        assertThrows(IOException.class, () -> Snapshot.read(file, new AccountRepository()));
+    }
+}
@@ -0,0 +1,47 @@
+package ru.gigaden.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 31, 32, 33, 63, 64, 1_000, 123_456_789, Long.MAX_VALUE})
+    public void shouldKeepValueWithinBucketBoundsWhenRecorded(long value) {
+        int index = LatencyHistogram.indexOf(value);
+
+        assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+        assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+        assertTrue(LatencyHistogram.highestEquivalentValue(index) - value <= value / 32);
+    }
+
+    @Test
+    public void shouldReturnPercentilesWithinPrecisionWhenManyValuesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 / 32.0);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 99_000 / 32.0);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void shouldReturnZeroWhenHistogramIsEmptyOrReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        histogram.record(500);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
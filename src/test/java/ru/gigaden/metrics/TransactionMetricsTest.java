@@ -0,0 +1,106 @@
+package ru.gigaden.metrics;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionProcessor;
+import ru.gigaden.transaction.TransactionStatus;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransactionMetricsTest {
+    private final TransactionMetrics metrics = new TransactionMetrics();
+
+    @Test
+    public void shouldCountOperationsByAccountTypeWhenAttached() {
+        AccountRepository accounts = new AccountRepository();
+        DebitAccount debit = new DebitAccount(1L, 11L);
+        CreditAccount credit = new CreditAccount(2L, 22L);
+        SavingsAccount saving = new SavingsAccount(3L, 33L);
+        saving.setLastInterestPaid(LocalDate.now().minusMonths(1));
+        accounts.add(debit);
+        accounts.add(credit);
+        accounts.add(saving);
+        metrics.attach(accounts);
+
+        debit.deposit(100);
+        credit.withdraw(1000);
+        saving.deposit(1000);
+        saving.applyInterest();
+
+        assertEquals(2, metrics.getDeposits());
+        assertEquals(110000, metrics.getDepositedAmount());
+        assertEquals(1, metrics.getWithdrawals());
+        assertEquals(101000, metrics.getWithdrawnAmount());
+        assertEquals(1000, metrics.getFeesCollected());
+        assertEquals(1, metrics.getInterestPayments());
+        assertEquals(3000, metrics.getInterestPaid());
+        Map<String, Long> byType = metrics.getCountersByAccountType();
+        assertEquals(1, byType.get("DEBIT.deposits"));
+        assertEquals(1000, byType.get("CREDIT.feesCollected"));
+        assertEquals(0, byType.get("SAVINGS.withdrawals"));
+    }
+
+    @Test
+    public void shouldCountRejectionsByExceptionTypeWhenOperationsAreRejected() {
+        DebitAccount debit = new DebitAccount(1L, 11L);
+        SavingsAccount saving = new SavingsAccount(3L, 33L);
+        debit.addListener(metrics);
+        saving.addListener(metrics);
+
+        debit.tryWithdraw(Money.of(100));
+        debit.tryWithdraw(Money.of(20000));
+        debit.tryDeposit(Money.of(-1));
+        saving.tryApplyInterest(LocalDate.now());
+
+        assertEquals(4, metrics.getRejections());
+        assertEquals(1, metrics.getRejections(AccountType.DEBIT, TransactionStatus.LIMIT_EXCEEDED));
+        assertEquals(Map.of("WithdrawLimitException", 2L,
+                        "DepositAmountException", 1L,
+                        "InterestPeriodException", 1L),
+                metrics.getRejectionsByException());
+        assertEquals(2, metrics.getRejectionsByAccountType().get("DEBIT.WithdrawLimitException"));
+    }
+
+    @Test
+    public void shouldRecordLatencyWhenTransactionsAreProcessed() {
+        List<BankAccount> accounts = List.of(new DebitAccount(1L, 11L), new CreditAccount(2L, 22L));
+        accounts.get(0).deposit(100);
+        TransactionProcessor.setMetrics(metrics);
+        try {
+            TransactionProcessor.processTransaction(accounts, 10);
+        } finally {
+            TransactionProcessor.setMetrics(null);
+        }
+
+        assertEquals(2, metrics.getWithdrawLatency().get("count"));
+        assertEquals(1, metrics.getProcessTransactionLatency().get("count"));
+    }
+
+    @Test
+    public void shouldExposeMetricsThroughJmxWhenRegistered() throws Exception {
+        DebitAccount debit = new DebitAccount(1L, 11L);
+        debit.addListener(metrics);
+        debit.deposit(5);
+
+        ObjectName name = metrics.register("test");
+        try {
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Deposits"));
+            assertThrows(IllegalStateException.class, () -> metrics.register("test"));
+        } finally {
+            TransactionMetrics.unregister(name);
+        }
+    }
+}
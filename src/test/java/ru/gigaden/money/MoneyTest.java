@@ -0,0 +1,54 @@
+package ru.gigaden.money;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class MoneyTest {
+
+    @ParameterizedTest
+    @CsvSource({"0.29, 29", "1.115, 112", "0.005, 1", "-0.005, -1", "-1000, -100000", "12345.678, 1234568"})
+    public void shouldRoundDoubleToMinorUnitsHalfUp(double amount, long expected) {
+        assertEquals(expected, Money.toMinor(amount));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1000.00, 3", "10.01, 3.3", "0.15, 50", "-0.15, 50", "99999.99, 0.125", "0.01, 0.5"})
+    public void shouldCalculatePercentLikeBigDecimalHalfUp(String amount, String percent) {
+        BigDecimal value = new BigDecimal(amount);
+        long expected = value.multiply(new BigDecimal(percent))
+                .divide(BigDecimal.valueOf(100), Money.SCALE, RoundingMode.HALF_UP)
+                .unscaledValue()
+                .longValueExact();
+
+        long actual = Money.percentOf(Money.of(value).getMinorUnits(), Money.toRate(Double.parseDouble(percent)));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldFallBackToBigDecimalWhenProductOverflowsLong() {
+        long amount = Long.MAX_VALUE / 1_000;
+        long expected = BigDecimal.valueOf(amount)
+                .multiply(BigDecimal.valueOf(50))
+                .divide(BigDecimal.valueOf(100), 0, RoundingMode.HALF_UP)
+                .longValueExact();
+
+        assertEquals(expected, Money.percentOf(amount, Money.toRate(50)));
+    }
+
+    @Test
+    public void shouldConvertToBigDecimalWithTwoDecimals() {
+        Money money = Money.of(1234.5);
+
+        assertEquals(new BigDecimal("1234.50"), money.toBigDecimal());
+        assertEquals("1234.50", money.toString());
+        assertSame(Money.ZERO, Money.ofMinor(0));
+    }
+}
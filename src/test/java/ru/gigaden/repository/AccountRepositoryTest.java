@@ -0,0 +1,99 @@
+package ru.gigaden.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountRepositoryTest {
+
+    @Test
+    public void shouldFindAccountsByNumberAndHolder() {
+        AccountRepository repository = new AccountRepository();
+        BankAccount debit = new DebitAccount(1L, 11L);
+        BankAccount credit = new CreditAccount(2L, 11L);
+        BankAccount saving = new SavingsAccount(3L, 33L);
+
+        assertTrue(repository.add(debit));
+        assertTrue(repository.add(credit));
+        assertTrue(repository.add(saving));
+
+        assertSame(credit, repository.get(2L));
+        assertSame(saving, repository.findByNumber(3L).orElseThrow());
+        assertEquals(List.of(debit, credit), repository.findByHolder(11L));
+        assertEquals(List.of(), repository.findByHolder(99L));
+        assertEquals(3, repository.size());
+    }
+
+    @Test
+    public void shouldRejectDuplicateAccountNumber() {
+        AccountRepository repository = new AccountRepository();
+        BankAccount first = new DebitAccount(1L, 11L);
+
+        assertTrue(repository.add(first));
+        assertFalse(repository.add(new CreditAccount(1L, 22L)));
+
+        assertSame(first, repository.get(1L));
+        assertEquals(List.of(), repository.findByHolder(22L));
+    }
+
+    @Test
+    public void shouldRemoveAccountFromBothIndexes() {
+        AccountRepository repository = new AccountRepository();
+        BankAccount debit = new DebitAccount(1L, 11L);
+        BankAccount credit = new CreditAccount(2L, 11L);
+        repository.add(debit);
+        repository.add(credit);
+
+        assertSame(debit, repository.remove(1L));
+
+        assertNull(repository.get(1L));
+        assertEquals(List.of(credit), repository.findByHolder(11L));
+        assertNull(repository.remove(1L));
+    }
+
+    @Test
+    public void shouldKeepEveryAccountWhenAddedAndReadConcurrently() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        AccountRepository repository = new AccountRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            long offset = (long) t * perThread;
+            futures.add(executor.submit(() -> {
+                for (long i = offset; i < offset + perThread; i++) {
+                    repository.add(new DebitAccount(i, i % 100));
+                    assertEquals(i, repository.get(i).getAccountNumber());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread, repository.size());
+        int byHolder = 0;
+        for (long holder = 0; holder < 100; holder++) {
+            byHolder += repository.findByHolder(holder).size();
+        }
+        assertEquals(threads * perThread, byHolder);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.gigaden.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.exception.WithdrawAmountException;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.RuleEngine;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ColumnarAccountStoreTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 31);
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.01, 99.99, 4_950, 4_951, 5_000, 10_000, 10_000.01, 20_000})
+    public void shouldMatchObjectModelWhenWithdrawingFromAllAccounts(double amount) {
+        AccountRepository repository = new AccountRepository();
+        List<BankAccount> accounts = accounts(repository, 3_000, 42);
+        ColumnarAccountStore store = ColumnarAccountStore.load(repository);
+        byte[] statuses = new byte[store.size()];
+
+        int succeeded = store.withdrawAll(Money.of(amount), statuses);
+
+        int expectedSucceeded = 0;
+        for (BankAccount account : accounts) {
+            TransactionStatus expected = account.tryWithdraw(Money.of(amount));
+            int row = store.rowOf(account.getAccountNumber());
+            assertEquals(expected, ColumnarAccountStore.status(statuses[row]), "счёт " + account.getAccountNumber());
+            assertEquals(account.getBalanceMinorUnits(), store.getBalanceMinorUnits(row));
+            expectedSucceeded += expected.isSuccess() ? 1 : 0;
+        }
+        assertEquals(expectedSucceeded, succeeded);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "2024-01-31, 2024-02-29",
+            "2024-01-31, 2024-03-31",
+            "2024-02-29, 2024-03-28",
+            "2024-02-29, 2024-03-29",
+            "2023-12-15, 2024-01-14",
+            "2023-12-15, 2024-01-15",
+            "2024-03-31, 2024-03-31",
+            "2024-05-01, 2024-03-31"
+    })
+    public void shouldMatchObjectModelWhenApplyingInterest(LocalDate lastPaid, LocalDate today) {
+        AccountRepository repository = new AccountRepository();
+        SavingsAccount savings = new SavingsAccount(1L, 1L);
+        savings.deposit(Money.of(1_234.57));
+        savings.setMonthlyInterest(2.5);
+        savings.setLastInterestPaid(lastPaid);
+        repository.add(savings);
+        ColumnarAccountStore store = ColumnarAccountStore.load(repository);
+        byte[] statuses = new byte[1];
+
+        store.applyInterestAll(today, statuses);
+
+        TransactionStatus expected = savings.tryApplyInterest(today);
+        assertEquals(expected, ColumnarAccountStore.status(statuses[0]));
+        assertEquals(savings.getBalanceMinorUnits(), store.getBalanceMinorUnits(0));
+        assertEquals(savings.getLastInterestPaid(), store.getLastInterestPaid(0));
+    }
+
+    @Test
+    public void shouldWriteStateBackWhenStoredToRepository() {
+        AccountRepository repository = new AccountRepository();
+        List<BankAccount> accounts = accounts(repository, 1_000, 7);
+        AccountRepository expected = new AccountRepository();
+        List<BankAccount> mirror = accounts(expected, 1_000, 7);
+        ColumnarAccountStore store = ColumnarAccountStore.load(repository);
+
+        store.applyInterestAll(TODAY, null);
+        store.withdrawAll(Money.of(300), null);
+        int updated = store.storeTo(repository);
+
+        assertEquals(1_000, updated);
+        long total = 0;
+        for (int i = 0; i < mirror.size(); i++) {
+            BankAccount account = mirror.get(i);
+            if (account instanceof SavingsAccount savings) {
+                savings.tryApplyInterest(TODAY);
+                assertEquals(savings.getLastInterestPaid(),
+                        ((SavingsAccount) accounts.get(i)).getLastInterestPaid());
+            }
+            account.tryWithdraw(Money.of(300));
+            assertEquals(account.getBalanceMinorUnits(), accounts.get(i).getBalanceMinorUnits());
+            total += account.getBalanceMinorUnits();
+        }
+        assertEquals(total, store.totalBalance());
+        assertEquals(store.totalBalance(), store.totalBalance(AccountType.DEBIT)
+                + store.totalBalance(AccountType.CREDIT)
+                + store.totalBalance(AccountType.SAVINGS));
+    }
+
+    @Test
+    public void shouldMatchObjectModelWhenRulesAreReplaced() {
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(2_000))
+                .feeTier(new RuleChain.FeeTier(Money.ZERO, 3))
+                .feeTier(new RuleChain.FeeTier(Money.of(1_000), 0.5))
+                .build());
+        try {
+            AccountRepository repository = new AccountRepository();
+            List<BankAccount> accounts = accounts(repository, 900, 11);
+            ColumnarAccountStore store = ColumnarAccountStore.load(repository);
+            byte[] statuses = new byte[store.size()];
+
+            for (double amount : new double[]{500, 1_500, 1_990.05}) {
+                store.withdrawAll(Money.of(amount), statuses);
+                for (BankAccount account : accounts) {
+                    int row = store.rowOf(account.getAccountNumber());
+                    assertEquals(account.tryWithdraw(Money.of(amount)), ColumnarAccountStore.status(statuses[row]));
+                    assertEquals(account.getBalanceMinorUnits(), store.getBalanceMinorUnits(row));
+                }
+            }
+
+            accounts.get(0).setRules(RuleChain.builder().rule((account, amount) -> TransactionStatus.SUCCESS).build());
+            ColumnarAccountStore withCustomRules = ColumnarAccountStore.load(repository);
+            assertThrows(UnsupportedOperationException.class, () -> withCustomRules.withdrawAll(Money.of(1), null));
+        } finally {
+            RuleEngine.reset();
+        }
+    }
+
+    @Test
+    public void shouldRejectBatchWhenAmountIsNotPositive() {
+        ColumnarAccountStore store = new ColumnarAccountStore();
+        store.add(new CreditAccount(1L, 1L));
+
+        assertThrows(WithdrawAmountException.class, () -> store.withdrawAll(Money.ZERO, null));
+        assertEquals(-1, store.add(new CreditAccount(1L, 2L)));
+        assertNull(store.getLastInterestPaid(0));
+        assertEquals(-1, store.rowOf(2L));
+    }
+
+    /**
+     * Счета всех трёх типов со случайными балансами, лимитами, комиссиями и датами начисления.
+     */
+    private static List<BankAccount> accounts(AccountRepository repository, int count, long seed) {
+        Random random = new Random(seed);
+        List<BankAccount> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AccountType type = AccountType.values()[i % 3];
+            BankAccount account = type.create(i, i / 4);
+            account.deposit(Money.ofMinor(1 + random.nextInt(3_000_000)));
+            if (account instanceof CreditAccount credit) {
+                credit.setCreditLimit(Money.ofMinor(random.nextInt(1_000_000)));
+                credit.setWithdrawalFee(random.nextInt(500) / 100.0);
+            } else if (account instanceof SavingsAccount savings) {
+                savings.setMonthlyInterest(random.nextInt(1_000) / 100.0);
+                savings.setLastInterestPaid(TODAY.minusDays(random.nextInt(90)));
+            }
+            repository.add(account);
+            accounts.add(account);
+        }
+        return accounts;
+    }
+}
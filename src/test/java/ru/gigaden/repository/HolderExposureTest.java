@@ -0,0 +1,134 @@
+package ru.gigaden.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HolderExposureTest {
+
+    @Test
+    public void shouldTrackBalancesAndCreditLimitsWhenAccountsChange() {
+        AccountRepository repository = new AccountRepository();
+        DebitAccount debit = new DebitAccount(1L, 7L);
+        CreditAccount credit = new CreditAccount(2L, 7L);
+        SavingsAccount savings = new SavingsAccount(3L, 7L);
+        debit.deposit(Money.of(100));
+        repository.add(debit);
+        repository.add(credit);
+        repository.add(savings);
+        HolderExposure exposure = new HolderExposure(repository);
+        exposure.attach();
+
+        credit.withdraw(Money.of(100));
+        savings.deposit(Money.of(1_000));
+        savings.setMonthlyInterest(1);
+        savings.setLastInterestPaid(LocalDate.now().minusMonths(1));
+        savings.applyInterest();
+        credit.setCreditLimit(Money.of(2_000));
+        debit.withdraw(Money.of(40));
+
+        assertEquals(100_00 - 101_00 + 1_010_00 - 40_00, exposure.getBalanceMinorUnits(7L));
+        assertEquals(2_000_00, exposure.getCreditLimitMinorUnits(7L));
+        assertEquals(969_00 + 2_000_00, exposure.getExposureMinorUnits(7L));
+        assertEquals(0, exposure.getExposureMinorUnits(8L));
+        assertEquals(List.of(), exposure.verify());
+    }
+
+    @Test
+    public void shouldStayConsistentWhenHolderAccountsAreUsedConcurrently() throws InterruptedException {
+        AccountRepository repository = new AccountRepository();
+        for (long number = 0; number < 40; number++) {
+            BankAccount account = number % 2 == 0 ? new DebitAccount(number, number % 4) : new CreditAccount(number, number % 4);
+            account.deposit(Money.of(10_000));
+            repository.add(account);
+        }
+        HolderExposure exposure = new HolderExposure(repository);
+        exposure.attach();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int seed = i;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 20_000; j++) {
+                    BankAccount account = repository.get((seed * 7L + j) % 40);
+                    if (j % 3 == 0) {
+                        account.tryDeposit(Money.of(3));
+                    } else {
+                        account.tryWithdraw(Money.of(2));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), exposure.verify());
+        for (long holder = 0; holder < 4; holder++) {
+            long total = repository.findByHolder(holder).stream().mapToLong(BankAccount::getBalanceMinorUnits).sum();
+            assertEquals(total, exposure.getBalanceMinorUnits(holder));
+        }
+    }
+
+    @Test
+    public void shouldFixAggregatesWhenRebuiltAfterRestore() {
+        AccountRepository repository = new AccountRepository();
+        DebitAccount first = new DebitAccount(1L, 1L);
+        CreditAccount second = new CreditAccount(2L, 2L);
+        repository.add(first);
+        repository.add(second);
+        HolderExposure exposure = new HolderExposure(repository);
+        exposure.attach();
+
+        first.restoreBalance(500_00);
+        repository.remove(2L);
+
+        assertEquals(List.of(1L, 2L), exposure.verify().stream().sorted().toList());
+        assertEquals(2, exposure.rebuild());
+        assertTrue(exposure.verify().isEmpty());
+        assertEquals(500_00, exposure.getExposureMinorUnits(1L));
+        assertEquals(0, exposure.getExposureMinorUnits(2L));
+    }
+
+    @Test
+    public void shouldRebuildStoppedHoldersWhenOtherAccountsAreInUse() throws InterruptedException {
+        AccountRepository repository = new AccountRepository();
+        for (long number = 0; number < 8; number++) {
+            repository.add(new DebitAccount(number, number < 6 ? 0L : 1L));
+        }
+        HolderExposure exposure = new HolderExposure(repository);
+        exposure.attach();
+        repository.get(7L).restoreBalance(250_00);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int seed = i;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    repository.get((seed + j) % 6).tryDeposit(Money.ofMinor(1));
+                }
+            }));
+        }
+
+        assertEquals(1, exposure.rebuild(1L));
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            assertEquals(0, exposure.rebuild(1L));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), exposure.verify());
+        assertEquals(3 * 100_000, exposure.getBalanceMinorUnits(0L));
+        assertEquals(250_00, exposure.getBalanceMinorUnits(1L));
+        assertEquals(0, exposure.rebuild());
+    }
+}
@@ -0,0 +1,215 @@
+package ru.gigaden.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.RuleEngine;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapAccountStoreTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 31);
+
+    @TempDir
+    private Path directory;
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.01, 99.99, 4_950, 5_000, 10_000.01, 20_000})
+    public void shouldMatchObjectModelWhenOperatingThroughView(double amount) {
+        AccountRepository repository = new AccountRepository();
+        List<BankAccount> accounts = accounts(repository, 600, 42);
+        OffHeapAccountStore store = OffHeapAccountStore.allocate(64);
+        assertEquals(600, store.addAll(repository));
+        OffHeapAccount view = store.view();
+
+        for (BankAccount account : accounts) {
+            assertTrue(view.moveTo(account.getAccountNumber()));
+            TransactionStatus interest = account instanceof SavingsAccount savings
+                    ? savings.tryApplyInterest(TODAY)
+                    : TransactionStatus.INTEREST_NOT_DUE;
+            assertEquals(interest, view.tryApplyInterest(TODAY), "счёт " + account.getAccountNumber());
+            assertEquals(account.tryWithdraw(Money.of(amount)), view.tryWithdraw(Money.of(amount)));
+            assertEquals(account.tryDeposit(Money.of(amount / 2)), view.tryDeposit(Money.of(amount / 2)));
+            assertEquals(account.getBalanceMinorUnits(), view.getBalanceMinorUnits());
+            if (account instanceof SavingsAccount savings) {
+                assertEquals(savings.getLastInterestPaid(), view.getLastInterestPaid());
+            }
+        }
+        assertEquals(accounts.stream().mapToLong(BankAccount::getBalanceMinorUnits).sum(), store.totalBalance());
+    }
+
+    @Test
+    public void shouldKeepAccountsWhenMappedFileIsReopened() throws IOException {
+        AccountRepository repository = new AccountRepository();
+        List<BankAccount> accounts = accounts(repository, 100, 7);
+        Path file = directory.resolve("accounts.bin");
+        try (OffHeapAccountStore store = OffHeapAccountStore.open(file, 16)) {
+            store.addAll(repository);
+            OffHeapAccount view = store.view();
+            for (int row = 0; row < store.size(); row++) {
+                view.moveToRow(row).tryDeposit(Money.of(10));
+            }
+        }
+
+        try (OffHeapAccountStore store = OffHeapAccountStore.open(file, 1 << 20)) {
+            assertEquals(100, store.size());
+            for (BankAccount account : accounts) {
+                int row = store.rowOf(account.getAccountNumber());
+                BankAccount restored = store.toAccount(row);
+                assertInstanceOf(account.getClass(), restored);
+                assertEquals(account.getAccountHolder(), restored.getAccountHolder());
+                assertEquals(account.getBalanceMinorUnits() + 10_00, restored.getBalanceMinorUnits());
+                if (account instanceof CreditAccount credit) {
+                    assertEquals(credit.getCreditLimit(), ((CreditAccount) restored).getCreditLimit());
+                    assertEquals(credit.getWithdrawalFee(), ((CreditAccount) restored).getWithdrawalFee());
+                } else if (account instanceof SavingsAccount savings) {
+                    assertEquals(savings.getMonthlyInterest(), ((SavingsAccount) restored).getMonthlyInterest());
+                    assertEquals(savings.getLastInterestPaid(), ((SavingsAccount) restored).getLastInterestPaid());
+                }
+            }
+            assertEquals(100, store.add(new DebitAccount(1_000L, 1L)));
+        }
+
+        Path broken = Files.write(directory.resolve("broken.bin"), new byte[128]);
+        assertThrows(IOException.class, () -> OffHeapAccountStore.open(broken, 16));
+    }
+
+    @Test
+    public void shouldNotOverdrawWhenRowIsChangedConcurrently() throws Exception {
+        OffHeapAccountStore store = OffHeapAccountStore.allocate(8);
+        DebitAccount debit = new DebitAccount(1L, 1L);
+        debit.deposit(Money.of(1_000));
+        store.add(debit);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    OffHeapAccount view = store.view();
+                    view.moveTo(1L);
+                    int succeeded = 0;
+                    for (int i = 0; i < 1_000; i++) {
+                        succeeded += view.tryWithdraw(Money.of(1)).isSuccess() ? 1 : 0;
+                    }
+                    return succeeded;
+                }));
+            }
+            int succeeded = 0;
+            for (Future<Integer> future : futures) {
+                succeeded += future.get();
+            }
+            assertEquals(1_000, succeeded);
+            assertEquals(0, store.view().moveToRow(0).getBalanceMinorUnits());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFindAccountsWhenIndexGrowsConcurrently() throws Exception {
+        OffHeapAccountStore store = OffHeapAccountStore.allocate(1 << 10);
+        store.add(new DebitAccount(0L, 0L));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long number = 1; number < 50_000; number++) {
+                    store.add(new DebitAccount(number, number));
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                readers.add(executor.submit(() -> {
+                    OffHeapAccount view = store.view();
+                    while (!writer.isDone()) {
+                        assertTrue(view.moveTo(0L));
+                        int size = store.size();
+                        assertTrue(view.moveTo(size - 1));
+                    }
+                    return null;
+                }));
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            assertEquals(49_999, store.rowOf(49_999L));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRejectChunkSizeWhenRecordOffsetsOverflowInt() {
+        assertThrows(IllegalArgumentException.class, () -> OffHeapAccountStore.allocate(1 << 26));
+        assertThrows(IllegalArgumentException.class, () -> OffHeapAccountStore.allocate(3));
+        assertEquals(0, OffHeapAccountStore.allocate(1 << 25).size());
+    }
+
+    @Test
+    public void shouldRejectDuplicatesAndCustomRulesWhenStoreIsUsed() {
+        OffHeapAccountStore store = OffHeapAccountStore.allocate(4);
+        store.add(new CreditAccount(1L, 1L));
+        OffHeapAccount view = store.view();
+
+        assertEquals(-1, store.add(new DebitAccount(1L, 2L)));
+        assertFalse(view.moveTo(2L));
+        assertThrows(IllegalStateException.class, view::getBalanceMinorUnits);
+        assertEquals(TransactionStatus.INVALID_DEPOSIT_AMOUNT, view.moveToRow(0).tryDeposit(Money.ZERO));
+        assertEquals(TransactionStatus.INTEREST_NOT_DUE, view.tryApplyInterest(TODAY));
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .rule((account, amount) -> TransactionStatus.SUCCESS)
+                .build());
+        try {
+            assertThrows(UnsupportedOperationException.class, () -> view.tryWithdraw(Money.of(1)));
+        } finally {
+            RuleEngine.reset();
+        }
+    }
+
+    /**
+     * Счета всех трёх типов со случайными балансами, лимитами, комиссиями и датами начисления.
+     */
+    private static List<BankAccount> accounts(AccountRepository repository, int count, long seed) {
+        Random random = new Random(seed);
+        List<BankAccount> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AccountType type = AccountType.values()[i % 3];
+            BankAccount account = type.create(i, i / 4);
+            account.deposit(Money.ofMinor(1 + random.nextInt(3_000_000)));
+            if (account instanceof CreditAccount credit) {
+                credit.setCreditLimit(Money.ofMinor(random.nextInt(1_000_000)));
+                credit.setWithdrawalFee(random.nextInt(500) / 100.0);
+            } else if (account instanceof SavingsAccount savings) {
+                savings.setMonthlyInterest(random.nextInt(1_000) / 100.0);
+                savings.setLastInterestPaid(TODAY.minusDays(random.nextInt(90)));
+            }
+            repository.add(account);
+            accounts.add(account);
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,177 @@
+package ru.gigaden.rule;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.FeeLedger;
+import ru.gigaden.account.WithdrawalReceipt;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FeeScheduleTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    @AfterEach
+    public void tearDown() {
+        RuleEngine.reset();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "10, 1",
+            "100, 2",
+            "999.99, 20",
+            "1000, 10",
+            "2500, 25",
+            "10000, 30"
+    })
+    public void shouldClampFeeToTierBoundsWhenTierHasMinAndMax(double amount, double fee) {
+        FeeSchedule schedule = FeeSchedule.builder()
+                .tier(new RuleChain.FeeTier(Money.ZERO, 2, Money.of(1), Money.of(20)))
+                .tier(new RuleChain.FeeTier(Money.of(1_000), 1, Money.ZERO, Money.of(30)))
+                .build();
+
+        assertEquals(Money.of(fee).getMinorUnits(), schedule.fee(Money.of(amount).getMinorUnits(), 7L, 0));
+    }
+
+    @Test
+    public void shouldChargeNothingWhenHolderIsWaived() {
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(5_000))
+                .feeSchedule(FeeSchedule.builder().waivedHolders(List.of(5L, 3L)).build())
+                .build());
+        CreditAccount waived = new CreditAccount(1L, 3L);
+        CreditAccount charged = new CreditAccount(2L, 4L);
+
+        assertEquals(Money.of(100), waived.applyFee(Money.of(100)));
+        assertEquals(TransactionStatus.SUCCESS, waived.tryWithdraw(Money.of(100)));
+        assertEquals(TransactionStatus.SUCCESS, charged.tryWithdraw(Money.of(100)));
+        assertEquals(-100_00, waived.getBalanceMinorUnits());
+        assertEquals(-101_00, charged.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldWaiveFirstWithdrawalsOfPeriodWhenFreeWithdrawalsAreSet() {
+        AtomicLong clock = new AtomicLong(10 * DAY);
+        FeeSchedule schedule = new FeeSchedule(List.of(), List.of(), 2, Duration.ofDays(1), null, clock::get);
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(100))
+                .feeSchedule(schedule)
+                .build());
+        CreditAccount account = new CreditAccount(1L, 1L);
+
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, account.tryWithdraw(Money.of(200)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10)));
+        assertEquals(-30_10, account.getBalanceMinorUnits());
+
+        clock.addAndGet(DAY);
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10)));
+        assertEquals(-40_10, account.getBalanceMinorUnits());
+        assertThrows(IllegalArgumentException.class,
+                () -> FeeSchedule.builder().freeWithdrawals(1).build());
+    }
+
+    @Test
+    public void shouldReturnFreeWithdrawalAndRefundOriginalLedgerWhenWithdrawalIsReverted() {
+        AtomicLong clock = new AtomicLong(10 * DAY);
+        FeeLedger ledger = new FeeLedger(new DebitAccount(100L, 100L));
+        FeeLedger replacement = new FeeLedger(new DebitAccount(101L, 101L));
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(5_000))
+                .feeSchedule(new FeeSchedule(List.of(), List.of(), 2, Duration.ofDays(1), ledger, clock::get))
+                .build());
+        CreditAccount account = new CreditAccount(1L, 1L);
+        WithdrawalReceipt free = new WithdrawalReceipt();
+        WithdrawalReceipt charged = new WithdrawalReceipt();
+
+        account.tryWithdraw(Money.of(100));
+        account.tryWithdraw(Money.of(100), free);
+        account.tryWithdraw(Money.of(100), charged);
+        assertTrue(free.isFree());
+        assertEquals(1_00, ledger.getPendingMinorUnits());
+
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(5_000))
+                .feeSchedule(FeeSchedule.builder().ledger(replacement).build())
+                .build());
+        account.revertWithdraw(charged);
+        account.revertWithdraw(free);
+        assertEquals(0, ledger.getPendingMinorUnits());
+        assertEquals(0, replacement.getPendingMinorUnits());
+        assertEquals(-100_00, account.getBalanceMinorUnits());
+
+        RuleEngine.install(AccountType.CREDIT, charged.getRules());
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(100)));
+        assertEquals(-200_00, account.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldCreditEachFeeOnceWhenSettledConcurrently() throws InterruptedException {
+        DebitAccount fees = new DebitAccount(100L, 100L);
+        FeeLedger ledger = new FeeLedger(fees);
+        AtomicLong settled = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 2_000; j++) {
+                    ledger.collect(1);
+                    settled.addAndGet(ledger.settle());
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        settled.addAndGet(ledger.settle());
+
+        assertEquals(8_000, settled.get());
+        assertEquals(8_000, fees.getBalanceMinorUnits());
+        assertEquals(0, ledger.getPendingMinorUnits());
+    }
+
+    @Test
+    public void shouldCreditCollectedFeesToLedgerAccountWhenSettled() {
+        DebitAccount fees = new DebitAccount(100L, 100L);
+        FeeLedger ledger = new FeeLedger(fees);
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(5_000))
+                .feeSchedule(FeeSchedule.builder()
+                        .tier(new RuleChain.FeeTier(Money.ZERO, 1, Money.of(0.5), null))
+                        .ledger(ledger)
+                        .build())
+                .build());
+        CreditAccount first = new CreditAccount(1L, 1L);
+        CreditAccount second = new CreditAccount(2L, 2L);
+
+        WithdrawalReceipt receipt = new WithdrawalReceipt();
+        first.tryWithdraw(Money.of(10));
+        second.tryWithdraw(Money.of(1_000), receipt);
+        second.revertWithdraw(receipt);
+
+        assertEquals(50, ledger.getPendingMinorUnits());
+        assertEquals(50, ledger.settle());
+        assertEquals(0, ledger.settle());
+        assertEquals(50, fees.getBalanceMinorUnits());
+        assertEquals(0, second.getBalanceMinorUnits());
+    }
+}
@@ -0,0 +1,103 @@
+package ru.gigaden.rule;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RuleEngineTest {
+
+    @AfterEach
+    public void tearDown() {
+        RuleEngine.reset();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "DEBIT, 10000, SUCCESS",
+            "DEBIT, 10000.01, TRANSACTION_LIMIT_EXCEEDED",
+            "CREDIT, 5000, SUCCESS",
+            "CREDIT, 5000.01, TRANSACTION_LIMIT_EXCEEDED",
+            "SAVINGS, 1000000, SUCCESS"
+    })
+    public void shouldKeepPreviousLimitsWhenDefaultsAreInstalled(AccountType type, double amount,
+                                                                 TransactionStatus expected) {
+        assertEquals(expected, RuleEngine.chain(type).check(null, Money.of(amount).getMinorUnits()));
+    }
+
+    @Test
+    public void shouldApplyNewLimitToExistingAccountsWhenChainIsInstalled() {
+        DebitAccount account = new DebitAccount(1L, 1L);
+        account.deposit(Money.of(50_000));
+
+        RuleEngine.install(AccountType.DEBIT, RuleChain.builder().maxTransaction(Money.of(100)).build());
+
+        assertEquals(TransactionStatus.TRANSACTION_LIMIT_EXCEEDED, account.tryWithdraw(Money.of(100.01)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(100)));
+        assertEquals(100, DebitAccount.getMaxTransactionAmount());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "100, 102",
+            "999.99, 1019.99",
+            "1000, 1010",
+            "3000, 3000"
+    })
+    public void shouldChargeFeeByTierWhenChainHasFeeTiers(double amount, double withFee) {
+        RuleEngine.install(AccountType.CREDIT, RuleChain.builder()
+                .maxTransaction(Money.of(5_000))
+                .defaultCreditLimit(Money.of(5_000))
+                .feeTier(new RuleChain.FeeTier(Money.of(1_000), 1))
+                .feeTier(new RuleChain.FeeTier(Money.ZERO, 2))
+                .feeTier(new RuleChain.FeeTier(Money.of(3_000), 0))
+                .build());
+        CreditAccount account = new CreditAccount(1L, 1L);
+
+        assertEquals(Money.of(withFee), account.applyFee(Money.of(amount)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(amount)));
+        assertEquals(Money.of(-withFee).getMinorUnits(), account.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldRejectWithRuleStatusWhenCustomRuleFails() {
+        AtomicLong checked = new AtomicLong();
+        RuleChain chain = RuleChain.builder()
+                .rule((account, amount) -> {
+                    checked.addAndGet(amount);
+                    return amount > 50_00 ? TransactionStatus.LIMIT_EXCEEDED : TransactionStatus.SUCCESS;
+                })
+                .build();
+        SavingsAccount account = new SavingsAccount(1L, 1L);
+        account.deposit(Money.of(1_000));
+        account.setRules(chain);
+
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, account.tryWithdraw(Money.of(60)));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(40)));
+        assertEquals(100_00, checked.get());
+        assertEquals(Money.of(960).getMinorUnits(), account.getBalanceMinorUnits());
+
+        account.setRules(null);
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(60)));
+    }
+
+    @Test
+    public void shouldRejectChainWhenFeeTiersDoNotStartAtZero() {
+        RuleChain.RuleChainBuilder builder = RuleChain.builder()
+                .feeTier(new RuleChain.FeeTier(Money.of(100), 1));
+
+        assertThrows(IllegalArgumentException.class, builder::build);
+        assertThrows(IllegalArgumentException.class, () -> RuleEngine.install(AccountType.DEBIT, null));
+    }
+}
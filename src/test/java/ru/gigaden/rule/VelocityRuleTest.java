@@ -0,0 +1,124 @@
+package ru.gigaden.rule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VelocityRuleTest {
+    private static final long HOUR = Duration.ofHours(1).toNanos();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, VELOCITY_LIMIT_EXCEEDED",
+            "22, VELOCITY_LIMIT_EXCEEDED",
+            "23, SUCCESS"
+    })
+    public void shouldReleaseLimitWhenOldWithdrawalsLeaveWindow(int hoursLater, TransactionStatus expected) {
+        VelocityRule rule = new VelocityRule(VelocityRule.Scope.ACCOUNT, Duration.ofHours(24), 24,
+                Money.of(50_000), null, clock::get);
+        BankAccount account = account(1L, 1L, rule);
+
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10_000)));
+        clock.addAndGet(HOUR);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(10_000)));
+        }
+        clock.addAndGet(hoursLater * HOUR);
+
+        assertEquals(expected, account.tryWithdraw(Money.of(0.01)));
+    }
+
+    @Test
+    public void shouldRejectWhenCountPerHourIsExceeded() {
+        VelocityRule rule = new VelocityRule(VelocityRule.Scope.ACCOUNT, Duration.ofHours(1), 60,
+                null, 20, clock::get);
+        BankAccount account = account(1L, 1L, rule);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(1)));
+        }
+
+        assertEquals(TransactionStatus.VELOCITY_LIMIT_EXCEEDED, account.tryWithdraw(Money.of(1)));
+        assertThrows(WithdrawLimitException.class, () -> account.withdraw(Money.of(1)));
+        clock.addAndGet(HOUR);
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(1)));
+    }
+
+    @Test
+    public void shouldNotCountWithdrawalWhenBalanceIsInsufficient() {
+        VelocityRule rule = new VelocityRule(VelocityRule.Scope.ACCOUNT, Duration.ofHours(24), 24,
+                Money.of(1_000), 2, clock::get);
+        BankAccount account = new DebitAccount(1L, 1L);
+        account.setRules(RuleChain.builder().rule(rule).build());
+        account.deposit(Money.of(100));
+
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, account.tryWithdraw(Money.of(500)));
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, account.tryWithdraw(Money.of(500)));
+
+        assertEquals(0, rule.usedAmount(account));
+        assertEquals(TransactionStatus.SUCCESS, account.tryWithdraw(Money.of(100)));
+        assertEquals(Money.of(100).getMinorUnits(), rule.usedAmount(account));
+        assertEquals(0, rule.purgeIdle());
+        clock.addAndGet(Duration.ofHours(24).toNanos());
+        assertEquals(1, rule.purgeIdle());
+    }
+
+    @Test
+    public void shouldKeepHolderTotalWithinLimitWhenAccountsWithdrawConcurrently() throws InterruptedException {
+        VelocityRule rule = VelocityRule.builder()
+                .scope(VelocityRule.Scope.HOLDER)
+                .window(Duration.ofHours(24))
+                .maxAmount(Money.of(50_000))
+                .build();
+        RuleChain chain = RuleChain.builder().rule(rule).build();
+        List<BankAccount> accounts = new ArrayList<>();
+        for (long number = 1; number <= 4; number++) {
+            CreditAccount account = new CreditAccount(number, 7L);
+            account.setWithdrawalFee(0);
+            account.deposit(Money.of(100_000));
+            account.setRules(chain);
+            accounts.add(account);
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            BankAccount account = accounts.get(i % accounts.size());
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 1_000; j++) {
+                    account.tryWithdraw(Money.of(10));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long withdrawn = accounts.stream()
+                .mapToLong(account -> Money.of(100_000).getMinorUnits() - account.getBalanceMinorUnits())
+                .sum();
+        assertEquals(Money.of(50_000).getMinorUnits(), withdrawn);
+        assertEquals(withdrawn, rule.usedAmount(accounts.get(0)));
+    }
+
+    private static BankAccount account(long number, long holder, VelocityRule rule) {
+        BankAccount account = new DebitAccount(number, holder);
+        account.deposit(Money.of(1_000_000));
+        account.setRules(RuleChain.builder().maxTransaction(Money.of(10_000)).rule(rule).build());
+        return account;
+    }
+}
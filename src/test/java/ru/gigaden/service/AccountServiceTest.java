@@ -0,0 +1,164 @@
+package ru.gigaden.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.gigaden.account.AccountType;
+import ru.gigaden.journal.Journal;
+import ru.gigaden.journal.JournalConfig;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.transaction.TransactionStatus;
+import ru.gigaden.transaction.TransferService;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccountServiceTest {
+    private static final int ACCOUNTS = 100;
+
+    @TempDir
+    Path directory;
+
+    private final AccountRepository accounts = new AccountRepository();
+    private final AccountService service = new AccountService(accounts);
+
+    @Test
+    public void shouldReturnStatusWhenOperationsAreCalledByAccountNumber() {
+        service.open(AccountType.DEBIT, 1L, 11L);
+        service.open(AccountType.SAVINGS, 2L, 22L);
+
+        assertEquals(TransactionStatus.SUCCESS, service.deposit(1L, Money.of(100)));
+        assertEquals(TransactionStatus.SUCCESS, service.transfer(1L, 2L, Money.of(40)));
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, service.withdraw(2L, Money.of(50)));
+        assertEquals(TransactionStatus.INTEREST_NOT_DUE, service.applyInterest(2L, LocalDate.now()));
+        assertEquals(TransactionStatus.FAILED, service.applyInterest(1L, LocalDate.now()));
+        assertEquals(TransactionStatus.ACCOUNT_NOT_FOUND, service.deposit(3L, Money.of(1)));
+        assertEquals(Optional.of(Money.of(60)), service.findBalance(1L));
+        assertThrows(IllegalArgumentException.class, () -> service.open(AccountType.CREDIT, 1L, 11L));
+    }
+
+    @Test
+    public void shouldApplyOperationOnceWhenRequestIsRetriedWithSameId() {
+        service.open(AccountType.CREDIT, 1L, 11L);
+        service.open(AccountType.DEBIT, 2L, 22L);
+
+        assertEquals(TransactionStatus.SUCCESS, service.withdraw(100L, 1L, Money.of(100)));
+        assertEquals(TransactionStatus.SUCCESS, service.withdraw(100L, 1L, Money.of(100)));
+        assertEquals(TransactionStatus.SUCCESS, service.transfer(101L, 1L, 2L, Money.of(50)));
+        assertEquals(TransactionStatus.SUCCESS, service.transfer(101L, 1L, 2L, Money.of(50)));
+        assertEquals(TransactionStatus.ACCOUNT_NOT_FOUND, service.deposit(102L, 3L, Money.of(1)));
+        service.open(AccountType.DEBIT, 3L, 33L);
+        assertEquals(TransactionStatus.ACCOUNT_NOT_FOUND, service.deposit(102L, 3L, Money.of(1)));
+
+        assertEquals(Optional.of(Money.of(-151.5)), service.findBalance(1L));
+        assertEquals(Optional.of(Money.of(50)), service.findBalance(2L));
+        assertEquals(Optional.of(Money.ZERO), service.findBalance(3L));
+    }
+
+    @Test
+    public void shouldKeepHundredThousandOperationsInFlightWhenRunOnVirtualThreads() throws Exception {
+        int operations = 100_000;
+        openAccounts(service);
+        CountDownLatch allStarted = new CountDownLatch(operations);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < operations; i++) {
+                long accountNumber = i % ACCOUNTS;
+                executor.submit(() -> {
+                    // Каждая операция ждёт, пока стартуют все: значит, все 100 000 одновременно в работе.
+                    allStarted.countDown();
+                    allStarted.await();
+                    return service.deposit(accountNumber, Money.ofMinor(1));
+                });
+            }
+        }
+
+        accounts.forEach(account -> assertEquals(100_000 + operations / ACCOUNTS, account.getBalanceMinorUnits()));
+    }
+
+    @Test
+    public void shouldKeepTotalBalanceWhenBlockingRequestsRunOnPlatformAndVirtualThreads() throws Exception {
+        int requests = 10_000;
+        openAccounts(service);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(100)) {
+            runRequests(executor, requests);
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            runRequests(executor, requests);
+        }
+
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            total += service.findBalance(i).orElseThrow().getMinorUnits();
+        }
+        assertEquals(ACCOUNTS * 100_000L, total);
+    }
+
+    @Test
+    public void shouldMakeOperationsDurableWhenJournalIsConfigured() throws Exception {
+        int operations = 5_000;
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            AccountService durable = new AccountService(accounts, new TransferService(), journal);
+            openAccounts(durable);
+            LongAdder confirmed = new LongAdder();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < operations; i++) {
+                    long accountNumber = i % ACCOUNTS;
+                    executor.submit(() -> {
+                        if (durable.deposit(accountNumber, Money.ofMinor(1)).isSuccess()) {
+                            confirmed.increment();
+                        }
+                    });
+                }
+            }
+            assertEquals(operations, confirmed.sum());
+            assertEquals(journal.getNextLsn(), journal.getDurableLsn());
+        }
+
+        try (Journal journal = Journal.open(directory, JournalConfig.defaults())) {
+            AccountRepository restored = journal.recover();
+            assertEquals(ACCOUNTS, restored.size());
+            restored.forEach(account -> assertEquals(100_000 + operations / ACCOUNTS, account.getBalanceMinorUnits()));
+        }
+    }
+
+    /**
+     * Запрос: ожидание внешнего сервиса, затем перевод между случайными счетами.
+     * Время пачки на платформенных и виртуальных потоках сравнивает VirtualThreadBenchmark.
+     */
+    private void runRequests(ExecutorService executor, int requests) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            executor.submit(() -> {
+                try {
+                    Thread.sleep(5);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long from = random.nextInt(ACCOUNTS);
+                    long to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    service.transfer(from, to, Money.ofMinor(1 + random.nextInt(100)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void openAccounts(AccountService target) {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            target.open(AccountType.DEBIT, i, i).deposit(1000);
+        }
+    }
+}
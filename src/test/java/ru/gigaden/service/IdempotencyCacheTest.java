@@ -0,0 +1,73 @@
+package ru.gigaden.service;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyCacheTest {
+    private final AtomicLong now = new AtomicLong();
+    private final IdempotencyCache cache = new IdempotencyCache(Duration.ofSeconds(30), 1 << 16, now::get);
+
+    @Test
+    public void shouldReturnStoredStatusWhenOperationIsRepeated() {
+        assertNull(cache.reserve(42));
+        assertEquals(TransactionStatus.OPERATION_IN_PROGRESS, cache.reserve(42));
+
+        cache.complete(42, TransactionStatus.LIMIT_EXCEEDED);
+
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, cache.reserve(42));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldAllowRetryWhenReservationIsReleased() {
+        assertNull(cache.reserve(7));
+        cache.release(7);
+
+        assertNull(cache.reserve(7));
+    }
+
+    @Test
+    public void shouldRememberIdWithinWindowAndForgetItAfter() {
+        cache.reserve(1);
+        cache.complete(1, TransactionStatus.SUCCESS);
+
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertEquals(TransactionStatus.SUCCESS, cache.reserve(1));
+
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertNull(cache.reserve(1));
+    }
+
+    @Test
+    public void shouldKeepReservationWhenSegmentRotatesPastCapacity() {
+        assertNull(cache.reserve(0));
+        for (long id = 1; id <= 1_000_000; id++) {
+            assertNull(cache.reserve(id));
+            cache.complete(id, TransactionStatus.SUCCESS);
+        }
+        now.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        assertEquals(TransactionStatus.OPERATION_IN_PROGRESS, cache.reserve(0));
+        cache.complete(0, TransactionStatus.SUCCESS);
+        assertEquals(TransactionStatus.SUCCESS, cache.reserve(0));
+    }
+
+    @Test
+    public void shouldStayWithinCapacityWhenMillionsOfIdsArrive() {
+        int capacity = 1 << 16;
+        for (long id = 1; id <= 3_000_000; id++) {
+            assertNull(cache.reserve(id));
+            cache.complete(id, TransactionStatus.SUCCESS);
+        }
+
+        assertTrue(cache.size() <= capacity);
+        assertEquals(TransactionStatus.SUCCESS, cache.reserve(3_000_000));
+    }
+}
@@ -0,0 +1,169 @@
+package ru.gigaden.transaction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.journal.Journal;
+import ru.gigaden.journal.JournalConfig;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+import ru.gigaden.rule.RuleChain;
+import ru.gigaden.rule.VelocityRule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchProcessorTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+
+    @TempDir
+    private Path directory;
+
+    private final AccountRepository accounts = new AccountRepository();
+    private final DebitAccount debit = new DebitAccount(1L, 1L);
+    private final CreditAccount credit = new CreditAccount(2L, 1L);
+    private final SavingsAccount savings = new SavingsAccount(3L, 1L);
+
+    @Test
+    public void shouldApplyMixedOperationsAndSyncJournalOnceWhenBatchIsValid() throws IOException {
+        try (Journal journal = Journal.open(directory, JournalConfig.builder().fsyncIntervalMillis(60_000).build())) {
+            prepare(journal);
+            BatchProcessor processor = BatchProcessor.builder().accounts(accounts).journal(journal).atomic(true).build();
+
+            BatchResult result = processor.process(mixedBatch());
+
+            assertEquals(5, result.getSuccessCount());
+            assertFalse(result.isAborted());
+            assertEquals(600_00, debit.getBalanceMinorUnits());
+            assertEquals(-102_00, credit.getBalanceMinorUnits());
+            assertEquals(2, credit.getWithdrawalFee());
+            assertEquals(1_030_00, savings.getBalanceMinorUnits());
+            assertEquals(TODAY, savings.getLastInterestPaid());
+            assertEquals(journal.getNextLsn(), journal.getDurableLsn());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void shouldValidateWithdrawalsAgainstProjectedBalanceWhenBatchIsChecked(boolean atomic) {
+        prepare(null);
+        BatchProcessor processor = BatchProcessor.builder().accounts(accounts).atomic(atomic).build();
+        TransactionBatch batch = TransactionBatch.builder()
+                .withdraw(1L, Money.of(1_050))
+                .deposit(1L, Money.of(100))
+                .withdraw(1L, Money.of(1_050))
+                .withdraw(1L, Money.of(100))
+                .withdrawalFee(1L, 2)
+                .deposit(9L, Money.of(1))
+                .build();
+
+        BatchResult result = processor.process(batch);
+
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, result.getStatus(0));
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, result.getStatus(3));
+        assertEquals(TransactionStatus.FAILED, result.getStatus(4));
+        assertEquals(TransactionStatus.ACCOUNT_NOT_FOUND, result.getStatus(5));
+        assertEquals(atomic, result.isAborted());
+        if (atomic) {
+            assertEquals(TransactionStatus.BATCH_ABORTED, result.getStatus(1));
+            assertEquals(TransactionStatus.BATCH_ABORTED, result.getStatus(2));
+            assertEquals(1_000_00, debit.getBalanceMinorUnits());
+        } else {
+            assertEquals(TransactionStatus.SUCCESS, result.getStatus(1));
+            assertEquals(TransactionStatus.SUCCESS, result.getStatus(2));
+            assertEquals(50_00, debit.getBalanceMinorUnits());
+        }
+    }
+
+    @Test
+    public void shouldCompensateAppliedOperationsWhenAtomicBatchFailsDuringApply() {
+        prepare(null);
+        debit.setRules(RuleChain.builder()
+                .rule(VelocityRule.builder()
+                        .scope(VelocityRule.Scope.ACCOUNT)
+                        .window(Duration.ofHours(1))
+                        .maxCount(1)
+                        .build())
+                .build());
+        debit.withdraw(Money.of(1));
+        BatchProcessor processor = BatchProcessor.builder().accounts(accounts).atomic(true).build();
+
+        BatchResult result = processor.process(mixedBatch());
+
+        assertTrue(result.isAborted());
+        assertEquals(4, result.count(TransactionStatus.BATCH_ABORTED));
+        assertEquals(TransactionStatus.VELOCITY_LIMIT_EXCEEDED, result.getStatus(4));
+        assertEquals(999_00, debit.getBalanceMinorUnits());
+        assertEquals(0, credit.getBalanceMinorUnits());
+        assertEquals(1, credit.getWithdrawalFee());
+        assertEquals(1_000_00, savings.getBalanceMinorUnits());
+        assertEquals(TODAY.minusMonths(1), savings.getLastInterestPaid());
+    }
+
+    @Test
+    public void shouldReleaseReservationOfCheckingChainWhenRulesAreSwappedBeforeRollback() {
+        prepare(null);
+        VelocityRule checking = VelocityRule.builder()
+                .window(Duration.ofHours(1))
+                .maxAmount(Money.of(10_000))
+                .build();
+        VelocityRule replacement = VelocityRule.builder()
+                .window(Duration.ofHours(1))
+                .maxAmount(Money.of(10_000))
+                .build();
+        debit.setRules(RuleChain.builder().rule(checking).build());
+        // Снятие с кредитного счёта заменяет правила дебетового и отклоняется - пакет откатывается.
+        credit.setRules(RuleChain.builder()
+                .rule((account, amount) -> {
+                    debit.setRules(RuleChain.builder().rule(replacement).build());
+                    return TransactionStatus.VELOCITY_LIMIT_EXCEEDED;
+                })
+                .build());
+        BatchProcessor processor = BatchProcessor.builder().accounts(accounts).atomic(true).build();
+
+        BatchResult result = processor.process(TransactionBatch.builder()
+                .withdraw(1L, Money.of(300))
+                .withdraw(2L, Money.of(100))
+                .build());
+
+        assertTrue(result.isAborted());
+        assertEquals(TransactionStatus.BATCH_ABORTED, result.getStatus(0));
+        assertEquals(1_000_00, debit.getBalanceMinorUnits());
+        assertEquals(0, checking.usedAmount(debit));
+        assertEquals(0, replacement.usedAmount(debit));
+    }
+
+    private void prepare(Journal journal) {
+        debit.deposit(Money.of(1_000));
+        savings.deposit(Money.of(1_000));
+        savings.setLastInterestPaid(TODAY.minusMonths(1));
+        for (BankAccount account : new BankAccount[]{debit, credit, savings}) {
+            if (journal != null) {
+                journal.register(account);
+            }
+            accounts.add(account);
+        }
+    }
+
+    private static TransactionBatch mixedBatch() {
+        return TransactionBatch.builder()
+                .interestDate(TODAY)
+                .deposit(1L, Money.of(100))
+                .withdrawalFee(2L, 2)
+                .withdraw(2L, Money.of(100))
+                .interest(3L)
+                .withdraw(1L, Money.of(500))
+                .build();
+    }
+}
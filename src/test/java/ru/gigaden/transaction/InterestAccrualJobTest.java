@@ -0,0 +1,79 @@
+package ru.gigaden.transaction;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.SavingsAccount;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InterestAccrualJobTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 31);
+
+    private final InterestAccrualJob job = new InterestAccrualJob(
+            Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC),
+            ForkJoinPool.commonPool());
+
+    @Test
+    public void shouldSkipAccountsWhenInterestIsNotDue() {
+        SavingsAccount due = account(1L, TODAY.minusMonths(1));
+        SavingsAccount notDue = account(2L, TODAY.minusDays(10));
+
+        TransactionSummary summary = job.run(List.of(due, notDue));
+
+        assertEquals(TransactionStatus.SUCCESS, summary.getStatus(0));
+        assertEquals(TransactionStatus.INTEREST_NOT_DUE, summary.getStatus(1));
+        assertEquals(103000, due.getBalanceMinorUnits());
+        assertEquals(TODAY, due.getLastInterestPaid());
+        assertEquals(100000, notDue.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldNotPayInterestTwiceWhenRunIsRepeated() {
+        List<SavingsAccount> accounts = accounts(5_000);
+        // Имитация сбоя: первая половина уже обработана прерванным запуском.
+        job.run(accounts.subList(0, 2_500));
+
+        TransactionSummary summary = job.run(accounts);
+
+        assertEquals(2_500, summary.getSuccessCount());
+        assertEquals(2_500, summary.count(TransactionStatus.INTEREST_NOT_DUE));
+        accounts.forEach(account -> assertEquals(103000, account.getBalanceMinorUnits()));
+    }
+
+    @Test
+    public void shouldPayInterestOnceWhenRunsOverlap() throws InterruptedException {
+        List<SavingsAccount> accounts = accounts(20_000);
+        List<Thread> runs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> job.run(accounts));
+            runs.add(thread);
+            thread.start();
+        }
+        for (Thread thread : runs) {
+            thread.join();
+        }
+
+        accounts.forEach(account -> assertEquals(103000, account.getBalanceMinorUnits()));
+    }
+
+    private static List<SavingsAccount> accounts(int count) {
+        List<SavingsAccount> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(account(i, TODAY.minusMonths(1)));
+        }
+        return accounts;
+    }
+
+    private static SavingsAccount account(long number, LocalDate lastInterestPaid) {
+        SavingsAccount account = new SavingsAccount(number, number);
+        account.deposit(1000);
+        account.setLastInterestPaid(lastInterestPaid);
+        return account;
+    }
+}
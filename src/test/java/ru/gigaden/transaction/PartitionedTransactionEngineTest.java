@@ -0,0 +1,126 @@
+package ru.gigaden.transaction;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.account.SavingsAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartitionedTransactionEngineTest {
+
+    @Test
+    public void shouldCompleteFuturesWithStatusWhenCommandsAreProcessed() throws Exception {
+        AccountRepository accounts = new AccountRepository();
+        SavingsAccount saving = new SavingsAccount(3L, 33L);
+        saving.setLastInterestPaid(LocalDate.of(2024, 1, 15));
+        accounts.add(new DebitAccount(1L, 11L));
+        accounts.add(saving);
+
+        try (PartitionedTransactionEngine engine = new PartitionedTransactionEngine(accounts, 2, 16)) {
+            assertEquals(TransactionStatus.SUCCESS, engine.deposit(1L, Money.of(100)).get());
+            assertEquals(TransactionStatus.LIMIT_EXCEEDED, engine.withdraw(1L, Money.of(200)).get());
+            assertEquals(TransactionStatus.ACCOUNT_NOT_FOUND, engine.deposit(2L, Money.of(1)).get());
+            assertEquals(TransactionStatus.SUCCESS, engine.deposit(3L, Money.of(1000)).get());
+            assertEquals(TransactionStatus.SUCCESS, engine.applyInterest(3L, LocalDate.of(2024, 2, 29)).get());
+        }
+
+        assertEquals(10000, accounts.get(1L).getBalanceMinorUnits());
+        assertEquals(103000, saving.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldApplyAllCommandsWhenManyProducersSubmitConcurrently() throws Exception {
+        int accountsCount = 100;
+        int producers = 8;
+        int commands = 20_000;
+        AccountRepository accounts = new AccountRepository();
+        for (int i = 0; i < accountsCount; i++) {
+            accounts.add(new CreditAccount(i, i));
+        }
+        LongAdder succeeded = new LongAdder();
+        TransactionCallback callback = (tag, status) -> {
+            if (status.isSuccess()) {
+                succeeded.increment();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try (PartitionedTransactionEngine engine = new PartitionedTransactionEngine(accounts, 4, 64)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < commands; i++) {
+                        engine.submit(PartitionedTransactionEngine.Operation.DEPOSIT, i % accountsCount, 1, i, callback);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(producers * commands, succeeded.sum());
+        long perAccount = (long) producers * commands / accountsCount;
+        accounts.forEach(account -> assertEquals(perAccount, account.getBalanceMinorUnits()));
+    }
+
+    @Test
+    public void shouldReturnStatusForEachAccountWhenWithdrawingFromAll() throws Exception {
+        AccountRepository accounts = new AccountRepository();
+        BankAccount debit = new DebitAccount(1L, 11L);
+        BankAccount credit = new CreditAccount(2L, 22L);
+        BankAccount saving = new SavingsAccount(3L, 33L);
+        debit.deposit(4000);
+        saving.deposit(1000);
+        accounts.add(debit);
+        accounts.add(credit);
+        accounts.add(saving);
+
+        TransactionSummary summary;
+        try (PartitionedTransactionEngine engine = new PartitionedTransactionEngine(accounts, 2, 2)) {
+            summary = engine.withdrawAll(List.of(debit, credit, saving), Money.of(3000));
+        }
+
+        assertEquals(TransactionStatus.SUCCESS, summary.getStatus(0));
+        assertEquals(TransactionStatus.SUCCESS, summary.getStatus(1));
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, summary.getStatus(2));
+        assertEquals(100000, debit.getBalanceMinorUnits());
+        assertEquals(-303000, credit.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldRejectCommandsWhenRingIsFullOrClosed() {
+        CommandRing ring = new CommandRing(2);
+        TransactionCallback callback = (tag, status) -> {
+        };
+
+        assertTrue(ring.offer(PartitionedTransactionEngine.Operation.DEPOSIT, 1, 1, 0, callback));
+        assertTrue(ring.offer(PartitionedTransactionEngine.Operation.DEPOSIT, 1, 1, 1, callback));
+        assertFalse(ring.offer(PartitionedTransactionEngine.Operation.DEPOSIT, 1, 1, 2, callback));
+
+        List<Long> tags = new ArrayList<>();
+        assertEquals(1, ring.drain(slot -> tags.add(slot.tag), 1));
+        assertTrue(ring.offer(PartitionedTransactionEngine.Operation.DEPOSIT, 1, 1, 3, callback));
+        ring.close();
+        assertFalse(ring.offer(PartitionedTransactionEngine.Operation.DEPOSIT, 1, 1, 4, callback));
+        assertFalse(ring.isDrained());
+        assertEquals(2, ring.drain(slot -> tags.add(slot.tag), 10));
+        assertTrue(ring.isDrained());
+        assertEquals(List.of(0L, 1L, 3L), tags);
+    }
+}
@@ -0,0 +1,148 @@
+package ru.gigaden.transaction;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.money.Money;
+import ru.gigaden.repository.AccountRepository;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionFlowTest {
+
+    @Test
+    public void shouldKeepAccountOrderWhenCommandsAreStreamed() throws Exception {
+        AccountRepository accounts = new AccountRepository();
+        for (long number = 0; number < 8; number++) {
+            accounts.add(new DebitAccount(number, number));
+        }
+        List<TransactionFlow.Result> results = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        SubmissionPublisher<TransactionFlow.Command> source = new SubmissionPublisher<>();
+        try (PartitionedTransactionEngine engine = new PartitionedTransactionEngine(accounts, 4, 64)) {
+            TransactionFlow flow = TransactionProcessor.flow(engine, 64);
+            source.subscribe(flow);
+            flow.subscribe(new Collector(results, done, 1));
+            // Снятие проходит, только если пополнение того же счёта выполнено раньше.
+            for (int i = 0; i < 10_000; i++) {
+                long number = i % 8;
+                source.submit(TransactionFlow.Command.deposit(number, Money.of(1)));
+                source.submit(TransactionFlow.Command.withdraw(number, Money.of(1)));
+            }
+            source.close();
+            done.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(20_000, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus().isSuccess()));
+        for (long number = 0; number < 8; number++) {
+            assertEquals(0, accounts.get(number).getBalanceMinorUnits());
+        }
+    }
+
+    @Test
+    public void shouldStopRequestingCommandsWhenResultsAreNotRequested() throws Exception {
+        AccountRepository accounts = new AccountRepository();
+        accounts.add(new DebitAccount(1L, 1L));
+        CountingSource source = new CountingSource();
+        List<TransactionFlow.Result> results = new CopyOnWriteArrayList<>();
+
+        try (PartitionedTransactionEngine engine = new PartitionedTransactionEngine(accounts, 2, 16)) {
+            TransactionFlow flow = new TransactionFlow(engine, 16);
+            source.subscribe(flow);
+            Collector collector = new Collector(results, new CompletableFuture<>(), 0);
+            flow.subscribe(collector);
+
+            assertEquals(16, source.requested.get());
+            collector.subscription.request(5);
+            waitFor(() -> results.size() == 5);
+            waitFor(() -> source.requested.get() == 21);
+        }
+
+        assertEquals(21_00, accounts.get(1L).getBalanceMinorUnits());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Условие не выполнено за 10 секунд");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Источник, который на каждый запрос сразу отдаёт пополнения счёта 1 и считает запрошенное.
+     */
+    private static final class CountingSource implements Flow.Publisher<TransactionFlow.Command> {
+        private final AtomicLong requested = new AtomicLong();
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super TransactionFlow.Command> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    for (long i = 0; i < n; i++) {
+                        subscriber.onNext(TransactionFlow.Command.deposit(1L, Money.of(1)));
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    /**
+     * Подписчик итогов, запрашивающий batch итогов после каждого полученного.
+     */
+    private static final class Collector implements Flow.Subscriber<TransactionFlow.Result> {
+        private final List<TransactionFlow.Result> results;
+        private final CompletableFuture<Void> done;
+        private final long batch;
+        private Flow.Subscription subscription;
+
+        private Collector(List<TransactionFlow.Result> results, CompletableFuture<Void> done, long batch) {
+            this.results = results;
+            this.done = done;
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(TransactionFlow.Result item) {
+            results.add(item);
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import ru.gigaden.account.SavingsAccount;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -30,4 +31,47 @@ public class TransactionProcessorTest {
         assertEquals(0, accountList.get(1).getBalance().compareTo(BigDecimal.valueOf(-3030)));
         assertEquals(0, accountList.get(2).getBalance().compareTo(BigDecimal.valueOf(0)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReturnStatusForEachAccountWhenProcessedInParallel() {
+        BankAccount debit = new DebitAccount(1L, 11L);
+        BankAccount credit = new CreditAccount(2L, 22L);
+        BankAccount saving = new SavingsAccount(3L, 33L);
+        debit.deposit(4000);
+        saving.deposit(1000);
+        List<BankAccount> accountList = List.of(debit, credit, saving);
+
+        TransactionSummary summary = TransactionProcessor.processTransaction(accountList, 3000, ForkJoinPool.commonPool());
+
+        assertEquals(3, summary.size());
+        assertEquals(TransactionStatus.SUCCESS, summary.getStatus(0));
+        assertEquals(TransactionStatus.SUCCESS, summary.getStatus(1));
+        assertEquals(TransactionStatus.LIMIT_EXCEEDED, summary.getStatus(2));
+        assertEquals(0, debit.getBalance().compareTo(BigDecimal.valueOf(1000)));
+        assertEquals(0, credit.getBalance().compareTo(BigDecimal.valueOf(-3030)));
+        assertEquals(0, saving.getBalance().compareTo(BigDecimal.valueOf(1000)));
+    }
+
+    @Test
+    public void shouldWithdrawFromEveryAccountWhenBatchIsSplitAcrossThreads() {
+        List<BankAccount> accountList = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            BankAccount account = new DebitAccount(i, i);
+            if (i % 2 == 0) {
+                account.deposit(10);
+            }
+            accountList.add(account);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        TransactionSummary summary = TransactionProcessor.processTransaction(accountList, 10, pool, 100);
+        pool.shutdown();
+
+        assertEquals(5_000, summary.getSuccessCount());
+        assertEquals(5_000, summary.count(TransactionStatus.LIMIT_EXCEEDED));
+        for (int i = 0; i < accountList.size(); i++) {
+            assertEquals(i % 2 == 0, summary.getStatus(i).isSuccess());
+            assertTrue(accountList.get(i).getBalance().signum() == 0);
+        }
+    }
+}
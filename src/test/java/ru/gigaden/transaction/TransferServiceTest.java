@@ -0,0 +1,117 @@
+package ru.gigaden.transaction;
+
+import org.junit.jupiter.api.Test;
+import ru.gigaden.account.AccountEventListener;
+import ru.gigaden.account.BankAccount;
+import ru.gigaden.account.CreditAccount;
+import ru.gigaden.account.DebitAccount;
+import ru.gigaden.exception.WithdrawLimitException;
+import ru.gigaden.money.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransferServiceTest {
+    private final TransferService service = new TransferService();
+
+    @Test
+    public void shouldMoveAmountAndChargeCreditFeeWhenTransferIsDone() {
+        CreditAccount credit = new CreditAccount(1L, 11L);
+        DebitAccount debit = new DebitAccount(2L, 22L);
+
+        TransactionStatus status = service.transfer(credit, debit, Money.of(1000));
+
+        assertEquals(TransactionStatus.SUCCESS, status);
+        assertEquals(-101000, credit.getBalanceMinorUnits());
+        assertEquals(100000, debit.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldLeaveBothAccountsUnchangedWhenSourceRejectsTransfer() {
+        DebitAccount from = new DebitAccount(1L, 11L);
+        DebitAccount to = new DebitAccount(2L, 22L);
+        from.deposit(20000);
+
+        assertEquals(TransactionStatus.TRANSACTION_LIMIT_EXCEEDED, service.transfer(from, to, Money.of(15000)));
+        assertThrows(WithdrawLimitException.class, () -> service.transfer(to, from, 1));
+        assertEquals(2000000, from.getBalanceMinorUnits());
+        assertEquals(0, to.getBalanceMinorUnits());
+    }
+
+    @Test
+    public void shouldReturnAmountToSourceWhenTargetCannotBeCredited() {
+        CreditAccount from = new CreditAccount(1L, 11L);
+        DebitAccount to = new DebitAccount(2L, 22L);
+        to.restoreBalance(Long.MAX_VALUE - 10);
+
+        assertThrows(ArithmeticException.class, () -> service.transfer(from, to, Money.of(100)));
+        assertEquals(0, from.getBalanceMinorUnits());
+        assertEquals(Long.MAX_VALUE - 10, to.getBalanceMinorUnits());
+        assertEquals(TransactionStatus.SUCCESS, service.transfer(from, to, Money.ofMinor(10)));
+    }
+
+    @Test
+    public void shouldKeepTotalBalanceWhenTransfersRunConcurrently() throws Exception {
+        int accountsCount = 64;
+        int threads = 8;
+        int transfers = 20_000;
+        LongAdder fees = new LongAdder();
+        AccountEventListener feeCounter = new AccountEventListener() {
+            @Override
+            public void onWithdraw(BankAccount account, long amount, long fee, long balance) {
+                fees.add(fee);
+            }
+        };
+        List<BankAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < accountsCount; i++) {
+            BankAccount account = i % 2 == 0 ? new DebitAccount(i, i) : new CreditAccount(i, i);
+            account.deposit(1000);
+            account.addListener(feeCounter);
+            accounts.add(account);
+        }
+        long initial = service.totalBalance(accounts);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        Future<?> auditor = executor.submit(() -> {
+            while (running.get()) {
+                // Комиссии считаются вне блокировок сервиса, поэтому сумма проверяется по вилке.
+                long feesBefore = fees.sum();
+                long total = service.totalBalance(accounts);
+                long feesAfter = fees.sum();
+                assertTrue(total + feesBefore <= initial && initial <= total + feesAfter);
+            }
+        });
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfers; i++) {
+                    BankAccount from = accounts.get(random.nextInt(accountsCount));
+                    BankAccount to = accounts.get(random.nextInt(accountsCount));
+                    if (from != to) {
+                        service.transfer(from, to, Money.ofMinor(1 + random.nextInt(50_000)));
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        running.set(false);
+        auditor.get();
+        executor.shutdown();
+
+        assertEquals(initial, service.totalBalance(accounts) + fees.sum());
+    }
+}
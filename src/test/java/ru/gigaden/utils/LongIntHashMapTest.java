@@ -0,0 +1,44 @@
+package ru.gigaden.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void shouldBehaveLikeHashMapWhenKeysArePutRandomly() {
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(50_000) - 100;
+            Integer previous = expected.put(key, i);
+            assertEquals(previous == null ? LongIntHashMap.NO_VALUE : previous, map.put(key, i));
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(1_000_000));
+    }
+
+    @Test
+    public void shouldStoreZeroKeySeparatelyFromFreeSlots() {
+        LongIntHashMap map = new LongIntHashMap();
+
+        assertFalse(map.containsKey(0));
+        assertEquals(LongIntHashMap.NO_VALUE, map.put(0, 5));
+        assertTrue(map.containsKey(0));
+        assertEquals(5, map.get(0));
+        assertEquals(1, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, LongIntHashMap.NO_VALUE));
+    }
+}
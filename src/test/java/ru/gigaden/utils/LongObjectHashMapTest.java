@@ -0,0 +1,63 @@
+package ru.gigaden.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void shouldBehaveLikeHashMapWhenKeysArePutAndRemovedRandomly() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        map.forEach((key, value) -> assertEquals(expected.get(key), value));
+    }
+
+    @Test
+    public void shouldStoreZeroKeySeparatelyFromFreeSlots() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+
+        assertNull(map.get(0));
+        assertNull(map.putIfAbsent(0, "zero"));
+        assertEquals("zero", map.putIfAbsent(0, "other"));
+        assertTrue(map.containsKey(0));
+        assertEquals(1, map.size());
+        assertEquals("zero", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void shouldKeepAllEntriesWhenTableGrows() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(1);
+        for (long key = 1; key <= 100_000; key++) {
+            map.put(key, key * 10);
+        }
+
+        assertEquals(100_000, map.size());
+        for (long key = 1; key <= 100_000; key++) {
+            assertEquals(key * 10, map.get(key));
+        }
+    }
+}